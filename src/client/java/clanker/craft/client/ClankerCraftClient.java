@@ -1,13 +1,16 @@
 package clanker.craft.client;
 
+import clanker.craft.network.TTSAudioChunkS2CPayload;
 import clanker.craft.network.TTSSpeakS2CPayload;
 import clanker.craft.registry.ModEntities;
+import clanker.craft.trace.PipelineEvents;
+import clanker.craft.trace.Trace;
 
 import net.fabricmc.api.ClientModInitializer;
 import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
 import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
 import net.fabricmc.fabric.api.client.rendering.v1.EntityRendererRegistry;
-import net.fabricmc.fabric.api.networking.v1.PayloadTypeRegistry;
 import net.minecraft.client.render.entity.CopperGolemEntityRenderer;
 
 
@@ -17,21 +20,36 @@ public class ClankerCraftClient implements ClientModInitializer {
     @Override
     public void onInitializeClient() {
 
-        // Register a payload type for client-bound play
-        PayloadTypeRegistry.playS2C().register(TTSSpeakS2CPayload.ID, TTSSpeakS2CPayload.CODEC);
-
-        // Register typed receiver
+        // Register typed receivers (payload types are registered in the common initializer)
         ClientPlayNetworking.registerGlobalReceiver(TTSSpeakS2CPayload.ID, (payload, context) -> {
             TTSSpeakS2CPayload p = (TTSSpeakS2CPayload) payload;
-            String text = p.text();
-            int entityId = p.entityId();
-            context.client().execute(() -> ClientTTS.get().speakAsync(context.client(), text, entityId));
+            received("tts_speak", p.traceId());
+            context.client().execute(Trace.hop("tts_speak", p.traceId(),
+                    () -> ClientTTS.get().speakAsync(context.client(), p.text(), p.entityId(), p.priority(), p.replyId(), p.traceId())));
+        });
+        // Server-side TTS: audio synthesized once on the server, streamed in chunks
+        ClientPlayNetworking.registerGlobalReceiver(TTSAudioChunkS2CPayload.ID, (payload, context) -> {
+            received("tts_audio", payload.traceId());
+            context.client().execute(() -> ClientTTS.get().acceptChunk(context.client(), payload));
         });
 
+        // Open the Cloud TTS connection while the world loads, not on the first line
+        ClientPlayConnectionEvents.JOIN.register((handler, sender, client) -> ClientTTS.get().warmUp());
+        // Entity ids mean nothing in the next world; drop queued speech
+        ClientPlayConnectionEvents.DISCONNECT.register((handler, client) -> client.execute(() -> ClientTTS.get().reset()));
+
         // Tick to cleanup OpenAL sources
         ClientTickEvents.END_CLIENT_TICK.register(client -> ClientTTS.get().tick(client));
 
         // Register renderer for Clanker entity (reuse vanilla Illusioner renderer)
         EntityRendererRegistry.register(ModEntities.CLANKER, CopperGolemEntityRenderer::new);
     }
+
+    private static void received(String payload, long traceId) {
+        PipelineEvents.PayloadReceive event = new PipelineEvents.PayloadReceive();
+        if (!event.shouldCommit()) return;
+        event.payload = payload;
+        event.correlationId = traceId;
+        event.commit();
+    }
 }
@@ -1,115 +1,305 @@
 package clanker.craft.client;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
-import net.fabricmc.loader.api.FabricLoader;
 import clanker.craft.config.Config;
 import clanker.craft.i18n.LanguageManager;
+import clanker.craft.llm.SentenceSplitter;
+import clanker.craft.network.TTSAudioChunkS2CPayload;
+import clanker.craft.network.TTSSpeakS2CPayload;
+import clanker.craft.trace.PipelineEvents;
+import clanker.craft.trace.Trace;
+import clanker.craft.tts.PcmAudio;
+import clanker.craft.tts.TtsAudioCache;
+import clanker.craft.tts.TtsSynthesizer;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.entity.Entity;
 import net.minecraft.text.Text;
-import org.lwjgl.BufferUtils;
 import org.lwjgl.openal.AL10;
 
 import javax.sound.sampled.*;
-import java.io.InputStream;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 
 public final class ClientTTS {
     private static final ClientTTS INSTANCE = new ClientTTS();
     public static ClientTTS get() { return INSTANCE; }
 
-    // HTTP client and executor service
-    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
-    private final ExecutorService exec = Executors.newSingleThreadExecutor(r -> {
-        Thread t = new Thread(r, "Clanker-TTS");
-        t.setDaemon(true);
-        return t;
-    });
-    private static final Gson GSON = new Gson();
-
-    private volatile boolean quotaExceeded = false;
-
-    // Track active OpenAL sources for cleanup on client ticks (must run on client thread)
-    private final List<int[]> activeAl = new ArrayList<>(); // entries: {sourceId, bufferId}
+    private static final int MAX_PARALLEL_SYNTH = 4; // concurrent Cloud TTS requests across all replies
+    private static final long QUOTA_NOTICE_INTERVAL_MS = 10_000;
+    private static final long RECHECK_NANOS = 100_000_000L;
+    private final ExecutorService synth = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("Clanker-TTS-", 0).factory());
+    private final Semaphore synthPermits = new Semaphore(MAX_PARALLEL_SYNTH);
+
+    private volatile long lastQuotaNotice = 0;
+    private final TtsSynthesizer synthesizer = new TtsSynthesizer(new TtsAudioCache());
+
+    // One streaming OpenAL source per speaking entity, oldest first (client thread only)
+    private final Map<Integer, Channel> channels = new LinkedHashMap<>();
+    private final OpenAlPool al = new OpenAlPool();
+    private final TtsScheduler scheduler = new TtsScheduler(this);
+    private final TtsAudioReceiver receiver = new TtsAudioReceiver();
+
+    /** An OpenAL source with the buffers queued on it, oldest first. */
+    private static final class Channel {
+        final int source;
+        final int entityId;
+        final ArrayDeque<Integer> buffers = new ArrayDeque<>();
+        long expectedEndNanos; // when the queued audio should have finished; no need to ask OpenAL before
+
+        Channel(int source, int entityId) {
+            this.source = source;
+            this.entityId = entityId;
+        }
+    }
 
     private ClientTTS() {}
 
     // Called from client tick (registered in client init)
     public void tick(MinecraftClient client) {
-        // Clean up finished sources
-        for (Iterator<int[]> it = activeAl.iterator(); it.hasNext();) {
-            int[] pair = it.next();
-            int src = pair[0];
-            int state = AL10.alGetSourcei(src, AL10.AL_SOURCE_STATE);
-            if (state == AL10.AL_STOPPED) {
-                AL10.alDeleteSources(src);
-                AL10.alDeleteBuffers(pair[1]);
+        scheduler.tick(client);
+        if (channels.isEmpty()) return;
+        long now = System.nanoTime();
+        for (Iterator<Channel> it = channels.values().iterator(); it.hasNext();) {
+            Channel ch = it.next();
+            follow(client, ch);
+            // Only query OpenAL once the queued audio should be over
+            if (now < ch.expectedEndNanos) continue;
+            reclaimProcessed(ch);
+            // Stopped with nothing left queued: this entity is done talking for now
+            if (ch.buffers.isEmpty() && AL10.alGetSourcei(ch.source, AL10.AL_SOURCE_STATE) == AL10.AL_STOPPED) {
+                al.releaseSource(ch.source);
                 it.remove();
+            } else {
+                ch.expectedEndNanos = now + RECHECK_NANOS; // running late (lag, pause); look again shortly
             }
         }
     }
 
+    // Keep the voice on the Clanker as it walks
+    private static void follow(MinecraftClient client, Channel ch) {
+        if (ch.entityId < 0 || client.world == null) return;
+        Entity e = client.world.getEntityById(ch.entityId);
+        if (e == null) return;
+        AL10.alSource3f(ch.source, AL10.AL_POSITION, (float) e.getX(), (float) (e.getY() + e.getStandingEyeHeight()), (float) e.getZ());
+    }
+
     // Backward-compatible entry point (non-positional)
     public void speakAsync(MinecraftClient client, String text) {
         speakAsync(client, text, -1);
     }
 
-    // New entry point with positional playback via entityId (if available)
     public void speakAsync(MinecraftClient client, String text, int entityId) {
-        if (quotaExceeded) {
-            notifyClient(client, LanguageManager.get("clanker.tts.quota_exceeded"));
-            return;
-        }
-        exec.submit(() -> {
+        speakAsync(client, text, entityId, TTSSpeakS2CPayload.PRIORITY_STATUS, 0L, 0L);
+    }
+
+    // New entry point with positional playback via entityId (if available). Client thread.
+    public void speakAsync(MinecraftClient client, String text, int entityId, byte priority, long replyId, long traceId) {
+        if (text == null || text.isBlank()) return;
+        // Split replies into sentences, synthesize them in parallel and queue each as soon as it's ready
+        boolean streaming = Config.ttsStreamingOrDefault(true);
+        List<String> chunks = streaming ? SentenceSplitter.split(text) : List.of(text);
+        scheduler.submit(client, entityId, priority, replyId, traceId, chunks);
+    }
+
+    /** Connects to Cloud TTS ahead of the first line, if this client synthesizes locally. */
+    public void warmUp() {
+        synthesizer.warmUp();
+    }
+
+    /** One chunk of a server-synthesized line; plays once the line is complete. Client thread. */
+    public void acceptChunk(MinecraftClient client, TTSAudioChunkS2CPayload chunk) {
+        receiver.accept(client, chunk);
+    }
+
+    /**
+     * Plays a line the server already synthesized (server-side TTS); decode runs off the client thread.
+     * Goes through the same per-entity scheduling as locally synthesized lines. Client thread.
+     */
+    void playAudio(MinecraftClient client, int entityId, byte priority, long replyId, long traceId,
+                   byte codec, int size, Callable<PcmAudio> decode) {
+        CompletableFuture<PcmAudio> audio = CompletableFuture.supplyAsync(() -> {
+            PipelineEvents.AudioDecode event = new PipelineEvents.AudioDecode();
+            event.begin();
             try {
-                PcmAudio pcm = synthesizePcm(text);
-                if (pcm == null || pcm.data.length == 0) {
-                    notifyClient(client, LanguageManager.get("clanker.tts.unavailable"));
-                    return;
-                }
-                // Schedule OpenAL playback on client thread
-                client.execute(() -> {
-                    try {
-                        playOpenAlAtEntity(client, pcm, entityId);
-                    } catch (Throwable alErr) {
-                        // Fallback to Java Sound if OpenAL fails
-                        try { playPcm(pcm); } catch (Exception ignored) {}
-                    }
-                });
-            } catch (QuotaException qe) {
-                quotaExceeded = true;
-                notifyClient(client, LanguageManager.get("clanker.tts.quota_exceeded_full"));
+                return decode.call();
             } catch (Exception e) {
-                notifyClient(client, LanguageManager.format("clanker.tts.error", e.getMessage()));
+                notifyClient(client, strings(client).format("clanker.tts.error", e.getMessage()));
+                return null;
+            } finally {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.codec = codec;
+                    event.bytes = size;
+                    event.correlationId = traceId;
+                    event.commit();
+                }
+            }
+        }, synth);
+        scheduler.submitAudio(client, entityId, priority, replyId, traceId, audio);
+    }
+
+    /**
+     * Starts synthesizing one chunk; the future yields null if there is nothing to play. Cancelling
+     * it before it gets a synthesis slot skips the request.
+     */
+    CompletableFuture<PcmAudio> synthesize(MinecraftClient client, String chunk, long traceId) {
+        CompletableFuture<PcmAudio> audio = new CompletableFuture<>();
+        synth.execute(() -> {
+            try {
+                audio.complete(Trace.call(traceId, () -> load(client, chunk, audio)));
+            } catch (Throwable t) {
+                audio.completeExceptionally(t);
             }
         });
+        return audio;
     }
 
-    private void playOpenAlAtEntity(MinecraftClient client, PcmAudio a, int entityId) {
+    /** When the audio queued for the entity should have finished playing, or 0 if it is silent. Client thread. */
+    long playingUntilNanos(int entityId) {
+        Channel ch = channels.get(entityId);
+        return (ch == null) ? 0 : ch.expectedEndNanos;
+    }
+
+    /** Cuts off whatever the entity is saying. Client thread. */
+    void interrupt(int entityId) {
+        Channel ch = channels.remove(entityId);
+        if (ch != null) closeChannel(ch);
+    }
+
+    /** Silences everything and forgets queued lines, e.g. when leaving a world. Client thread. */
+    public void reset() {
+        receiver.clear();
+        scheduler.clear();
+        for (Channel ch : channels.values()) closeChannel(ch);
+        channels.clear();
+    }
+
+    /** Cached or freshly synthesized audio for one chunk, or null (the player has been told why). */
+    private PcmAudio load(MinecraftClient client, String text, CompletableFuture<PcmAudio> result) {
+        try {
+            PcmAudio pcm;
+            synthPermits.acquire();
+            try {
+                if (result.isDone()) return null; // the line was dropped while waiting for a slot
+                pcm = synthesizer.speak(text, strings(client).code());
+            } finally {
+                synthPermits.release();
+            }
+            if (pcm == null || pcm.data().length == 0) {
+                // Nothing left after sanitizing is silence, not an error
+                String sanitized = TtsSynthesizer.sanitize(text);
+                if (sanitized != null && !sanitized.isEmpty()) notifyClient(client, strings(client).get("clanker.tts.unavailable"));
+                return null;
+            }
+            return pcm;
+        } catch (TtsSynthesizer.QuotaExceededException qe) {
+            noticeQuota(client, qe.justHit() ? "clanker.tts.quota_exceeded_full" : "clanker.tts.quota_exceeded");
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            notifyClient(client, strings(client).format("clanker.tts.error", e.getMessage()));
+        }
+        return null;
+    }
+
+    // Parallel chunks of one reply all hit the quota together; tell the player once
+    private void noticeQuota(MinecraftClient client, String langKey) {
+        long now = System.currentTimeMillis();
+        if (now - lastQuotaNotice < QUOTA_NOTICE_INTERVAL_MS) return;
+        lastQuotaNotice = now;
+        notifyClient(client, strings(client).get(langKey));
+    }
+
+    // Client thread: append a chunk to the entity's source, starting (or restarting) playback if idle
+    void queueChunk(MinecraftClient client, PcmAudio pcm, int entityId, long traceId) {
+        PipelineEvents.AudioUpload event = new PipelineEvents.AudioUpload();
+        event.begin();
+        Channel ch = channels.get(entityId);
+        if (ch == null) {
+            try {
+                ch = openChannel(client, entityId);
+            } catch (Throwable alErr) {
+                // OpenAL is unusable altogether: play through Java Sound instead
+                try { playPcm(pcm); } catch (Exception ignored) {}
+                return;
+            }
+        }
+        int buffer = -1;
+        boolean queued = false;
+        try {
+            // A starved source replays its whole queue on alSourcePlay, so drop what already played first
+            reclaimProcessed(ch);
+            buffer = al.acquireBuffer();
+            // Mono 16-bit little endian PCM
+            int format = (pcm.channels() == 1) ? AL10.AL_FORMAT_MONO16 : AL10.AL_FORMAT_STEREO16;
+            al.upload(buffer, format, pcm.data(), pcm.sampleRate());
+            AL10.alSourceQueueBuffers(ch.source, buffer);
+            queued = true;
+            ch.buffers.addLast(buffer);
+            long now = System.nanoTime();
+            ch.expectedEndNanos = Math.max(ch.expectedEndNanos, now) + pcm.durationNanos();
+            if (AL10.alGetSourcei(ch.source, AL10.AL_SOURCE_STATE) != AL10.AL_PLAYING) AL10.alSourcePlay(ch.source);
+            event.end();
+            if (event.shouldCommit()) {
+                event.entityId = entityId;
+                event.bytes = pcm.data().length;
+                event.correlationId = traceId;
+                event.commit();
+            }
+        } catch (Throwable alErr) {
+            // Drop this chunk: playing it elsewhere would talk over (or out of order with) the live source
+            if (buffer >= 0 && !queued) {
+                try { al.releaseBuffer(buffer); } catch (Throwable ignored) {}
+            }
+        }
+    }
+
+    private Channel openChannel(MinecraftClient client, int entityId) {
+        int source = al.acquireSource();
+        if (source < 0) {
+            // Every pooled source is talking: cut off whoever started first
+            Iterator<Channel> oldest = channels.values().iterator();
+            Channel victim = oldest.next();
+            oldest.remove();
+            closeChannel(victim);
+            source = al.acquireSource();
+        }
+        Channel ch = new Channel(source, entityId);
+        try {
+            placeSource(client, ch);
+        } catch (RuntimeException e) {
+            al.releaseSource(source);
+            throw e;
+        }
+        channels.put(entityId, ch);
+        return ch;
+    }
+
+    private void reclaimProcessed(Channel ch) {
+        int processed = AL10.alGetSourcei(ch.source, AL10.AL_BUFFERS_PROCESSED);
+        for (int i = 0; i < processed; i++) {
+            int buffer = AL10.alSourceUnqueueBuffers(ch.source);
+            ch.buffers.remove(buffer);
+            al.releaseBuffer(buffer);
+        }
+    }
+
+    // Stopping marks every queued buffer processed, so they all come back to the pool
+    private void closeChannel(Channel ch) {
+        AL10.alSourceStop(ch.source);
+        reclaimProcessed(ch);
+        al.releaseSource(ch.source);
+    }
+
+    private static void placeSource(MinecraftClient client, Channel ch) {
+        int source = ch.source;
+        int entityId = ch.entityId;
         Entity src = (client != null && client.world != null && entityId >= 0) ? client.world.getEntityById(entityId) : null;
-        // Prepare OpenAL buffer
-        int buffer = AL10.alGenBuffers();
-        ByteBuffer bb = BufferUtils.createByteBuffer(a.data.length);
-        bb.put(a.data).flip();
-        // Mono 16-bit little endian PCM
-        int format = (a.channels == 1) ? AL10.AL_FORMAT_MONO16 : AL10.AL_FORMAT_STEREO16;
-        AL10.alBufferData(buffer, format, bb, a.sampleRate);
-
-        int source = AL10.alGenSources();
-        AL10.alSourcei(source, AL10.AL_BUFFER, buffer);
         // Reference distance and rolloff to feel like Minecraft
         AL10.alSourcef(source, AL10.AL_REFERENCE_DISTANCE, 2.0f);
         AL10.alSourcef(source, AL10.AL_ROLLOFF_FACTOR, 1.0f);
@@ -130,10 +320,11 @@ public final class ClientTTS {
             sx = sy = sz = 0f;
         }
         AL10.alSource3f(source, AL10.AL_POSITION, sx, sy, sz);
+    }
 
-        AL10.alSourcePlay(source);
-        // Track for cleanup
-        activeAl.add(new int[]{source, buffer});
+    // Messages and voice follow the client's language, like the server's replies to this player
+    private static LanguageManager.Translations strings(MinecraftClient client) {
+        return LanguageManager.forLocale(client.getLanguageManager().getLanguage());
     }
 
     private static void notifyClient(MinecraftClient client, String msg) {
@@ -141,148 +332,11 @@ public final class ClientTTS {
         if (p != null) p.sendMessage(Text.literal(msg), false);
     }
 
-    // Prefer dedicated TTS key; accept aliases via Config
-    private static String resolveTtsKey() {
-        return Config.ttsApiKey();
-    }
-
-    /**
-     * Sanitize text for TTS by removing or replacing symbols that shouldn't be pronounced.
-     * This includes markdown formatting symbols, special characters, and other non-verbal elements.
-     */
-    private static String sanitizeTextForTts(String text) {
-        if (text == null || text.isEmpty()) return text;
-        
-        // Remove markdown-style emphasis markers (*, _, ~, `)
-        String sanitized = text.replaceAll("[*_~`]", "");
-        
-        // Remove other common symbols that shouldn't be spoken
-        sanitized = sanitized.replaceAll("[#@$%^&+=<>\\[\\]{}|\\\\]", "");
-        
-        // Replace multiple spaces with single space
-        sanitized = sanitized.replaceAll("\\s+", " ");
-        
-        // Trim leading/trailing whitespace
-        sanitized = sanitized.trim();
-        
-        return sanitized;
-    }
-
-    private PcmAudio synthesizePcm(String text) throws Exception {
-        String apiKey = resolveTtsKey();
-        if (apiKey == null || apiKey.isBlank()) throw new IllegalStateException("No GOOGLE_TTS_API_KEY configured (you can also set GOOGLE_CLOUD_API_KEY). See clankercraft-llm.properties");
-
-        // Sanitize text to remove symbols that shouldn't be pronounced
-        String sanitizedText = sanitizeTextForTts(text);
-
-        // Cloud Text-to-Speech v1 request for 24 kHz, mono, 16-bit PCM (LINEAR16)
-        int rate = 24000;
-        JsonObject body = new JsonObject();
-        JsonObject input = new JsonObject();
-        input.addProperty("text", sanitizedText);
-        body.add("input", input);
-
-        JsonObject voice = new JsonObject();
-        String lang = resolve("TTS_LANGUAGE_CODE");
-        // If no explicit TTS language is set, derive it from CLANKER_LANGUAGE
-        if (lang == null || lang.isBlank()) {
-            String clankerLang = LanguageManager.getConfiguredLanguage();
-            lang = mapLanguageCodeToTTS(clankerLang);
-        }
-        voice.addProperty("languageCode", lang);
-        String voiceName = resolve("TTS_VOICE_NAME"); // e.g., "en-US-Chirp-HD-F"
-        if (voiceName != null && !voiceName.isBlank()) voice.addProperty("name", voiceName);
-        body.add("voice", voice);
-
-        JsonObject audioCfg = new JsonObject();
-        audioCfg.addProperty("audioEncoding", "LINEAR16");
-        audioCfg.addProperty("sampleRateHertz", rate);
-
-        // Chirp 3: HD voices (e.g., en-US-Chirp-HD-F) do not support speakingRate/pitch.
-        boolean isChirp = voiceName != null && voiceName.toLowerCase().contains("chirp");
-        if (!isChirp) {
-            String rateStr = resolve("TTS_SPEAKING_RATE");
-            if (rateStr != null && !rateStr.isBlank()) {
-                try { audioCfg.addProperty("speakingRate", Double.parseDouble(rateStr)); } catch (NumberFormatException ignored) {}
-            }
-            String pitchStr = resolve("TTS_PITCH");
-            if (pitchStr != null && !pitchStr.isBlank()) {
-                try { audioCfg.addProperty("pitch", Double.parseDouble(pitchStr)); } catch (NumberFormatException ignored) {}
-            }
-        }
-        body.add("audioConfig", audioCfg);
-
-        URI uri = URI.create("https://texttospeech.googleapis.com/v1/text:synthesize?key=" + apiKey);
-        HttpRequest req = HttpRequest.newBuilder(uri)
-                .timeout(Duration.ofSeconds(30))
-                .header("Content-Type", "application/json; charset=UTF-8")
-                .POST(HttpRequest.BodyPublishers.ofString(GSON.toJson(body), StandardCharsets.UTF_8))
-                .build();
-        HttpResponse<String> resp = http.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
-        int sc = resp.statusCode();
-        if (sc == 429) throw new QuotaException();
-        if (sc / 100 != 2) throw new RuntimeException("HTTP " + sc + ": " + resp.body());
-
-        JsonObject json = GSON.fromJson(resp.body(), JsonObject.class);
-        if (!json.has("audioContent")) return null;
-        String b64 = json.get("audioContent").getAsString();
-        byte[] pcm = Base64.getDecoder().decode(b64);
-        return new PcmAudio(pcm, rate, 1);
-    }
-
     private static void playPcm(PcmAudio a) throws Exception {
-        AudioFormat format = new AudioFormat(a.sampleRate, 16, a.channels, true, false); // little-endian
+        AudioFormat format = new AudioFormat(a.sampleRate(), 16, a.channels(), true, false); // little-endian
         Clip clip = AudioSystem.getClip();
-        clip.open(format, a.data, 0, a.data.length);
+        clip.open(format, a.data(), 0, a.data().length);
         clip.addLineListener(event -> { if (event.getType() == LineEvent.Type.STOP) clip.close(); });
         clip.start();
     }
-
-    private record PcmAudio(byte[] data, int sampleRate, int channels) {}
-
-    private static String resolve(String key) {
-        // Prefer centralized config
-        String v0 = Config.get(key);
-        if (v0 != null) return v0;
-
-        // JVM property
-        String v = System.getProperty(key);
-        if (v != null && !v.isBlank()) return v.trim();
-        // env var
-        v = System.getenv(key);
-        if (v != null && !v.isBlank()) return v.trim();
-        // config file
-        try {
-            Path configDir = FabricLoader.getInstance().getConfigDir();
-            Path file = configDir.resolve("clankercraft-llm.properties");
-            if (!Files.exists(file)) return null;
-            Properties props = new Properties();
-            try (InputStream in = Files.newInputStream(file)) { props.load(in); }
-            v = props.getProperty(key);
-            return (v == null || v.isBlank()) ? null : v.trim();
-        } catch (Throwable ignored) {
-            return null;
-        }
-    }
-
-    /**
-     * Map a simple language code (e.g., "en", "es") to a TTS language code (e.g., "en-US", "es-ES").
-     */
-    private static String mapLanguageCodeToTTS(String langCode) {
-        return switch (langCode.toLowerCase()) {
-            case "en" -> "en-US";
-            case "es" -> "es-ES";
-            case "fr" -> "fr-FR";
-            case "de" -> "de-DE";
-            case "it" -> "it-IT";
-            case "pt" -> "pt-PT";
-            default -> "en-US";
-        };
-    }
-
-    private static double clamp(double v, double lo, double hi) {
-        return (v < lo) ? lo : (v > hi) ? hi : v;
-    }
-
-    private static final class QuotaException extends Exception {}
 }
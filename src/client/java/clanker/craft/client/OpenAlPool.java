@@ -0,0 +1,90 @@
+package clanker.craft.client;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.openal.AL10;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Reusable OpenAL objects for Clanker speech: a fixed number of sources, a bounded stack of buffer
+ * names, and size-classed direct staging buffers for uploads. alBufferData copies into OpenAL's own
+ * memory, so a staging buffer is back in its pool as soon as the upload returns; steady-state
+ * speech therefore allocates no native or direct memory at all. Client thread only.
+ */
+final class OpenAlPool {
+    static final int MAX_SOURCES = 16;
+    private static final int MAX_IDLE_BUFFERS = 64;
+    private static final int MIN_CLASS_SHIFT = 14; // 16 KiB
+    private static final int MAX_CLASS_SHIFT = 22; // 4 MiB (~87 s of 24 kHz mono); bigger uploads aren't pooled
+    private static final int PER_CLASS = 2;
+
+    private final ArrayDeque<Integer> freeSources = new ArrayDeque<>();
+    private int sourcesCreated;
+    private final ArrayDeque<Integer> freeBuffers = new ArrayDeque<>();
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<ByteBuffer>[] staging = new ArrayDeque[MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1];
+
+    OpenAlPool() {
+        for (int i = 0; i < staging.length; i++) staging[i] = new ArrayDeque<>(PER_CLASS);
+    }
+
+    /** A stopped, empty source, or -1 when all {@link #MAX_SOURCES} are in use. */
+    int acquireSource() {
+        Integer s = freeSources.pollFirst();
+        if (s != null) return s;
+        if (sourcesCreated >= MAX_SOURCES) return -1;
+        int source = AL10.alGenSources();
+        sourcesCreated++;
+        return source;
+    }
+
+    /** Stops the source and detaches its queue; the caller must have reclaimed the queued buffers. */
+    void releaseSource(int source) {
+        AL10.alSourceStop(source);
+        AL10.alSourcei(source, AL10.AL_BUFFER, 0);
+        freeSources.addFirst(source);
+    }
+
+    int acquireBuffer() {
+        Integer b = freeBuffers.pollFirst();
+        return b != null ? b : AL10.alGenBuffers();
+    }
+
+    void releaseBuffer(int buffer) {
+        if (freeBuffers.size() < MAX_IDLE_BUFFERS) freeBuffers.addFirst(buffer);
+        else AL10.alDeleteBuffers(buffer);
+    }
+
+    /** Copies 16-bit PCM into the buffer through a pooled staging buffer. */
+    void upload(int buffer, int format, byte[] data, int sampleRate) {
+        ByteBuffer bb = borrow(data.length);
+        try {
+            bb.put(data).flip();
+            AL10.alBufferData(buffer, format, bb, sampleRate);
+        } finally {
+            giveBack(bb);
+        }
+    }
+
+    private ByteBuffer borrow(int size) {
+        int cls = sizeClass(size);
+        if (cls < 0) return BufferUtils.createByteBuffer(size);
+        ByteBuffer bb = staging[cls].pollFirst();
+        if (bb == null) bb = BufferUtils.createByteBuffer(1 << (cls + MIN_CLASS_SHIFT));
+        bb.clear().limit(size);
+        return bb;
+    }
+
+    private void giveBack(ByteBuffer bb) {
+        int cls = sizeClass(bb.capacity());
+        if (cls < 0 || bb.capacity() != 1 << (cls + MIN_CLASS_SHIFT)) return; // one-off, let GC have it
+        if (staging[cls].size() < PER_CLASS) staging[cls].addFirst(bb);
+    }
+
+    // Smallest power-of-two class that fits, or -1 if too big to pool
+    private static int sizeClass(int size) {
+        int shift = Math.max(MIN_CLASS_SHIFT, 32 - Integer.numberOfLeadingZeros(Math.max(1, size) - 1));
+        return shift > MAX_CLASS_SHIFT ? -1 : shift - MIN_CLASS_SHIFT;
+    }
+}
@@ -0,0 +1,110 @@
+package clanker.craft.client;
+
+import clanker.craft.network.TTSAudioChunkS2CPayload;
+import clanker.craft.tts.PcmAudio;
+import clanker.craft.tts.TtsCodec;
+import net.minecraft.client.MinecraftClient;
+import org.lwjgl.stb.STBVorbis;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.system.libc.LibCStdlib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Reassembles server-synthesized lines from their chunks and hands them to {@link ClientTTS} for
+ * decoding and playback. Lines whose chunks stop arriving are forgotten after a while. Client thread.
+ */
+final class TtsAudioReceiver {
+    private static final long STALE_NANOS = 30_000_000_000L;
+    private static final int MAX_PCM_BYTES = 16 * 1024 * 1024; // ~5.8 min of 24 kHz mono
+
+    private static final class Assembly {
+        final byte[][] parts;
+        final long startedNanos = System.nanoTime();
+        int received;
+
+        Assembly(int total) {
+            this.parts = new byte[total][];
+        }
+    }
+
+    private final Map<Long, Assembly> pending = new HashMap<>();
+
+    void accept(MinecraftClient client, TTSAudioChunkS2CPayload p) {
+        if (p.total() <= 0 || p.total() > TTSAudioChunkS2CPayload.MAX_CHUNKS || p.index() < 0 || p.index() >= p.total()) return;
+        pruneStale();
+        Assembly a = pending.computeIfAbsent(p.utteranceId(), k -> new Assembly(p.total()));
+        if (a.parts.length != p.total() || a.parts[p.index()] != null) return;
+        a.parts[p.index()] = p.data();
+        if (++a.received < a.parts.length) return;
+        pending.remove(p.utteranceId());
+
+        byte[] data = concat(a.parts);
+        byte codec = p.codec();
+        int sampleRate = p.sampleRate();
+        int channels = p.channels();
+        ClientTTS.get().playAudio(client, p.entityId(), p.priority(), p.replyId(), p.traceId(), codec, data.length,
+                () -> decode(codec, data, sampleRate, channels));
+    }
+
+    void clear() {
+        pending.clear();
+    }
+
+    private void pruneStale() {
+        long now = System.nanoTime();
+        for (Iterator<Assembly> it = pending.values().iterator(); it.hasNext();) {
+            if (now - it.next().startedNanos > STALE_NANOS) it.remove();
+        }
+    }
+
+    private static byte[] concat(byte[][] parts) {
+        int len = 0;
+        for (byte[] part : parts) len += part.length;
+        byte[] out = new byte[len];
+        int off = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, out, off, part.length);
+            off += part.length;
+        }
+        return out;
+    }
+
+    static PcmAudio decode(byte codec, byte[] data, int sampleRate, int channels) throws Exception {
+        return switch (codec) {
+            case TtsCodec.OGG_VORBIS -> decodeVorbis(data);
+            case TtsCodec.DEFLATE_PCM -> new PcmAudio(TtsCodec.inflate(data, MAX_PCM_BYTES), sampleRate, channels);
+            default -> throw new IOException("unknown TTS codec " + codec);
+        };
+    }
+
+    // stb_vorbis ships with Minecraft's LWJGL; it needs the file in native memory
+    private static PcmAudio decodeVorbis(byte[] ogg) throws IOException {
+        ByteBuffer in = MemoryUtil.memAlloc(ogg.length);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            in.put(ogg).flip();
+            IntBuffer channels = stack.mallocInt(1);
+            IntBuffer sampleRate = stack.mallocInt(1);
+            ShortBuffer samples = STBVorbis.stb_vorbis_decode_memory(in, channels, sampleRate);
+            if (samples == null) throw new IOException("invalid Vorbis audio");
+            try {
+                if (samples.remaining() * 2L > MAX_PCM_BYTES) throw new IOException("decoded audio too long");
+                byte[] pcm = new byte[samples.remaining() * 2];
+                ByteBuffer.wrap(pcm).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().put(samples);
+                return new PcmAudio(pcm, sampleRate.get(0), channels.get(0));
+            } finally {
+                LibCStdlib.free(samples);
+            }
+        } finally {
+            MemoryUtil.memFree(in);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package clanker.craft.client;
+
+import clanker.craft.network.TTSSpeakS2CPayload;
+import clanker.craft.trace.Trace;
+import clanker.craft.tts.PcmAudio;
+import net.minecraft.client.MinecraftClient;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Decides what each Clanker says next. Every entity has a small bounded queue ordered by priority
+ * (replies before status lines, first come first served within a priority). Lines that waited past
+ * their deadline are dropped instead of being played late, and a reply with a new reply id cuts off
+ * whatever the entity is saying and discards the older reply's remaining sentences (barge-in).
+ * Synthesis starts as soon as a line arrives so queued sentences play back without gaps; a line
+ * only counts as done once its audio has (nearly) finished playing, so the deadlines bound when a
+ * line is heard, not just when it is synthesized. Dropped lines cancel their pending synthesis.
+ * Client thread only.
+ */
+final class TtsScheduler {
+    private static final int MAX_WAITING = 6; // per entity, not counting the line being played
+    private static final long STATUS_DEADLINE_NANOS = 6_000_000_000L;
+    private static final long REPLY_DEADLINE_NANOS = 20_000_000_000L;
+    private static final long HANDOFF_NANOS = 200_000_000L; // hand over this early so sentences stay gapless
+
+    private static final class Utterance {
+        final byte priority;
+        final long replyId;
+        final long traceId;
+        final long deadlineNanos;
+        final List<CompletableFuture<PcmAudio>> chunks;
+        boolean cancelled;
+        boolean delivered; // every chunk is queued for playback
+
+        Utterance(byte priority, long replyId, long traceId, long deadlineNanos, List<CompletableFuture<PcmAudio>> chunks) {
+            this.priority = priority;
+            this.replyId = replyId;
+            this.traceId = traceId;
+            this.deadlineNanos = deadlineNanos;
+            this.chunks = chunks;
+        }
+
+        boolean isReply() { return priority >= TTSSpeakS2CPayload.PRIORITY_REPLY; }
+
+        // Chunks still waiting for a synthesis slot never make their request
+        void cancel() {
+            cancelled = true;
+            for (CompletableFuture<PcmAudio> chunk : chunks) chunk.cancel(false);
+        }
+    }
+
+    // Lanes outlive their queues: lastReplyId must survive until the reply's last sentence arrives
+    private static final class Lane {
+        final List<Utterance> waiting = new ArrayList<>(); // highest priority first
+        Utterance current; // being handed to playback, chunk by chunk, or still playing
+        long lastReplyId;  // the reply this entity spoke or is speaking
+        long spokenReplyId; // the reply whose first sentence has started playing
+    }
+
+    private final ClientTTS tts;
+    private final Map<Integer, Lane> lanes = new HashMap<>();
+
+    TtsScheduler(ClientTTS tts) {
+        this.tts = tts;
+    }
+
+    void submit(MinecraftClient client, int entityId, byte priority, long replyId, long traceId, List<String> chunks) {
+        Lane lane = admit(entityId, priority, replyId);
+        if (lane == null) return;
+        List<CompletableFuture<PcmAudio>> audio = new ArrayList<>(chunks.size());
+        for (String chunk : chunks) audio.add(tts.synthesize(client, chunk, traceId));
+        enqueue(client, entityId, lane, priority, replyId, traceId, audio);
+    }
+
+    /** Same as {@link #submit} for audio that is already on its way (server-side TTS). */
+    void submitAudio(MinecraftClient client, int entityId, byte priority, long replyId, long traceId, CompletableFuture<PcmAudio> audio) {
+        Lane lane = admit(entityId, priority, replyId);
+        if (lane == null) {
+            audio.cancel(false);
+            return;
+        }
+        enqueue(client, entityId, lane, priority, replyId, traceId, List.of(audio));
+    }
+
+    // The entity's lane with room for the line, or null if it is full of more important lines
+    private Lane admit(int entityId, byte priority, long replyId) {
+        Lane lane = lanes.computeIfAbsent(entityId, k -> new Lane());
+        boolean reply = priority >= TTSSpeakS2CPayload.PRIORITY_REPLY;
+
+        if (reply && replyId != lane.lastReplyId) bargeIn(lane, entityId, replyId);
+        dropExpired(lane, System.nanoTime());
+
+        if (lane.waiting.size() >= MAX_WAITING && !evictFor(lane, priority)) {
+            return null; // this one would only play late
+        }
+        return lane;
+    }
+
+    private void enqueue(MinecraftClient client, int entityId, Lane lane, byte priority, long replyId, long traceId,
+                         List<CompletableFuture<PcmAudio>> audio) {
+        boolean reply = priority >= TTSSpeakS2CPayload.PRIORITY_REPLY;
+        long deadline = System.nanoTime() + (reply ? REPLY_DEADLINE_NANOS : STATUS_DEADLINE_NANOS);
+        insert(lane, new Utterance(priority, replyId, traceId, deadline, audio));
+        pump(client, entityId, lane);
+    }
+
+    // Stop the current line and forget older replies; status lines keep their place
+    private void bargeIn(Lane lane, int entityId, long replyId) {
+        lane.lastReplyId = replyId;
+        if (lane.current != null) {
+            lane.current.cancel();
+            lane.current = null;
+        }
+        lane.waiting.removeIf(u -> u.isReply() && u.replyId != replyId && cancel(u));
+        tts.interrupt(entityId);
+    }
+
+    // The rest of the reply being spoken is never stale: it waited on its own earlier sentences
+    private static void dropExpired(Lane lane, long now) {
+        lane.waiting.removeIf(u -> now > u.deadlineNanos && !continues(lane, u) && cancel(u));
+    }
+
+    private static boolean continues(Lane lane, Utterance u) {
+        return u.isReply() && u.replyId == lane.spokenReplyId;
+    }
+
+    private static boolean cancel(Utterance u) {
+        u.cancel();
+        return true;
+    }
+
+    // Make room by dropping the oldest line of the lowest priority below or equal to the newcomer's.
+    // Sentences of the reply being spoken are never dropped (that would leave holes in the middle of
+    // it); with nothing else to drop, the newcomer is the one that goes.
+    private static boolean evictFor(Lane lane, byte priority) {
+        int victim = -1;
+        for (int i = lane.waiting.size() - 1; i >= 0; i--) {
+            Utterance u = lane.waiting.get(i);
+            if (u.priority > priority) break;
+            if (u.isReply() && u.replyId == lane.lastReplyId) continue;
+            // Scan back to the first line of the lowest priority that can go
+            if (victim >= 0 && lane.waiting.get(victim).priority != u.priority) break;
+            victim = i;
+        }
+        if (victim < 0) return false;
+        lane.waiting.remove(victim).cancel();
+        return true;
+    }
+
+    private static void insert(Lane lane, Utterance u) {
+        int i = 0;
+        while (i < lane.waiting.size() && lane.waiting.get(i).priority >= u.priority) i++;
+        lane.waiting.add(i, u);
+    }
+
+    private void pump(MinecraftClient client, int entityId, Lane lane) {
+        long now = System.nanoTime();
+        while (lane.current == null && !lane.waiting.isEmpty()) {
+            Utterance next = lane.waiting.remove(0);
+            if (now > next.deadlineNanos && !continues(lane, next)) {
+                next.cancel(); // stale: better silent than late
+                continue;
+            }
+            lane.current = next;
+            if (next.isReply()) lane.lastReplyId = lane.spokenReplyId = next.replyId;
+            deliver(client, entityId, lane, next);
+        }
+    }
+
+    // Chunks go to playback in order, each once it and all before it are synthesized
+    private void deliver(MinecraftClient client, int entityId, Lane lane, Utterance u) {
+        CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+        for (CompletableFuture<PcmAudio> chunk : u.chunks) {
+            tail = tail.thenCombine(chunk, (prev, pcm) -> pcm).thenAccept(pcm -> {
+                // Schedule OpenAL playback on client thread
+                if (pcm != null) client.execute(Trace.hop("tts_play", u.traceId, () -> {
+                    if (!u.cancelled) tts.queueChunk(client, pcm, entityId, u.traceId);
+                }));
+            });
+        }
+        tail.whenComplete((v, err) -> client.execute(() -> {
+            if (lane.current != u) return; // barged in meanwhile
+            u.delivered = true;
+            handOff(client, entityId, lane, System.nanoTime());
+        }));
+    }
+
+    /** Moves each entity on to its next line as the current one finishes playing. Client tick. */
+    void tick(MinecraftClient client) {
+        if (lanes.isEmpty()) return;
+        long now = System.nanoTime();
+        for (Map.Entry<Integer, Lane> e : lanes.entrySet()) handOff(client, e.getKey(), e.getValue(), now);
+    }
+
+    private void handOff(MinecraftClient client, int entityId, Lane lane, long now) {
+        Utterance u = lane.current;
+        if (u == null || !u.delivered || tts.playingUntilNanos(entityId) - now > HANDOFF_NANOS) return;
+        lane.current = null;
+        pump(client, entityId, lane);
+    }
+
+    /** Forget everything (e.g. on disconnect, when entity ids stop meaning anything). */
+    void clear() {
+        for (Iterator<Lane> it = lanes.values().iterator(); it.hasNext();) {
+            Lane lane = it.next();
+            if (lane.current != null) lane.current.cancel();
+            for (Utterance u : lane.waiting) u.cancel();
+            it.remove();
+        }
+    }
+}
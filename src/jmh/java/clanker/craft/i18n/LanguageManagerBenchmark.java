@@ -0,0 +1,56 @@
+package clanker.craft.i18n;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Message lookups as the chat handler does them: pick the player's table by client locale, then
+ * get or format a key. Goes through forLocale so no config file is needed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LanguageManagerBenchmark {
+    public String locale = "de_de";
+    public String prompt = "a sunset over snowy mountains";
+    private LanguageManager.Translations german;
+
+    @Setup
+    public void setup() {
+        german = LanguageManager.forLocale(locale);
+    }
+
+    @Benchmark
+    public LanguageManager.Translations forLocale() {
+        return LanguageManager.forLocale(locale);
+    }
+
+    @Benchmark
+    public String get() {
+        return german.get("clanker.busy");
+    }
+
+    /** A key German doesn't override would come from the merged English table in the same lookup. */
+    @Benchmark
+    public String getMissingKey() {
+        return german.get("clanker.not.a.key");
+    }
+
+    @Benchmark
+    public String format() {
+        return german.format("clanker.painting.start", prompt);
+    }
+}
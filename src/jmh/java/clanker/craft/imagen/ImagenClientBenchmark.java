@@ -0,0 +1,67 @@
+package clanker.craft.imagen;
+
+import clanker.craft.vertex.MediaFixtures;
+import clanker.craft.vertex.StreamingBase64Extractor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Getting the painting out of an Imagen response (decoded straight from the body stream) and
+ * shrinking it to the 64x64 painting texture.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx1g", "-Djava.awt.headless=true"})
+public class ImagenClientBenchmark {
+    /** Decoded PNG size; a 1024x1024 Imagen PNG is typically 1.5-2 MB. Ignored with a cassette. */
+    @Param({"2097152", "8388608"})
+    public int imageBytes;
+
+    /** Edge of the square source image for the resize. */
+    @Param({"1024"})
+    public int imageSize;
+
+    private byte[] response;
+    private BufferedImage image;
+
+    @Setup
+    public void setup() {
+        byte[] recorded = MediaFixtures.recorded("/models/imagen", "/models/imagegeneration");
+        response = (recorded != null) ? recorded
+                : MediaFixtures.prediction("bytesBase64Encoded", "image/png", MediaFixtures.media(imageBytes, 42), false);
+        image = new BufferedImage(imageSize, imageSize, BufferedImage.TYPE_INT_ARGB);
+        SplittableRandom random = new SplittableRandom(7);
+        for (int y = 0; y < imageSize; y++) {
+            for (int x = 0; x < imageSize; x++) image.setRGB(x, y, 0xFF000000 | random.nextInt(0x1000000));
+        }
+    }
+
+    @Benchmark
+    public long extractImage() throws IOException {
+        return StreamingBase64Extractor.extract(new ByteArrayInputStream(response), ImagenClient.IMAGE_KEYS, OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public BufferedImage resizeImage() {
+        return ImagenClient.resizeImage(image, 64, 64);
+    }
+}
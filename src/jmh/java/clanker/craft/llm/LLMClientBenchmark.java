@@ -0,0 +1,107 @@
+package clanker.craft.llm;
+
+import clanker.craft.vertex.MediaFixtures;
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Building a Gemini request from the conversation and reading the reply back out (a recorded one with a cassette). */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LLMClientBenchmark {
+    private static final Gson GSON = new Gson();
+
+    /** Turns of history sent with the message; the context window keeps it in this range. */
+    @Param({"4", "24"})
+    public int turns;
+
+    private List<String> history;
+    private String response;
+    private String streamChunk;
+
+    @Setup
+    public void setup() {
+        history = new ArrayList<>();
+        // The pinned persona instruction, then alternating turns of typical chat length
+        history.add("user: System instruction: You are Clanker, an excitable, upbeat companion. Respond with enthusiasm, "
+                + "positivity, and helpful energy. Keep responses concise but lively. Always respond in English.");
+        for (int i = 0; i < turns; i++) {
+            history.add(i % 2 == 0
+                    ? "user: Hey Clanker, what should I build next to my wheat farm on turn " + i + "? Something with redstone maybe?"
+                    : "model: Ooh, how about an auto-harvester with observers and pistons? It'd look *amazing* right next to the water channel!");
+        }
+        response = """
+                {
+                  "candidates": [
+                    {
+                      "content": {
+                        "parts": [
+                          {
+                            "text": "Ooh, a **redstone** auto-harvester would be perfect! Put observers facing the crops, wire them to a row of pistons, and run a water stream underneath so the wheat floats into a hopper chest. Want me to help you plan the layout?"
+                          }
+                        ],
+                        "role": "model"
+                      },
+                      "finishReason": "STOP",
+                      "avgLogprobs": -0.31524375915527345,
+                      "safetyRatings": [
+                        {"category": "HARM_CATEGORY_HATE_SPEECH", "probability": "NEGLIGIBLE"},
+                        {"category": "HARM_CATEGORY_DANGEROUS_CONTENT", "probability": "NEGLIGIBLE"},
+                        {"category": "HARM_CATEGORY_HARASSMENT", "probability": "NEGLIGIBLE"},
+                        {"category": "HARM_CATEGORY_SEXUALLY_EXPLICIT", "probability": "NEGLIGIBLE"}
+                      ]
+                    }
+                  ],
+                  "usageMetadata": {
+                    "promptTokenCount": 812,
+                    "candidatesTokenCount": 61,
+                    "totalTokenCount": 873,
+                    "promptTokensDetails": [{"modality": "TEXT", "tokenCount": 812}]
+                  },
+                  "modelVersion": "gemini-2.0-flash",
+                  "responseId": "kQ3xZ9mFLp2m1MkP0bXh4QY"
+                }
+                """;
+        streamChunk = "{\"candidates\": [{\"content\": {\"parts\": [{\"text\": \"Put observers facing the crops, \"}],"
+                + "\"role\": \"model\"},\"index\": 0}],\"usageMetadata\": {\"promptTokenCount\": 812,\"totalTokenCount\": 812},"
+                + "\"modelVersion\": \"gemini-2.0-flash\"}";
+        // Replies captured from production, when a cassette was given
+        byte[] recorded = MediaFixtures.recorded(":generateContent");
+        if (recorded != null) response = new String(recorded, StandardCharsets.UTF_8);
+    }
+
+    /** What happens before every request goes out: the body tree plus its JSON text. */
+    @Benchmark
+    public String buildRequest() {
+        return GSON.toJson(LLMClient.buildBody(history, "Can you help me plan the layout?"));
+    }
+
+    @Benchmark
+    public String parseText() {
+        return LLMClient.parseText(response);
+    }
+
+    /** One server-sent event of a streamed reply; there are dozens per reply. */
+    @Benchmark
+    public String parseDelta() {
+        return LLMClient.parseDelta(streamChunk);
+    }
+}
@@ -0,0 +1,62 @@
+package clanker.craft.music;
+
+import clanker.craft.vertex.MediaFixtures;
+import clanker.craft.vertex.StreamingBase64Extractor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding a Lyria clip out of its response: 30 s of 48 kHz stereo WAV is about 5.5 MB, 7.3 MB as
+ * base64. Covers the keyed lookup and the schema-agnostic fallback that finds the longest base64 run.
+ * With a cassette the keyed lookup reads a recorded Lyria response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx1g")
+public class Lyria2ClientBenchmark {
+    private static final int WAV_BYTES = 30 * 48_000 * 2 * 2 + 44;
+
+    /** Whether the body escapes '/' as "\/" inside strings. */
+    @Param({"false", "true"})
+    public boolean escapedSlashes;
+
+    private byte[] keyed;
+    private byte[] unknownKey;
+
+    @Setup
+    public void setup() {
+        byte[] wav = MediaFixtures.media(WAV_BYTES, 1234);
+        byte[] recorded = MediaFixtures.recorded("/models/lyria");
+        keyed = (recorded != null) ? recorded : MediaFixtures.prediction("bytesBase64Encoded", "audio/wav", wav, escapedSlashes);
+        unknownKey = MediaFixtures.prediction("renderedClip", "audio/wav", wav, escapedSlashes);
+    }
+
+    @Benchmark
+    public long extractAudio() throws IOException {
+        return StreamingBase64Extractor.extract(new ByteArrayInputStream(keyed), Lyria2Client.AUDIO_KEYS, OutputStream.nullOutputStream());
+    }
+
+    /** A response schema we don't know the key of: found by the base64 heuristic. */
+    @Benchmark
+    public long deepSearchFirstBase64() throws IOException {
+        return StreamingBase64Extractor.extract(new ByteArrayInputStream(unknownKey), Set.of(), OutputStream.nullOutputStream());
+    }
+}
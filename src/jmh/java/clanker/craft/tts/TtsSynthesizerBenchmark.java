@@ -0,0 +1,37 @@
+package clanker.craft.tts;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/** Cleaning a reply for speech; runs for every sentence before the cache lookup. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TtsSynthesizerBenchmark {
+    public String sentence = "Ooh, a **redstone** auto-harvester would be _perfect_!";
+    public String reply = "Ooh, a **redstone** auto-harvester would be _perfect_! Put `observers` facing the crops, "
+            + "wire them to a row of pistons (#3 or #4 works)   and run a water stream underneath... "
+            + "so the wheat floats into a [hopper] chest <3 Want me to help you plan the layout? ~Clanker~ @you";
+
+    @Benchmark
+    public String sanitizeSentence() {
+        return TtsSynthesizer.sanitize(sentence);
+    }
+
+    @Benchmark
+    public String sanitizeReply() {
+        return TtsSynthesizer.sanitize(reply);
+    }
+}
@@ -0,0 +1,70 @@
+package clanker.craft.vertex;
+
+import clanker.craft.http.Cassette;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.SplittableRandom;
+
+/**
+ * Vertex AI prediction responses carrying base64 media, shaped like the real ones, or real ones
+ * taken from a recorded cassette (-Pjmh.cassette=<file>).
+ */
+public final class MediaFixtures {
+    private MediaFixtures() {}
+
+    /**
+     * The body of the first successful recorded response whose path contains one of pathParts, or
+     * null when no cassette was given (system property clanker.cassette) or none matches.
+     */
+    public static byte[] recorded(String... pathParts) {
+        String file = System.getProperty("clanker.cassette");
+        if (file == null || file.isBlank()) return null;
+        try {
+            for (Cassette.Recording r : Cassette.read(Path.of(file))) {
+                if (r.status() / 100 != 2) continue;
+                for (String part : pathParts) {
+                    if (r.target().contains(part)) return r.body();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return null;
+    }
+
+    /** Incompressible bytes, like PNG or WAV payloads as far as base64 is concerned. Same seed, same bytes. */
+    public static byte[] media(int size, long seed) {
+        byte[] out = new byte[size];
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < size; i += 8) {
+            long r = random.nextLong();
+            for (int j = 0; j < 8 && i + j < size; j++) out[i + j] = (byte) (r >>> (8 * j));
+        }
+        return out;
+    }
+
+    /**
+     * {"predictions":[{"mimeType":...,key:"<base64>"}],"deployedModelId":...}. Some Google front ends
+     * escape '/' as "\/" in JSON strings; escapeSlashes reproduces that.
+     */
+    public static byte[] prediction(String key, String mimeType, byte[] media, boolean escapeSlashes) {
+        String b64 = Base64.getEncoder().encodeToString(media);
+        if (escapeSlashes) b64 = b64.replace("/", "\\/");
+        ByteArrayOutputStream out = new ByteArrayOutputStream(b64.length() + 256);
+        write(out, "{\n  \"predictions\": [\n    {\n      \"mimeType\": \"" + mimeType + "\",\n      \"" + key + "\": \"");
+        write(out, b64);
+        write(out, "\"\n    }\n  ],\n  \"deployedModelId\": \"1234567890123456789\",\n"
+                + "  \"model\": \"projects/123456789012/locations/us-central1/models/fixture\",\n"
+                + "  \"modelDisplayName\": \"fixture\",\n  \"modelVersionId\": \"1\"\n}\n");
+        return out.toByteArray();
+    }
+
+    private static void write(ByteArrayOutputStream out, String s) {
+        out.writeBytes(s.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,379 @@
+package clanker.craft.standin;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand-in for every provider ClankerCraft calls, answering with the same request and
+ * response shapes as Google: Gemini {@code generateContent} / {@code streamGenerateContent} (SSE)
+ * and {@code models.get}, Vertex AI {@code :predict} for Imagen and Lyria (including the empty-body
+ * discovery probe), and Cloud TTS {@code text:synthesize}. Point the mod at it with
+ * {@code PROVIDER_BASE_URL=http://127.0.0.1:8089}; any API key and project id are accepted.
+ *
+ * <p>Options are {@code --name=value}; a {@code --name.provider=value} form (provider one of gemini,
+ * imagen, lyria, tts) overrides a setting for that provider only:
+ * <ul>
+ *   <li>{@code port} (8089)</li>
+ *   <li>{@code latency}: {@code fixed:MS}, {@code uniform:MIN:MAX} or {@code lognormal:P50:P99}
+ *       (defaults: gemini lognormal:700:2500, imagen lognormal:6000:12000, lyria lognormal:20000:40000,
+ *       tts lognormal:250:900)</li>
+ *   <li>{@code error-rate}, {@code rate-limit-rate}: share of requests answered 500 / 429 (0)</li>
+ *   <li>{@code reply-words} (40), {@code image-size} edge in pixels (1024), {@code music-seconds} (30),
+ *       {@code speech-chars-per-second} (15)</li>
+ * </ul>
+ * Streamed replies spend a third of the drawn latency before the first chunk and spread the rest
+ * over the chunks, like a model emitting tokens.
+ */
+public final class ProviderStandIn {
+    private static final Pattern MODELS = Pattern.compile("^/v1(?:beta)?/models/([^/:]+)(?::(\\w+))?$");
+    private static final Pattern PUBLISHER = Pattern.compile("^/v1/projects/[^/]+/locations/[^/]+/publishers/google/models/([^/:]+):(\\w+)$");
+    private static final String[] WORDS = ("redstone creeper village diamond torch pickaxe furnace wheat chest "
+            + "beacon nether portal obsidian lantern river mountain sunset cave lava emerald farm tower bridge "
+            + "the a and of to with near under over some every little big bright quiet").split(" ");
+
+    private final Options options;
+    private final byte[] image;
+    private final byte[] music;
+    private final Map<String, LongAdder> served = new ConcurrentHashMap<>();
+
+    private ProviderStandIn(Options options) throws IOException {
+        this.options = options;
+        // Built once: the payloads are the expensive part and only their size matters to the client
+        this.image = noisePng(options.integer("image-size", "imagen", 1024));
+        this.music = wav(48_000, 2, options.integer("music-seconds", "lyria", 30) * 48_000);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Options options = Options.parse(args);
+        ProviderStandIn standIn = new ProviderStandIn(options);
+        int port = options.integer("port", null, 8089);
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 256);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/", standIn::handle);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(standIn::printSummary));
+        System.out.printf(Locale.ROOT, "Provider stand-in on http://127.0.0.1:%d/ (PNG %d KB, WAV %d KB)%n",
+                port, standIn.image.length / 1024, standIn.music.length / 1024);
+    }
+
+    private void handle(HttpExchange ex) throws IOException {
+        try (ex) {
+            String path = ex.getRequestURI().getPath();
+            String method = ex.getRequestMethod();
+            byte[] body = ex.getRequestBody().readAllBytes();
+            Matcher m;
+            if ((m = MODELS.matcher(path)).matches()) {
+                String call = m.group(2);
+                if (call == null && method.equals("GET")) {
+                    count("gemini", "get");
+                    json(ex, 200, "{\"name\":\"models/" + m.group(1) + "\",\"displayName\":\"" + m.group(1) + "\"}");
+                } else if ("generateContent".equals(call)) {
+                    if (inject(ex, "gemini", call)) return;
+                    sleep(options.latency("gemini").draw());
+                    json(ex, 200, geminiResponse(reply(), true).toString());
+                } else if ("streamGenerateContent".equals(call)) {
+                    if (inject(ex, "gemini", call)) return;
+                    stream(ex);
+                } else {
+                    error(ex, 404, "NOT_FOUND", "Unknown Gemini method " + call);
+                }
+            } else if ((m = PUBLISHER.matcher(path)).matches()) {
+                predict(ex, m.group(1), m.group(2), body);
+            } else if (path.equals("/v1/text:synthesize") && method.equals("POST")) {
+                synthesize(ex, body);
+            } else {
+                // Warm-up HEADs and anything else
+                count("other", method.toLowerCase(Locale.ROOT));
+                error(ex, 404, "NOT_FOUND", "No stand-in for " + method + " " + path);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Vertex AI publisher models: the model name decides whether this is Imagen or Lyria
+    private void predict(HttpExchange ex, String model, String method, byte[] body) throws IOException, InterruptedException {
+        String provider = model.startsWith("lyria") ? "lyria"
+                : (model.startsWith("imagen") || model.startsWith("imagegeneration")) ? "imagen" : null;
+        if (provider == null || !method.equals("predict")) {
+            count("vertex", "404");
+            error(ex, 404, "NOT_FOUND", "Publisher model " + model + ":" + method + " not found");
+            return;
+        }
+        JsonObject req = JsonParser.parseString(new String(body, StandardCharsets.UTF_8)).getAsJsonObject();
+        JsonArray instances = req.has("instances") ? req.getAsJsonArray("instances") : new JsonArray();
+        if (instances.isEmpty()) {
+            // What endpoint discovery's empty probe gets from a live route
+            count(provider, "probe");
+            error(ex, 400, "INVALID_ARGUMENT", "instances must not be empty");
+            return;
+        }
+        if (inject(ex, provider, "predict")) return;
+        sleep(options.latency(provider).draw());
+        boolean lyria = provider.equals("lyria");
+        JsonObject prediction = new JsonObject();
+        prediction.addProperty("bytesBase64Encoded", Base64.getEncoder().encodeToString(lyria ? music : image));
+        prediction.addProperty("mimeType", lyria ? "audio/wav" : "image/png");
+        JsonArray predictions = new JsonArray();
+        predictions.add(prediction);
+        JsonObject resp = new JsonObject();
+        resp.add("predictions", predictions);
+        json(ex, 200, resp.toString());
+    }
+
+    // LINEAR16 with a WAV header, as Cloud TTS returns it; length follows the text
+    private void synthesize(HttpExchange ex, byte[] body) throws IOException, InterruptedException {
+        if (inject(ex, "tts", "synthesize")) return;
+        JsonObject req = JsonParser.parseString(new String(body, StandardCharsets.UTF_8)).getAsJsonObject();
+        String text = req.getAsJsonObject("input").get("text").getAsString();
+        JsonObject audio = req.getAsJsonObject("audioConfig");
+        int rate = (audio != null && audio.has("sampleRateHertz")) ? audio.get("sampleRateHertz").getAsInt() : 24_000;
+        double seconds = Math.max(0.3, text.length() / options.number("speech-chars-per-second", "tts", 15));
+        sleep(options.latency("tts").draw());
+        JsonObject resp = new JsonObject();
+        resp.addProperty("audioContent", Base64.getEncoder().encodeToString(wav(rate, 1, (int) (seconds * rate))));
+        json(ex, 200, resp.toString());
+    }
+
+    private void stream(HttpExchange ex) throws IOException, InterruptedException {
+        long total = options.latency("gemini").draw();
+        String text = reply();
+        List<String> pieces = chunks(text);
+        sleep(total / 3);
+        ex.getResponseHeaders().set("Content-Type", "text/event-stream");
+        ex.sendResponseHeaders(200, 0);
+        OutputStream out = ex.getResponseBody();
+        long gap = (total - total / 3) / Math.max(1, pieces.size());
+        for (int i = 0; i < pieces.size(); i++) {
+            if (i > 0) sleep(gap);
+            String frame = "data: " + geminiResponse(pieces.get(i), i == pieces.size() - 1) + "\r\n\r\n";
+            out.write(frame.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+    }
+
+    // Answers 429 (at once, like a quota check) or 500 (after the usual latency) at the configured rates
+    private boolean inject(HttpExchange ex, String provider, String call) throws IOException, InterruptedException {
+        double roll = ThreadLocalRandom.current().nextDouble();
+        double limited = options.number("rate-limit-rate", provider, 0);
+        if (roll < limited) {
+            count(provider, call + " 429");
+            error(ex, 429, "RESOURCE_EXHAUSTED", "Quota exceeded (stand-in)");
+            return true;
+        }
+        if (roll < limited + options.number("error-rate", provider, 0)) {
+            count(provider, call + " 500");
+            sleep(options.latency(provider).draw());
+            error(ex, 500, "INTERNAL", "Internal error (stand-in)");
+            return true;
+        }
+        count(provider, call);
+        return false;
+    }
+
+    private String reply() {
+        int words = options.integer("reply-words", "gemini", 40);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StringBuilder sb = new StringBuilder();
+        int sentenceLength = 0;
+        for (int i = 0; i < words; i++) {
+            String w = WORDS[random.nextInt(WORDS.length)];
+            if (sentenceLength == 0) w = Character.toUpperCase(w.charAt(0)) + w.substring(1);
+            sb.append(w);
+            sentenceLength++;
+            // Sentences of five words or more, so the splitter sees realistic boundaries
+            boolean end = (i == words - 1) || (sentenceLength >= 5 && random.nextInt(6) == 0);
+            sb.append(end ? (random.nextInt(4) == 0 ? "! " : ". ") : " ");
+            if (end) sentenceLength = 0;
+        }
+        return sb.toString().trim();
+    }
+
+    // A few words per SSE frame, split mid-sentence the way token streams are
+    private static List<String> chunks(String text) {
+        String[] words = text.split(" ");
+        List<String> out = new ArrayList<>();
+        for (int i = 0; i < words.length; i += 4) {
+            String piece = String.join(" ", Arrays.copyOfRange(words, i, Math.min(words.length, i + 4)));
+            out.add(i + 4 < words.length ? piece + " " : piece);
+        }
+        return out;
+    }
+
+    private static JsonObject geminiResponse(String text, boolean last) {
+        JsonObject part = new JsonObject();
+        part.addProperty("text", text);
+        JsonArray parts = new JsonArray();
+        parts.add(part);
+        JsonObject content = new JsonObject();
+        content.addProperty("role", "model");
+        content.add("parts", parts);
+        JsonObject candidate = new JsonObject();
+        candidate.add("content", content);
+        if (last) candidate.addProperty("finishReason", "STOP");
+        JsonArray candidates = new JsonArray();
+        candidates.add(candidate);
+        JsonObject resp = new JsonObject();
+        resp.add("candidates", candidates);
+        return resp;
+    }
+
+    private static void json(HttpExchange ex, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        ex.sendResponseHeaders(status, bytes.length);
+        ex.getResponseBody().write(bytes);
+    }
+
+    // Google's error envelope
+    private static void error(HttpExchange ex, int status, String code, String message) throws IOException {
+        JsonObject err = new JsonObject();
+        err.addProperty("code", status);
+        err.addProperty("message", message);
+        err.addProperty("status", code);
+        JsonObject resp = new JsonObject();
+        resp.add("error", err);
+        if (ex.getRequestMethod().equals("HEAD")) {
+            ex.sendResponseHeaders(status, -1);
+            return;
+        }
+        json(ex, status, resp.toString());
+    }
+
+    private static void sleep(long millis) throws InterruptedException {
+        if (millis > 0) Thread.sleep(millis);
+    }
+
+    private void count(String provider, String call) {
+        served.computeIfAbsent(provider + " " + call, k -> new LongAdder()).increment();
+    }
+
+    private void printSummary() {
+        System.out.println("Requests served:");
+        served.entrySet().stream().sorted(Map.Entry.comparingByKey())
+                .forEach(e -> System.out.printf(Locale.ROOT, "  %-28s %d%n", e.getKey(), e.getValue().sum()));
+    }
+
+    // Noise doesn't compress, so the PNG is about edge * edge * 3 bytes like a detailed Imagen picture
+    private static byte[] noisePng(int edge) throws IOException {
+        BufferedImage img = new BufferedImage(edge, edge, BufferedImage.TYPE_INT_RGB);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int y = 0; y < edge; y++) {
+            for (int x = 0; x < edge; x++) img.setRGB(x, y, random.nextInt(0x1000000));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(img, "PNG", out);
+        return out.toByteArray();
+    }
+
+    // 16-bit PCM: a quiet 220 Hz tone, so encoders downstream do real work
+    private static byte[] wav(int sampleRate, int channels, int frames) {
+        int dataBytes = frames * channels * 2;
+        ByteBuffer b = ByteBuffer.allocate(44 + dataBytes).order(ByteOrder.LITTLE_ENDIAN);
+        b.put("RIFF".getBytes(StandardCharsets.US_ASCII)).putInt(36 + dataBytes).put("WAVE".getBytes(StandardCharsets.US_ASCII));
+        b.put("fmt ".getBytes(StandardCharsets.US_ASCII)).putInt(16).putShort((short) 1).putShort((short) channels)
+                .putInt(sampleRate).putInt(sampleRate * channels * 2).putShort((short) (channels * 2)).putShort((short) 16);
+        b.put("data".getBytes(StandardCharsets.US_ASCII)).putInt(dataBytes);
+        for (int i = 0; i < frames; i++) {
+            short s = (short) (Math.sin(2 * Math.PI * 220 * i / sampleRate) * 3000);
+            for (int c = 0; c < channels; c++) b.putShort(s);
+        }
+        return b.array();
+    }
+
+    /** {@code --name=value} and {@code --name.provider=value} settings. */
+    private record Options(Map<String, String> values) {
+        private static final Map<String, String> DEFAULT_LATENCY = Map.of(
+                "gemini", "lognormal:700:2500",
+                "imagen", "lognormal:6000:12000",
+                "lyria", "lognormal:20000:40000",
+                "tts", "lognormal:250:900");
+
+        static Options parse(String[] args) {
+            Map<String, String> v = new HashMap<>();
+            for (String a : args) {
+                if (!a.startsWith("--") || a.indexOf('=') < 0) throw new IllegalArgumentException("Expected --name=value, got " + a);
+                v.put(a.substring(2, a.indexOf('=')), a.substring(a.indexOf('=') + 1));
+            }
+            Options o = new Options(Map.copyOf(v));
+            // Fail at startup rather than on the first request
+            for (String p : DEFAULT_LATENCY.keySet()) o.latency(p);
+            return o;
+        }
+
+        String get(String name, String provider) {
+            String v = (provider == null) ? null : values.get(name + "." + provider);
+            return (v != null) ? v : values.get(name);
+        }
+
+        int integer(String name, String provider, int def) {
+            String v = get(name, provider);
+            return (v == null) ? def : Integer.parseInt(v);
+        }
+
+        double number(String name, String provider, double def) {
+            String v = get(name, provider);
+            return (v == null) ? def : Double.parseDouble(v);
+        }
+
+        Latency latency(String provider) {
+            String v = get("latency", provider);
+            return Latency.parse(v != null ? v : DEFAULT_LATENCY.get(provider));
+        }
+    }
+
+    /** A latency distribution in milliseconds. */
+    private record Latency(String kind, double a, double b) {
+        private static final double Z99 = 2.3263; // standard normal 99th percentile
+
+        static Latency parse(String spec) {
+            String[] p = spec.split(":");
+            return switch (p[0]) {
+                case "fixed" -> new Latency("fixed", Double.parseDouble(p[1]), 0);
+                case "uniform" -> new Latency("uniform", Double.parseDouble(p[1]), Double.parseDouble(p[2]));
+                // a, b: mu and sigma of the underlying normal, fitted to the given median and p99
+                case "lognormal" -> {
+                    double p50 = Double.parseDouble(p[1]), p99 = Double.parseDouble(p[2]);
+                    yield new Latency("lognormal", Math.log(p50), Math.max(0, Math.log(p99 / p50) / Z99));
+                }
+                default -> throw new IllegalArgumentException("Unknown latency distribution " + spec);
+            };
+        }
+
+        long draw() {
+            ThreadLocalRandom r = ThreadLocalRandom.current();
+            double ms = switch (kind) {
+                case "fixed" -> a;
+                case "uniform" -> a + r.nextDouble() * (b - a);
+                default -> Math.exp(a + b * r.nextGaussian());
+            };
+            return Math.round(ms);
+        }
+    }
+}
@@ -6,6 +6,12 @@ import net.fabricmc.api.ModInitializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import clanker.craft.chat.ChatInteraction;
+import clanker.craft.command.ClankerCommand;
+import clanker.craft.config.Config;
+import clanker.craft.entity.ClankerIndex;
+import clanker.craft.metrics.PrometheusExporter;
+import clanker.craft.network.ModPayloads;
+import clanker.craft.personality.PersonalityRegistry;
 
 public class ClankerCraft implements ModInitializer {
 	public static final String MOD_ID = "clankercraft";
@@ -14,10 +20,18 @@ public class ClankerCraft implements ModInitializer {
 
 	@Override
 	public void onInitialize() {
-		// Register entities, items, and chat interaction
+		// Pick up edits to clankercraft-llm.properties and personality files without a restart
+		Config.startWatching();
+		PersonalityRegistry.init();
+
+		// Register payloads, entities, items, and chat interaction
+		ModPayloads.register();
 		ModEntities.registerAttributes();
 		ModItems.register();
+		ClankerIndex.register();
 		ChatInteraction.register();
+		ClankerCommand.register();
+		PrometheusExporter.start();
 
 		if (ChatInteraction.isLlmEnabled()) {
 			LOGGER.info("LLM enabled (model={}).", ChatInteraction.llmModel());
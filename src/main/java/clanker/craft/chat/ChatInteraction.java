@@ -5,39 +5,55 @@ import clanker.craft.llm.LLMClient;
 import clanker.craft.imagen.ImagenClient;
 import clanker.craft.music.Lyria2Client;
 
+// CONFIG
+import clanker.craft.config.Config;
+
 // CLANKER ENTITY
 import clanker.craft.entity.ClankerEntity;
-import clanker.craft.personality.PersonalityManager;
+import clanker.craft.entity.ClankerIndex;
+import clanker.craft.personality.PersonalityRegistry;
 
 // I18N
 import clanker.craft.i18n.LanguageManager;
 
+// EXECUTION
+import clanker.craft.exec.GenerationExecutor;
+import clanker.craft.exec.GenerationExecutor.Bulkhead;
+
+// STORAGE
+import clanker.craft.storage.ConversationStore;
+
 // NETWORKING
 import clanker.craft.network.TTSSpeakS2CPayload;
+import clanker.craft.tts.TtsBroadcaster;
+import clanker.craft.tts.TtsSynthesizer;
+import clanker.craft.trace.Trace;
+import clanker.craft.http.HttpTransport;
+import clanker.craft.vertex.VertexEndpointDiscovery;
 
 // MINECRAFT
 import net.fabricmc.fabric.api.message.v1.ServerMessageEvents;
-import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerEntityEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
 import net.fabricmc.loader.api.FabricLoader;
-import net.minecraft.entity.Entity;
 import net.minecraft.item.Items;
 import net.minecraft.registry.entry.RegistryEntry;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.text.Text;
-import net.minecraft.util.math.Box;
-import net.minecraft.util.math.Vec3d;
 import net.minecraft.component.DataComponentTypes;
 import net.minecraft.entity.decoration.painting.PaintingVariant;
 import net.minecraft.item.ItemStack;
 import net.minecraft.registry.RegistryKeys;
 import net.minecraft.util.Identifier;
+import net.minecraft.util.WorldSavePath;
 import net.minecraft.component.ComponentType;
 import java.util.*;
 import java.util.concurrent.*;
-import java.nio.file.Files;
+import java.nio.file.Path;
 
 
 public final class ChatInteraction {
@@ -48,30 +64,25 @@ public final class ChatInteraction {
     private static final String PAINT_TRIGGER = "@makepainting"; // case-insensitive
     private static final String MUSIC_TRIGGER = "@makemusic"; // new: music generation via Lyria2
     private static final double SEARCH_RANGE = 256.0; // increased search range in blocks
-    private static final double MOVE_SPEED = 1; // navigation speed
-    private static final double ARRIVE_DISTANCE = 2.5; // when considered arrived to freeze
-    private static final int PATH_REFRESH_TICKS = 20; // reissue path each second while approaching
 
     // Conversation state per player
     private static final Map<UUID, Session> SESSIONS = new ConcurrentHashMap<>();
-    private static final LLMClient LLM = new LLMClient();
-    private static final ImagenClient IMAGEN = new ImagenClient();
-    private static final clanker.craft.music.Lyria2Client LYRIA = new Lyria2Client();
-    private static final ExecutorService EXEC = new ThreadPoolExecutor(
-            1, 2, 30, TimeUnit.SECONDS,
-            new LinkedBlockingQueue<>(64),
-            r -> {
-                Thread t = new Thread(r, "Clanker-LLM"); t.setDaemon(true); return t;
-            },
-            new ThreadPoolExecutor.CallerRunsPolicy()
-    );
-
-    private static int tickCounter = 0;
+    private static final FollowController FOLLOW = new FollowController();
+    // Tags each spoken reply; a new id lets the client cut off the previous reply mid-sentence
+    private static final java.util.concurrent.atomic.AtomicLong REPLY_IDS = new java.util.concurrent.atomic.AtomicLong();
+    // Durable history per player+Clanker; open while a server is running
+    private static volatile ConversationStore STORE;
+    // Rebuilt when their settings change on disk (see register); read the field once per job
+    private static volatile LLMClient LLM = new LLMClient();
+    private static volatile ImagenClient IMAGEN = new ImagenClient();
+    private static volatile clanker.craft.music.Lyria2Client LYRIA = new Lyria2Client();
 
     // Accessors for initializer logging
     public static boolean isLlmEnabled() { return LLM.isEnabled(); }
     public static boolean isImagenEnabled() { return IMAGEN.isEnabled(); }
     public static String llmModel() { return LLM.getModel(); }
+    /** Which Gemini model replies actually use, and how the probe for the configured one is doing. */
+    public static LLMClient.ProbeStatus llmRouting() { return LLM.probeStatus(); }
 
 
     // MAIN FUNCTIONALITY: Register chat listener --> Listen to server chat messages
@@ -93,31 +104,29 @@ public final class ChatInteraction {
                 ServerPlayerEntity player = sender;
                 ServerWorld world = (ServerWorld) player.getEntityWorld();
                 MinecraftServer server = world.getServer();
+                // Ties every stage of this message together in JFR recordings, client side included
+                long trace = Trace.newId();
 
                 // 1) START conversation
                 if (lower.startsWith(TRIGGER)) {
-                    Vec3d p = new Vec3d(player.getX(), player.getY(), player.getZ());
-                    Box box = Box.from(p).expand(SEARCH_RANGE);
-                    ClankerEntity nearest = world.getEntitiesByClass(ClankerEntity.class, box, e -> e.isAlive())
-                            .stream()
-                            .min(Comparator.comparingDouble(e -> e.squaredDistanceTo(p)))
-                            .orElse(null);
+                    ClankerEntity nearest = ClankerIndex.of(world)
+                            .nearest(player.getX(), player.getY(), player.getZ(), SEARCH_RANGE, e -> e.isAlive());
 
                     if (nearest == null) {
-                        player.sendMessage(Text.literal(LanguageManager.get("clanker.no_nearby")));
+                        player.sendMessage(Text.literal(LanguageManager.get(player, "clanker.no_nearby")));
                         return;
                     }
 
                     // Unfreeze any previously selected mob for this player
                     Session existing = SESSIONS.get(player.getUuid());
                     if (existing != null) {
-                        ClankerEntity prev = findMobByUuid(world, existing.mobUuid);
+                        FOLLOW.untrack(existing);
+                        ClankerEntity prev = existing.mob(world);
                         if (prev != null) prev.setAiDisabled(false);
                     }
 
                     // Move mob to the player and set session
-                    nearest.getNavigation().startMovingTo(player, MOVE_SPEED);
-                    setSession(player, nearest);
+                    setSession(server, player, nearest, trace);
 
                     return;
                 }
@@ -126,16 +135,16 @@ public final class ChatInteraction {
                 if (lower.startsWith(BYE_TRIGGER)) {
                     Session s = SESSIONS.remove(player.getUuid());
                     if (s != null) {
+                        FOLLOW.untrack(s);
                         // Try to unfreeze the mob if still around
-                        ClankerEntity mob = findMobByUuid((ServerWorld) player.getEntityWorld(), s.mobUuid);
+                        ClankerEntity mob = s.mob(world);
                         if (mob != null) {
                             mob.setAiDisabled(false);
                         }
                         // Speak bye message via TTS
-                        String byeMsg = LanguageManager.get("clanker.farewell");
+                        String byeMsg = LanguageManager.get(player, "clanker.farewell");
                         player.sendMessage(Text.literal(byeMsg));
-                        int startEntityId = mob.getId();
-                        ServerPlayNetworking.send(player, new TTSSpeakS2CPayload(byeMsg, startEntityId));
+                        TtsBroadcaster.speak(player, TTSSpeakS2CPayload.reply(byeMsg, mob == null ? -1 : mob.getId(), REPLY_IDS.incrementAndGet(), trace));
                     }
                     return;
                 }
@@ -145,10 +154,16 @@ public final class ChatInteraction {
                 if (session == null) return; // not conversing, ignore
 
                 // Validate mob still exists/alive
-                ClankerEntity mob = findMobByUuid(world, session.mobUuid);
+                ClankerEntity mob = session.mob(world);
                 if (mob == null || !mob.isAlive()) {
                     SESSIONS.remove(player.getUuid());
-                    player.sendMessage(Text.literal(LanguageManager.get("clanker.gone")));
+                    FOLLOW.untrack(session);
+                    player.sendMessage(Text.literal(LanguageManager.get(player, "clanker.gone")));
+                    return;
+                }
+                // Stored history is still being read back; nothing may touch the context before it lands
+                if (session.loading) {
+                    player.sendMessage(Text.literal(LanguageManager.get(player, "clanker.thinking")));
                     return;
                 }
 
@@ -159,44 +174,46 @@ public final class ChatInteraction {
                     String prompt = trimmed.substring(PAINT_TRIGGER.length()).trim();
                     if (!IMAGEN.isEnabled()) {
                         String cfgPath = String.valueOf(FabricLoader.getInstance().getConfigDir().resolve("clankercraft-llm.properties").toAbsolutePath());
-                        player.sendMessage(Text.literal(LanguageManager.format("clanker.config.imagen_not_configured", cfgPath)));
+                        player.sendMessage(Text.literal(LanguageManager.format(player, "clanker.config.imagen_not_configured", cfgPath)));
                         return;
                     }
                     if (prompt.isEmpty()) {
-                        player.sendMessage(Text.literal(LanguageManager.get("clanker.painting.prompt_required")));
+                        player.sendMessage(Text.literal(LanguageManager.get(player, "clanker.painting.prompt_required")));
                         return;
                     }
                     if (session.busy) {
-                        player.sendMessage(Text.literal(LanguageManager.get("clanker.busy")));
+                        player.sendMessage(Text.literal(LanguageManager.get(player, "clanker.busy")));
                         return;
                     }
                     session.busy = true;
                     // Speak start message via TTS
-                    String startMsg = LanguageManager.format("clanker.painting.start", prompt);
+                    String startMsg = LanguageManager.format(player, "clanker.painting.start", prompt);
                     player.sendMessage(Text.literal(startMsg));
                     int startEntityId = mob.getId();
-                    ServerPlayNetworking.send(player, new TTSSpeakS2CPayload(startMsg, startEntityId));
+                    TtsBroadcaster.speak(player, TTSSpeakS2CPayload.status(startMsg, startEntityId, trace));
 
-                    CompletableFuture
-                            .supplyAsync(() -> {
+                    GenerationExecutor
+                            .submit(Bulkhead.IMAGEN, trace, () -> {
                                 try {
                                     return IMAGEN.generateAndSave(prompt).toAbsolutePath().toString();
                                 } catch (Exception e) {
                                     return "(error) " + e.getMessage();
                                 }
-                            }, EXEC)
-                            .thenAcceptAsync(result -> {
-                                server.execute(() -> {
+                            })
+                            .whenComplete((result, err) -> {
+                                server.execute(Trace.hop("painting_result", trace, () -> {
                                     session.busy = false;
-                                    if (result.startsWith("(error) ")) {
-                                        player.sendMessage(Text.literal(LanguageManager.format("clanker.painting.failed", result.substring(8))));
+                                    if (err != null) {
+                                        player.sendMessage(Text.literal(LanguageManager.get(player, "clanker.overloaded")));
+                                    } else if (result.startsWith("(error) ")) {
+                                        player.sendMessage(Text.literal(LanguageManager.format(player, "clanker.painting.failed", result.substring(8))));
                                     } else {
                                         try {
                                             ImagenClient.updatePaintingTexture(java.nio.file.Path.of(result));
-                                            player.sendMessage(Text.literal(LanguageManager.get("clanker.painting.reload_textures")));
+                                            player.sendMessage(Text.literal(LanguageManager.get(player, "clanker.painting.reload_textures")));
 
                                             // Drop a painting item at the mob's location
-                                            ClankerEntity clanker = findMobByUuid(world, session.mobUuid);
+                                            ClankerEntity clanker = session.mob(world);
                                             if (clanker != null && clanker.isAlive()) {
 
                                                 // 1. Create a new itemstack
@@ -211,17 +228,17 @@ public final class ChatInteraction {
                                                 paintingStack.set((ComponentType) DataComponentTypes.PAINTING_VARIANT, matchEntry);
 
                                                 // 3. Finish and drop painting for the player
-                                                String doneMsg = LanguageManager.get("clanker.painting.done");
+                                                String doneMsg = LanguageManager.get(player, "clanker.painting.done");
                                                 // Speak success message via TTS
                                                 clanker.dropStack(world, paintingStack);
                                                 player.sendMessage(Text.literal(doneMsg));
-                                                ServerPlayNetworking.send(player, new TTSSpeakS2CPayload(doneMsg, clanker.getId()));
+                                                TtsBroadcaster.speak(player, TTSSpeakS2CPayload.status(doneMsg, clanker.getId(), trace));
                                             }
                                         } catch (Exception e) {
-                                            player.sendMessage(Text.literal(LanguageManager.format("clanker.painting.texture_failed", e.getMessage())));
+                                            player.sendMessage(Text.literal(LanguageManager.format(player, "clanker.painting.texture_failed", e.getMessage())));
                                         }
                                     }
-                                });
+                                }));
                             });
                     return;
                 }
@@ -232,49 +249,49 @@ public final class ChatInteraction {
                     String prompt = trimmed.substring(MUSIC_TRIGGER.length()).trim();
                     if (!LYRIA.isEnabled()) {
                         String cfgPath = String.valueOf(FabricLoader.getInstance().getConfigDir().resolve("clankercraft-llm.properties").toAbsolutePath());
-                        player.sendMessage(Text.literal(LanguageManager.format("clanker.config.lyria_not_configured", cfgPath)));
+                        player.sendMessage(Text.literal(LanguageManager.format(player, "clanker.config.lyria_not_configured", cfgPath)));
                         return;
                     }
                     if (prompt.isEmpty()) {
-                        player.sendMessage(Text.literal(LanguageManager.get("clanker.music.prompt_required")));
+                        player.sendMessage(Text.literal(LanguageManager.get(player, "clanker.music.prompt_required")));
                         return;
                     }
                     if (session.busy) {
-                        player.sendMessage(Text.literal(LanguageManager.get("clanker.busy")));
+                        player.sendMessage(Text.literal(LanguageManager.get(player, "clanker.busy")));
                         return;
                     }
                     session.busy = true;
 
                     // Speak start message via TTS
-                    String startMsg = LanguageManager.format("clanker.music.start", prompt);
+                    String startMsg = LanguageManager.format(player, "clanker.music.start", prompt);
                     player.sendMessage(Text.literal(startMsg));
                     int startEntityId = mob.getId();
-                    ServerPlayNetworking.send(player, new TTSSpeakS2CPayload(startMsg, startEntityId));
-
-                    CompletableFuture
-                            .supplyAsync(() -> {
-                                try {
-                                    java.nio.file.Path wav = LYRIA.generateAndSave(prompt);
-                                    // Transcode to OGG Vorbis for Minecraft
-                                    String name = wav.getFileName().toString();
-                                    String base = name.endsWith(".wav") ? name.substring(0, name.length() - 4) : name;
-                                    java.nio.file.Path ogg = wav.getParent().resolve(base + ".ogg");
-                                    clanker.craft.music.FfmpegTranscoder.toOggVorbis(wav, ogg);
-                                    String discId = "13"; // choose a vanilla disc to override
-                                    clanker.craft.music.DiscOverridePackWriter.writeToBuildResources(discId, ogg);
-                                    java.nio.file.Path packRoot = clanker.craft.music.DiscOverridePackWriter.writeToGeneratedPack(discId, ogg);
-                                    // Delete the intermediate WAV to avoid saving both WAV and OGG in MusicSamples
-                                    try { Files.deleteIfExists(wav); } catch (Exception ignored) {}
-                                    return "OK|" + ogg.toAbsolutePath() + "|" + discId + "|" + packRoot.toAbsolutePath();
-                                } catch (Exception e) {
-                                    return "ERR|" + e.getMessage();
-                                }
-                            }, EXEC)
-                            .thenAcceptAsync(result -> {
-                                server.execute(() -> {
+                    TtsBroadcaster.speak(player, TTSSpeakS2CPayload.status(startMsg, startEntityId, trace));
+
+                    // Two stages: the Lyria slot is freed once the audio is downloaded, and ffmpeg then
+                    // runs under its own bulkhead
+                    Lyria2Client lyria = LYRIA;
+                    GenerationExecutor
+                            .submit(Bulkhead.LYRIA, trace, () -> lyria.generate(prompt))
+                            .thenCompose(audio -> GenerationExecutor.submit(Bulkhead.TRANSCODE, trace, () -> {
+                                Path ogg = Lyria2Client.saveAsOgg(prompt, audio);
+                                String discId = "13"; // choose a vanilla disc to override
+                                clanker.craft.music.DiscOverridePackWriter.writeToBuildResources(discId, ogg);
+                                Path packRoot = clanker.craft.music.DiscOverridePackWriter.writeToGeneratedPack(discId, ogg);
+                                return "OK|" + ogg.toAbsolutePath() + "|" + discId + "|" + packRoot.toAbsolutePath();
+                            }))
+                            .handle((ok, err) -> {
+                                if (err == null) return ok;
+                                Throwable cause = GenerationExecutor.unwrap(err);
+                                return GenerationExecutor.isSaturated(cause) ? "BUSY|" : "ERR|" + cause.getMessage();
+                            })
+                            .thenAccept(result -> {
+                                server.execute(Trace.hop("music_result", trace, () -> {
                                     session.busy = false;
-                                    if (result.startsWith("ERR|")) {
-                                        player.sendMessage(Text.literal(LanguageManager.get("clanker.music.failed") + result.substring(4)));
+                                    if (result.startsWith("BUSY|")) {
+                                        player.sendMessage(Text.literal(LanguageManager.get(player, "clanker.overloaded")));
+                                    } else if (result.startsWith("ERR|")) {
+                                        player.sendMessage(Text.literal(LanguageManager.get(player, "clanker.music.failed") + result.substring(4)));
                                     } else {
                                         String[] parts = result.split("\\|", 4);
                                         String oggPath = parts.length > 1 ? parts[1] : "";
@@ -282,55 +299,58 @@ public final class ChatInteraction {
                                         String packRoot = parts.length > 3 ? parts[3] : "";
 
                                         // Drop the corresponding music disc at the mob's location (disc 13)
-                                        ClankerEntity clanker = findMobByUuid(world, session.mobUuid);
+                                        ClankerEntity clanker = session.mob(world);
                                         if (clanker != null && clanker.isAlive()) {
                                             clanker.dropStack(world, new net.minecraft.item.ItemStack(net.minecraft.item.Items.MUSIC_DISC_13));
                                             // Speak success message via TTS
-                                            String doneMsg = LanguageManager.get("clanker.music.done");
+                                            String doneMsg = LanguageManager.get(player, "clanker.music.done");
                                             player.sendMessage(Text.literal(doneMsg));
-                                            ServerPlayNetworking.send(player, new TTSSpeakS2CPayload(doneMsg, clanker.getId()));
+                                            TtsBroadcaster.speak(player, TTSSpeakS2CPayload.status(doneMsg, clanker.getId(), trace));
                                         }
                                     }
-                                });
+                                }));
                             });
                     return;
                 }
 
 
                 // C) REGULAR CHAT MESSAGE --> LLM RESPONSE + TTS
+                // Snapshot before recording the new turn: the message itself is sent as the user input
+                List<String> history = session.context.snapshot();
                 session.appendUser(trimmed);
                 if (!LLM.isEnabled()) {
                     String cfgPath = String.valueOf(FabricLoader.getInstance().getConfigDir().resolve("clankercraft-llm.properties").toAbsolutePath());
-                    player.sendMessage(Text.literal(LanguageManager.format("clanker.config.llm_not_configured", cfgPath)));
+                    player.sendMessage(Text.literal(LanguageManager.format(player, "clanker.config.llm_not_configured", cfgPath)));
                     return;
                 }
 
                 if (session.busy) {
-                    player.sendMessage(Text.literal(LanguageManager.get("clanker.thinking")));
+                    player.sendMessage(Text.literal(LanguageManager.get(player, "clanker.thinking")));
                     return;
                 }
                 session.busy = true;
 
-                CompletableFuture
-                        .supplyAsync(() -> {
-                            try {
-                                return LLM.generate(new java.util.ArrayList<>(session.history), trimmed);
-                            } catch (Exception e) {
-                                return "(error) " + e.getMessage();
-                            }
-                        }, EXEC)
-                        .thenAcceptAsync(reply -> {
-                            // Back on server thread for game state/chat
-                            server.execute(() -> {
-                                session.appendModel(reply);
+                // Streaming mode: each finished sentence goes to chat + TTS while the rest is still generating
+                java.util.concurrent.atomic.AtomicBoolean streamed = new java.util.concurrent.atomic.AtomicBoolean(false);
+                long replyId = REPLY_IDS.incrementAndGet();
+                reply(history, trimmed, trace, sentence -> {
+                            streamed.set(true);
+                            server.execute(Trace.hop("reply_sentence", trace, () -> deliverReply(player, world, session, sentence, replyId, trace)));
+                        })
+                        .whenComplete((reply, err) -> {
+                            // Back on server thread for game state/chat (queued after any streamed sentences)
+                            server.execute(Trace.hop("reply_done", trace, () -> {
                                 session.busy = false;
-                                player.sendMessage(Text.literal(LanguageManager.get("clanker.response_prefix") + reply));
-
-                                // Also trigger client-side TTS playback using a custom payload with entity position context
-                                ClankerEntity m = findMobByUuid(world, session.mobUuid);
-                                int entityId = (m == null) ? -1 : m.getId();
-                                ServerPlayNetworking.send(player, new TTSSpeakS2CPayload(reply, entityId));
-                            });
+                                if (err != null) {
+                                    player.sendMessage(Text.literal(LanguageManager.get(player, "clanker.overloaded")));
+                                    return;
+                                }
+                                boolean failed = reply.startsWith("(error) ");
+                                if (!failed) session.appendModel(reply);
+                                // Already delivered sentence by sentence; only surface a mid-stream error
+                                if (streamed.get() && !failed) return;
+                                deliverReply(player, world, session, reply, replyId, trace);
+                            }));
                         });
 
             } catch (Exception e) {
@@ -339,89 +359,150 @@ public final class ChatInteraction {
         });
 
 
-        // WALKING FIX: use server tick to keep mobs walking to players and freeze upon arrival
-        ServerTickEvents.END_SERVER_TICK.register(server -> {
-            tickCounter++;
-            if (SESSIONS.isEmpty()) return;
+        // WALKING FIX: walk mobs to their players and freeze upon arrival, under a per-tick time budget
+        ServerTickEvents.END_SERVER_TICK.register(FOLLOW::tick);
+
+        // PERSISTENCE: conversations survive restarts; sessions themselves end with the player's connection
+        ServerLifecycleEvents.SERVER_STARTED.register(server -> {
+            java.nio.file.Path file = server.getSavePath(WorldSavePath.ROOT).resolve("clankercraft").resolve("conversations.log");
+            try {
+                STORE = ConversationStore.open(file);
+            } catch (Exception e) {
+                clanker.craft.ClankerCraft.LOGGER.warn("Conversation history will not be saved: {}", e.getMessage());
+            }
+        });
+        // Retune without a restart: swap in clients built from the new settings
+        Config.addListener((previous, next) -> {
+            if (!previous.gemini().equals(next.gemini())) {
+                LLMClient old = LLM;
+                LLM = new LLMClient();
+                old.close();
+            }
+            // The stand-in override also decides whether Vertex clients need real credentials
+            if (!previous.vertex().equals(next.vertex())
+                    || !Objects.equals(previous.get("PROVIDER_BASE_URL", "CLANKER_PROVIDER_BASE_URL"),
+                                       next.get("PROVIDER_BASE_URL", "CLANKER_PROVIDER_BASE_URL"))) {
+                IMAGEN = new ImagenClient();
+                LYRIA = new Lyria2Client();
+                IMAGEN.warmUp();
+                LYRIA.warmUp();
+            }
+            HttpTransport.keepWarm(providerOrigins());
+        });
+        // Find the live Imagen/Lyria model endpoints before anyone asks for a painting or a song
+        ServerLifecycleEvents.SERVER_STARTED.register(server -> {
+            IMAGEN.warmUp();
+            LYRIA.warmUp();
+            // Keep a live connection to every configured provider so the first reply skips the TLS handshake
+            HttpTransport.keepWarm(providerOrigins());
+        });
+        ServerLifecycleEvents.SERVER_STOPPING.register(server -> {
+            HttpTransport.stopKeepWarm();
+            for (ServerPlayerEntity p : server.getPlayerManager().getPlayerList()) endSession(p);
+            ConversationStore store = STORE;
+            STORE = null;
+            if (store != null) store.close();
+        });
+        ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> endSession(handler.getPlayer()));
+        // A Clanker saved mid-conversation comes back with NoAI set; release it unless a live session owns it
+        ServerEntityEvents.ENTITY_LOAD.register((entity, world) -> {
+            if (entity instanceof ClankerEntity c && c.isAiDisabled() && !isInSession(c.getUuid())) {
+                c.setAiDisabled(false);
+            }
+        });
+    }
+
+    // End a player's session without a farewell (disconnect/shutdown); the history stays in the store
+    private static void endSession(ServerPlayerEntity player) {
+        Session s = SESSIONS.remove(player.getUuid());
+        if (s == null) return;
+        FOLLOW.untrack(s);
+        ClankerEntity mob = s.mob((ServerWorld) player.getEntityWorld());
+        if (mob != null) mob.setAiDisabled(false);
+    }
+
+    private static boolean isInSession(UUID mobUuid) {
+        for (Session s : SESSIONS.values()) if (s.mobUuid.equals(mobUuid)) return true;
+        return false;
+    }
+
+    // Hosts of the providers that are actually configured
+    private static List<java.net.URI> providerOrigins() {
+        Set<java.net.URI> out = new LinkedHashSet<>();
+        if (LLM.isEnabled()) out.add(LLMClient.origin());
+        if (IMAGEN.isEnabled()) out.add(VertexEndpointDiscovery.Target.origin(IMAGEN.getLocation()));
+        if (LYRIA.isEnabled()) out.add(VertexEndpointDiscovery.Target.origin(LYRIA.getLocation()));
+        if (TtsBroadcaster.isServerSide()) out.add(TtsSynthesizer.origin());
+        return List.copyOf(out);
+    }
 
-            for (Map.Entry<UUID, Session> entry : SESSIONS.entrySet()) {
-                UUID playerId = entry.getKey();
-                Session s = entry.getValue();
-                ServerPlayerEntity player = server.getPlayerManager().getPlayer(playerId);
-                if (player == null) continue; // offline
 
-                ServerWorld world = (ServerWorld) player.getEntityWorld();
-                ClankerEntity mob = findMobByUuid(world, s.mobUuid);
-                if (mob == null || !mob.isAlive()) continue;
-
-                double distSq = mob.squaredDistanceTo(player);
-                if (s.awaitingFreeze) {
-                    // Re-issue path every PATH_REFRESH_TICKS until arrived
-                    if ((tickCounter - s.lastPathTick) >= PATH_REFRESH_TICKS) {
-                        s.lastPathTick = tickCounter;
-                        mob.getNavigation().startMovingTo(player, MOVE_SPEED);
-                      }
-                    if (distSq <= (ARRIVE_DISTANCE * ARRIVE_DISTANCE)) {
-                        mob.setAiDisabled(true); // freeze in place
-                        s.awaitingFreeze = false; // now frozen until @bye
-                        mob.lookAt(net.minecraft.command.argument.EntityAnchorArgumentType.EntityAnchor.EYES, player.getEyePos());
-                    }
-                } else {
-                    // After frozen, keep the mob looking at the player each tick
-                    if (mob.isAiDisabled()) {
-                        mob.lookAt(net.minecraft.command.argument.EntityAnchorArgumentType.EntityAnchor.EYES, player.getEyePos());
-                    }
-                }
+    // One reply on the LLM bulkhead (also driven by LoadGenerator). With streaming on, finished sentences
+    // go to onSentence while the rest generates; provider failures come back as "(error) ..." text
+    static CompletableFuture<String> reply(List<String> history, String message, long trace, java.util.function.Consumer<String> onSentence) {
+        boolean streaming = Config.geminiStreamingOrDefault(true);
+        LLMClient llm = LLM;
+        return GenerationExecutor.submit(Bulkhead.LLM, trace, () -> {
+            try {
+                if (!streaming) return llm.generate(history, message);
+                return llm.generateStream(history, message, onSentence);
+            } catch (Exception e) {
+                return "(error) " + e.getMessage();
             }
         });
     }
 
+    // Background compaction of old turns for ContextWindow; shares the LLM bulkhead with replies
+    static CompletableFuture<String> summarize(String previousSummary, List<String> turns) {
+        LLMClient llm = LLM;
+        if (!llm.isEnabled()) return CompletableFuture.failedFuture(new IllegalStateException("LLM disabled"));
+        return GenerationExecutor.submit(Bulkhead.LLM, () -> llm.summarize(previousSummary, turns));
+    }
+
+    // Send one piece of a reply to chat and speak it at the entity (client- or server-side TTS);
+    // every piece of one reply carries the same replyId so the client plays them back to back
+    private static void deliverReply(ServerPlayerEntity player, ServerWorld world, Session session, String text, long replyId, long trace) {
+        player.sendMessage(Text.literal(LanguageManager.get(player, "clanker.response_prefix") + text));
+        ClankerEntity m = session.mob(world);
+        int entityId = (m == null) ? -1 : m.getId();
+        TtsBroadcaster.speak(player, TTSSpeakS2CPayload.reply(text, entityId, replyId, trace));
+    }
 
     // Create and store a new session
-    private static void setSession(ServerPlayerEntity player, ClankerEntity mob) {
-        Session s = new Session(mob.getUuid());
-        // Inject active personality as a system instruction to steer the LLM
-        String persona = PersonalityManager.getActivePersonality();
+    private static void setSession(MinecraftServer server, ServerPlayerEntity player, ClankerEntity mob, long trace) {
+        Session s = new Session(player, mob, ChatInteraction::summarize);
+        // Pin active personality as a system instruction to steer the LLM; it is never evicted.
+        // The Clanker answers in the player's own client language
+        String persona = PersonalityRegistry.personaFor(mob, LanguageManager.languageOf(player));
         if (persona != null && !persona.isBlank()) {
-            s.appendSystem(persona);
+            s.context.pinPersona(persona);
+        }
+        String greeting = LanguageManager.get(player, "clanker.greeting");
+        // Resume what this player and this Clanker talked about before, then journal everything new.
+        // The read runs on the store's writer; chat waits until the history is in
+        ConversationStore store = STORE;
+        if (store != null) {
+            ConversationStore.Key key = new ConversationStore.Key(player.getUuid(), mob.getUuid());
+            s.loading = true;
+            store.load(key).thenAccept(previous -> server.execute(Trace.hop("session_loaded", trace, () -> {
+                if (previous != null) s.context.restore(previous.summary(), previous.turns());
+                s.context.attach(new ContextWindow.Journal() {
+                    @Override public void turnAdded(String line) { store.appendTurn(key, line); }
+                    @Override public void turnsCompacted(String summary, int removedTurns) { store.appendCompaction(key, summary, removedTurns); }
+                });
+                // Only a fresh conversation opens with the greeting; a resumed one would pile up a copy per visit
+                if (previous == null) s.appendModel(greeting);
+                s.loading = false;
+            })));
+        } else {
+            s.appendModel(greeting);
         }
-        // mark that we should freeze the mob once it reaches the player
-        s.awaitingFreeze = true;
-        s.lastPathTick = tickCounter;
-        // Send greeting as the initial model line and to the player, and speak it via TTS
-        String greeting = LanguageManager.get("clanker.greeting");
-        s.appendModel(greeting);
         SESSIONS.put(player.getUuid(), s);
+        // walk over now, freeze once it reaches the player
+        FOLLOW.track(s);
+        FOLLOW.startApproach(s, mob, player);
+        // Send greeting to the player and speak it via TTS
         player.sendMessage(Text.literal(greeting));
-        ServerPlayNetworking.send(player, new TTSSpeakS2CPayload(greeting, mob.getId()));
-    }
-
-    private static ClankerEntity findMobByUuid(ServerWorld world, UUID uuid) {
-        if (uuid == null) return null;
-        Entity e = world.getEntity(uuid);
-        if (e instanceof ClankerEntity dj) return dj;
-        return null;
-    }
-
-    private static final class Session {
-        final UUID mobUuid;
-        final Deque<String> history = new ArrayDeque<>(); // keep as ring buffer
-        private static final int MAX_TURNS = 20; // max entries in history deque
-        volatile boolean busy = false;
-        // freeze-on-arrival state
-        volatile boolean awaitingFreeze = false;
-        int lastPathTick = 0;
-
-        Session(UUID mobUuid) { this.mobUuid = mobUuid; }
-
-        void appendUser(String text) { add("user: " + text); }
-        void appendModel(String text) { add("model: " + text); }
-        void appendSystem(String text) { add("system: " + text); }
-
-        private void add(String turn) {
-            // Keep last MAX_TURNS entries
-            if (history.size() >= MAX_TURNS) history.removeFirst();
-            history.addLast(turn);
-        }
+        TtsBroadcaster.speak(player, TTSSpeakS2CPayload.reply(greeting, mob.getId(), REPLY_IDS.incrementAndGet(), trace));
     }
 }
@@ -0,0 +1,163 @@
+package clanker.craft.chat;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Conversation context sent to the LLM, budgeted by estimated tokens instead of entry count.
+ * The persona is pinned and never evicted. Once the turns exceed the budget, the oldest ones are
+ * folded into a rolling summary generated in the background; until that summary lands the turns
+ * stay in place, so prompts never lose information mid-compaction.
+ */
+final class ContextWindow {
+    static final int DEFAULT_TOKEN_BUDGET = 1500; // turns only; persona and summary are extra
+    private static final int KEEP_RECENT_TURNS = 4; // never summarize the latest exchanges
+    private static final int TURN_OVERHEAD_TOKENS = 4; // role label + separators
+
+    /** Produces a new summary from the previous one (may be null) and the turns being folded in. */
+    @FunctionalInterface
+    interface Summarizer {
+        CompletableFuture<String> summarize(String previousSummary, List<String> turns);
+    }
+
+    /** Receives every change, in order, so the window can be persisted and rebuilt later. */
+    interface Journal {
+        Journal NONE = new Journal() {
+            @Override public void turnAdded(String line) {}
+            @Override public void turnsCompacted(String summary, int removedTurns) {}
+        };
+
+        void turnAdded(String line);
+
+        /** The oldest removedTurns turns are gone; summary replaces the previous one unless null. */
+        void turnsCompacted(String summary, int removedTurns);
+    }
+
+    private record Turn(String line, int tokens) {}
+
+    private final int tokenBudget;
+    private final Summarizer summarizer;
+    private final ArrayDeque<Turn> turns = new ArrayDeque<>();
+    private Journal journal = Journal.NONE;
+    private String persona;
+    private String summary;
+    private int turnTokens;
+    private boolean compacting;
+
+    ContextWindow(Summarizer summarizer) {
+        this(DEFAULT_TOKEN_BUDGET, summarizer);
+    }
+
+    ContextWindow(int tokenBudget, Summarizer summarizer) {
+        this.tokenBudget = tokenBudget;
+        this.summarizer = summarizer;
+    }
+
+    synchronized void pinPersona(String text) { this.persona = text; }
+
+    synchronized void attach(Journal journal) { this.journal = journal; }
+
+    /** Reloads a previously journaled state; not itself journaled. */
+    synchronized void restore(String summary, List<String> lines) {
+        this.summary = summary;
+        turns.clear();
+        turnTokens = 0;
+        for (String line : lines) {
+            Turn t = new Turn(line, estimate(line) + TURN_OVERHEAD_TOKENS);
+            turns.addLast(t);
+            turnTokens += t.tokens;
+        }
+    }
+
+    void appendUser(String text) { add("user: " + text); }
+    void appendModel(String text) { add("model: " + text); }
+
+    /**
+     * History in LLMClient's "role: text" form: pinned persona, rolling summary, then recent turns.
+     */
+    synchronized List<String> snapshot() {
+        List<String> out = new ArrayList<>(turns.size() + 2);
+        if (persona != null && !persona.isBlank()) out.add("system: " + persona);
+        if (summary != null && !summary.isBlank()) out.add("system: Summary of the conversation so far: " + summary);
+        for (Turn t : turns) out.add(t.line);
+        return out;
+    }
+
+    synchronized int estimatedTokens() {
+        return turnTokens + estimate(persona) + estimate(summary);
+    }
+
+    private void add(String line) {
+        List<Turn> toFold = null;
+        String previous = null;
+        int foldCount = 0;
+        synchronized (this) {
+            Turn t = new Turn(line, estimate(line) + TURN_OVERHEAD_TOKENS);
+            turns.addLast(t);
+            turnTokens += t.tokens;
+            journal.turnAdded(line);
+
+            if (turnTokens > 2 * tokenBudget) {
+                // Summaries are lagging far behind (LLM down or saturated): hard-drop the oldest turns
+                int dropped = 0;
+                while (turnTokens > tokenBudget && turns.size() > KEEP_RECENT_TURNS) {
+                    turnTokens -= turns.removeFirst().tokens;
+                    dropped++;
+                }
+                if (dropped > 0) journal.turnsCompacted(null, dropped);
+            }
+            if (!compacting && turnTokens > tokenBudget && turns.size() > KEEP_RECENT_TURNS) {
+                // Fold the oldest turns until what's left fits in half the budget
+                toFold = new ArrayList<>();
+                int remaining = turnTokens;
+                Iterator<Turn> it = turns.iterator();
+                while (it.hasNext() && turns.size() - foldCount > KEEP_RECENT_TURNS && remaining > tokenBudget / 2) {
+                    Turn old = it.next();
+                    toFold.add(old);
+                    remaining -= old.tokens;
+                    foldCount++;
+                }
+                previous = summary;
+                compacting = true;
+            }
+        }
+        if (toFold != null) compact(previous, toFold);
+    }
+
+    private void compact(String previous, List<Turn> folded) {
+        List<String> lines = new ArrayList<>(folded.size());
+        for (Turn t : folded) lines.add(t.line);
+        CompletableFuture<String> f;
+        try {
+            f = summarizer.summarize(previous, lines);
+        } catch (RuntimeException e) {
+            f = CompletableFuture.failedFuture(e);
+        }
+        f.whenComplete((text, err) -> {
+            synchronized (this) {
+                compacting = false;
+                if (err != null || text == null || text.isBlank() || text.startsWith("(error)")) return; // retry on a later turn
+                summary = text.trim();
+                // Drop exactly the turns that were summarized, if they haven't been hard-dropped meanwhile.
+                // Identity, not text: an identical later line (a repeated "user: hi") was never summarized
+                int removed = 0;
+                for (Turn t : folded) {
+                    Turn head = turns.peekFirst();
+                    if (head != t) continue;
+                    turns.removeFirst();
+                    turnTokens -= head.tokens;
+                    removed++;
+                }
+                journal.turnsCompacted(summary, removed);
+            }
+        });
+    }
+
+    /** Rough token estimate (~4 characters per token for Latin-script text). */
+    static int estimate(String text) {
+        return (text == null || text.isEmpty()) ? 0 : (text.length() + 3) / 4;
+    }
+}
@@ -0,0 +1,103 @@
+package clanker.craft.chat;
+
+import clanker.craft.entity.ClankerEntity;
+import net.minecraft.command.argument.EntityAnchorArgumentType;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+
+import java.util.ArrayDeque;
+
+/**
+ * Walks Clankers to their conversation partner and keeps frozen ones facing the player.
+ * Sessions are serviced round-robin under a fixed per-tick time budget, so hundreds of
+ * conversations cost a bounded slice of each tick; whatever doesn't fit is picked up next tick.
+ * Server thread only.
+ */
+final class FollowController {
+    private static final long TICK_BUDGET_NANOS = 300_000; // 0.3 ms per server tick
+    private static final double MOVE_SPEED = 1; // navigation speed
+    private static final double ARRIVE_DISTANCE = 2.5; // when considered arrived to freeze
+    private static final double REPATH_DISTANCE = 1.5; // player drift that warrants a new path
+    private static final int MIN_REPATH_TICKS = 5; // never repath more often than this
+    private static final int IDLE_REPATH_TICKS = 40; // repath a stalled navigation even if the player stood still
+
+    private final ArrayDeque<Session> ring = new ArrayDeque<>();
+    private int tick = 0;
+
+    int currentTick() { return tick; }
+
+    void track(Session s) {
+        s.awaitingFreeze = true;
+        s.nextLookTick = tick;
+        ring.addLast(s);
+    }
+
+    // Ended sessions are dropped lazily when they come round
+    void untrack(Session s) { s.ended = true; }
+
+    /** Issue the initial path right away instead of waiting for the session's turn. */
+    void startApproach(Session s, ClankerEntity mob, ServerPlayerEntity player) {
+        repath(s, mob, player);
+    }
+
+    void tick(MinecraftServer server) {
+        tick++;
+        int n = ring.size();
+        if (n == 0) return;
+        long deadline = System.nanoTime() + TICK_BUDGET_NANOS;
+        for (int i = 0; i < n; i++) {
+            if (i > 0 && System.nanoTime() > deadline) break;
+            Session s = ring.pollFirst();
+            if (s == null) break;
+            if (s.ended) continue;
+            ring.addLast(s);
+            service(server, s);
+        }
+    }
+
+    private void service(MinecraftServer server, Session s) {
+        ServerPlayerEntity player = s.player(server, tick);
+        if (player == null) return; // offline
+        ClankerEntity mob = s.mob((ServerWorld) player.getEntityWorld(), tick);
+        if (mob == null || !mob.isAlive()) return;
+
+        double distSq = mob.squaredDistanceTo(player);
+        if (s.awaitingFreeze) {
+            if (distSq <= ARRIVE_DISTANCE * ARRIVE_DISTANCE) {
+                mob.setAiDisabled(true); // freeze in place
+                s.awaitingFreeze = false; // now frozen until @bye
+                look(s, mob, player, distSq);
+                return;
+            }
+            int since = tick - s.lastPathTick;
+            if (since < MIN_REPATH_TICKS) return;
+            double dx = player.getX() - s.pathTargetX, dy = player.getY() - s.pathTargetY, dz = player.getZ() - s.pathTargetZ;
+            boolean drifted = dx * dx + dy * dy + dz * dz > REPATH_DISTANCE * REPATH_DISTANCE;
+            boolean stalled = since >= IDLE_REPATH_TICKS && mob.getNavigation().isIdle();
+            if (drifted || stalled) repath(s, mob, player);
+        } else if (mob.isAiDisabled() && tick >= s.nextLookTick) {
+            // After frozen, keep the mob looking at the player; far observers get fewer updates
+            look(s, mob, player, distSq);
+        }
+    }
+
+    private void repath(Session s, ClankerEntity mob, ServerPlayerEntity player) {
+        s.lastPathTick = tick;
+        s.pathTargetX = player.getX();
+        s.pathTargetY = player.getY();
+        s.pathTargetZ = player.getZ();
+        mob.getNavigation().startMovingTo(player, MOVE_SPEED);
+    }
+
+    private void look(Session s, ClankerEntity mob, ServerPlayerEntity player, double distSq) {
+        mob.lookAt(EntityAnchorArgumentType.EntityAnchor.EYES, player.getEyePos());
+        s.nextLookTick = tick + lookInterval(distSq);
+    }
+
+    private static int lookInterval(double distSq) {
+        if (distSq <= 4 * 4) return 1;
+        if (distSq <= 12 * 12) return 4;
+        return 10;
+    }
+}
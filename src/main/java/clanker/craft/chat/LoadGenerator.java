@@ -0,0 +1,157 @@
+package clanker.craft.chat;
+
+import clanker.craft.exec.GenerationExecutor;
+import clanker.craft.metrics.LatencyHistogram;
+import clanker.craft.trace.Trace;
+import clanker.craft.tts.TtsBroadcaster;
+import clanker.craft.tts.TtsCodec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop load on the chat pipeline, meant to run against the provider stand-in
+ * (PROVIDER_BASE_URL): N simulated conversations, each with its own context window, send their next
+ * message as soon as the previous reply (and its server-side speech, when that is on) is complete.
+ * Replies take the same path as a real player's: LLM bulkhead, streaming, summarization of old
+ * turns, TTS bulkhead; only nothing goes to a client.
+ */
+public final class LoadGenerator {
+    private static final String PERSONA = "You are Clanker, a cheerful robot living in a Minecraft world. "
+            + "Answer in two or three short sentences.";
+    private static final String[] MESSAGES = {
+            "Hi Clanker, what are you up to today?",
+            "Can you help me build an automatic wheat farm?",
+            "Where should I look for diamonds?",
+            "What's the best way to get to the Nether safely?",
+            "Tell me a story about a creeper who wanted friends.",
+            "How do I stop zombies from breaking into my house?",
+            "Which enchantments should I put on my pickaxe?",
+            "Thanks! Anything else I should know before nightfall?"
+    };
+    private static final AtomicBoolean RUNNING = new AtomicBoolean();
+
+    private LoadGenerator() {}
+
+    /**
+     * Outcome of one run. Latencies are from sending a message to the full reply, to its first
+     * sentence, and to the first sentence's synthesized audio (server-side TTS only).
+     */
+    public record Report(int conversations, long messages, long failed, long rejected, double seconds,
+                         LatencyHistogram.Snapshot reply, LatencyHistogram.Snapshot firstSentence,
+                         LatencyHistogram.Snapshot firstAudio) {
+        /** Successful replies per second. */
+        public double throughput() {
+            return (seconds <= 0) ? 0 : (messages - failed - rejected) / seconds;
+        }
+    }
+
+    /**
+     * Starts a run of conversations x messagesEach messages on virtual threads. Returns null if a
+     * run is already going; otherwise the future completes with the report once every conversation
+     * has finished.
+     */
+    public static CompletableFuture<Report> start(int conversations, int messagesEach) {
+        if (!RUNNING.compareAndSet(false, true)) return null;
+        CompletableFuture<Report> done = new CompletableFuture<>();
+        Thread.ofVirtual().name("Clanker-Load").start(() -> {
+            try {
+                done.complete(run(conversations, messagesEach));
+            } catch (Throwable t) {
+                done.completeExceptionally(t);
+            } finally {
+                RUNNING.set(false);
+            }
+        });
+        return done;
+    }
+
+    private static Report run(int conversations, int messagesEach) throws InterruptedException {
+        LatencyHistogram reply = new LatencyHistogram();
+        LatencyHistogram firstSentence = new LatencyHistogram();
+        LatencyHistogram firstAudio = new LatencyHistogram();
+        LongAdder messages = new LongAdder();
+        LongAdder failed = new LongAdder();
+        LongAdder rejected = new LongAdder();
+        CountDownLatch finished = new CountDownLatch(conversations);
+        long start = System.nanoTime();
+        for (int c = 0; c < conversations; c++) {
+            int offset = c;
+            Thread.ofVirtual().name("Clanker-Load-" + c).start(() -> {
+                try {
+                    ContextWindow context = new ContextWindow(ChatInteraction::summarize);
+                    context.pinPersona(PERSONA);
+                    for (int i = 0; i < messagesEach; i++) {
+                        String message = MESSAGES[(offset + i) % MESSAGES.length];
+                        messages.increment();
+                        switch (exchange(context, message, reply, firstSentence, firstAudio)) {
+                            case FAILED -> failed.increment();
+                            case REJECTED -> rejected.increment();
+                            case OK -> {}
+                        }
+                    }
+                } finally {
+                    finished.countDown();
+                }
+            });
+        }
+        finished.await();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return new Report(conversations, messages.sum(), failed.sum(), rejected.sum(), seconds,
+                reply.snapshot(), firstSentence.snapshot(), firstAudio.snapshot());
+    }
+
+    private enum Result { OK, FAILED, REJECTED }
+
+    // One message and its reply, the way ChatInteraction handles a chat line
+    private static Result exchange(ContextWindow context, String message, LatencyHistogram reply,
+                                   LatencyHistogram firstSentence, LatencyHistogram firstAudio) {
+        long trace = Trace.newId();
+        List<String> history = context.snapshot();
+        context.appendUser(message);
+        boolean speak = TtsBroadcaster.isServerSide();
+        List<CompletableFuture<TtsCodec.Encoded>> speech = new ArrayList<>();
+        AtomicBoolean first = new AtomicBoolean(true);
+        long sent = System.nanoTime();
+        String text;
+        try {
+            text = ChatInteraction.reply(history, message, trace, sentence -> {
+                if (first.compareAndSet(true, false)) {
+                    firstSentence.record(System.nanoTime() - sent);
+                    if (speak) speech.add(timed(TtsBroadcaster.synthesize(sentence, "en", trace), sent, firstAudio));
+                } else if (speak) {
+                    speech.add(TtsBroadcaster.synthesize(sentence, "en", trace));
+                }
+            }).join();
+        } catch (RuntimeException e) {
+            return GenerationExecutor.isSaturated(e) ? Result.REJECTED : Result.FAILED;
+        }
+        if (text.startsWith("(error) ")) return Result.FAILED;
+        // Not streamed: the whole reply is the first sentence, and is spoken as one line
+        if (first.get()) {
+            firstSentence.record(System.nanoTime() - sent);
+            if (speak) speech.add(timed(TtsBroadcaster.synthesize(text, "en", trace), sent, firstAudio));
+        }
+        reply.record(System.nanoTime() - sent);
+        context.appendModel(text);
+        // Closed loop: the next message waits until everything said has been synthesized
+        for (CompletableFuture<TtsCodec.Encoded> f : speech) {
+            try {
+                f.join();
+            } catch (RuntimeException ignored) {
+                // speech failures fall back to client-side TTS in game; they don't fail the reply
+            }
+        }
+        return Result.OK;
+    }
+
+    private static <T> CompletableFuture<T> timed(CompletableFuture<T> f, long since, LatencyHistogram into) {
+        return f.whenComplete((v, err) -> {
+            if (err == null) into.record(System.nanoTime() - since);
+        });
+    }
+}
@@ -0,0 +1,81 @@
+package clanker.craft.chat;
+
+import clanker.craft.entity.ClankerEntity;
+import net.minecraft.entity.Entity;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+
+import java.lang.ref.WeakReference;
+import java.util.UUID;
+
+/**
+ * Conversation state between one player and one Clanker.
+ * Holds weak references to both entities so the tick loop can reach them without UUID lookups;
+ * the references are re-resolved by UUID only when they go stale (relog, chunk reload).
+ */
+final class Session {
+    private static final int RESOLVE_RETRY_TICKS = 20; // don't hammer UUID lookups for a missing entity
+
+    final UUID playerUuid;
+    final UUID mobUuid;
+    final ContextWindow context;
+    volatile boolean busy = false;
+    volatile boolean ended = false;
+    // stored history is still being read back (server thread only)
+    boolean loading = false;
+
+    // freeze-on-arrival state (server thread only)
+    boolean awaitingFreeze = false;
+    int lastPathTick = Integer.MIN_VALUE / 2;
+    double pathTargetX, pathTargetY, pathTargetZ;
+    int nextLookTick = 0;
+
+    private WeakReference<ServerPlayerEntity> playerRef;
+    private WeakReference<ClankerEntity> mobRef;
+    private int nextPlayerResolveTick = 0;
+    private int nextMobResolveTick = 0;
+
+    Session(ServerPlayerEntity player, ClankerEntity mob, ContextWindow.Summarizer summarizer) {
+        this.context = new ContextWindow(summarizer);
+        this.playerUuid = player.getUuid();
+        this.mobUuid = mob.getUuid();
+        this.playerRef = new WeakReference<>(player);
+        this.mobRef = new WeakReference<>(mob);
+    }
+
+    void appendUser(String text) { context.appendUser(text); }
+    void appendModel(String text) { context.appendModel(text); }
+
+    /** The online player entity, or null. Falls back to the player list when the cached entity went away. */
+    ServerPlayerEntity player(MinecraftServer server, int tick) {
+        ServerPlayerEntity p = playerRef.get();
+        if (p != null && !p.isRemoved()) return p;
+        if (tick < nextPlayerResolveTick) return null;
+        nextPlayerResolveTick = tick + RESOLVE_RETRY_TICKS;
+        p = server.getPlayerManager().getPlayer(playerUuid);
+        if (p != null) playerRef = new WeakReference<>(p);
+        return p;
+    }
+
+    /** The loaded Clanker for this session in the given world, or null. */
+    ClankerEntity mob(ServerWorld world) {
+        ClankerEntity m = mobRef.get();
+        if (m != null && !m.isRemoved() && m.getEntityWorld() == world) return m;
+        Entity e = world.getEntity(mobUuid);
+        if (e instanceof ClankerEntity c) {
+            mobRef = new WeakReference<>(c);
+            return c;
+        }
+        return null;
+    }
+
+    /** Like {@link #mob(ServerWorld)} but rate-limits the UUID fallback; for the per-tick loop. */
+    ClankerEntity mob(ServerWorld world, int tick) {
+        ClankerEntity m = mobRef.get();
+        if (m != null && !m.isRemoved() && m.getEntityWorld() == world) return m;
+        if (tick < nextMobResolveTick) return null;
+        nextMobResolveTick = tick + RESOLVE_RETRY_TICKS;
+        return mob(world);
+    }
+}
@@ -0,0 +1,156 @@
+package clanker.craft.command;
+
+import clanker.craft.ClankerCraft;
+import clanker.craft.chat.ChatInteraction;
+import clanker.craft.chat.LoadGenerator;
+import clanker.craft.config.Config;
+import clanker.craft.exec.GenerationExecutor.Bulkhead;
+import clanker.craft.http.HttpTransport;
+import clanker.craft.llm.LLMClient;
+import clanker.craft.metrics.LatencyHistogram;
+import clanker.craft.metrics.Metrics;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.context.CommandContext;
+import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
+import net.minecraft.server.command.CommandManager;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.text.Text;
+import net.minecraft.util.Formatting;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@code /clanker} operator commands. {@code /clanker stats} prints provider latency, bulkhead
+ * load, connection reuse since startup and which Gemini model replies are routed to; the same numbers go to the Prometheus file
+ * ({@link clanker.craft.metrics.PrometheusExporter}). {@code /clanker loadtest <conversations> [messages]}
+ * runs {@link LoadGenerator} against the provider stand-in and reports throughput and tail latency.
+ */
+public final class ClankerCommand {
+    private ClankerCommand() {}
+
+    public static void register() {
+        CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) -> dispatcher.register(
+                CommandManager.literal("clanker")
+                        .requires(source -> source.hasPermissionLevel(2))
+                        .then(CommandManager.literal("stats").executes(ClankerCommand::stats))
+                        .then(CommandManager.literal("loadtest")
+                                .then(CommandManager.argument("conversations", IntegerArgumentType.integer(1, 500))
+                                        .executes(ctx -> loadTest(ctx, 10))
+                                        .then(CommandManager.argument("messages", IntegerArgumentType.integer(1, 1000))
+                                                .executes(ctx -> loadTest(ctx, IntegerArgumentType.getInteger(ctx, "messages"))))))));
+    }
+
+    private static int loadTest(CommandContext<ServerCommandSource> ctx, int messages) {
+        ServerCommandSource source = ctx.getSource();
+        // Every simulated message is a real provider call; don't let this spend Google quota by accident
+        if (Config.providerBaseUrl() == null) {
+            send(source, "Set PROVIDER_BASE_URL to a provider stand-in first (see README, Load testing).", Formatting.RED);
+            return 0;
+        }
+        int conversations = IntegerArgumentType.getInteger(ctx, "conversations");
+        CompletableFuture<LoadGenerator.Report> run = LoadGenerator.start(conversations, messages);
+        if (run == null) {
+            send(source, "A load test is already running.", Formatting.RED);
+            return 0;
+        }
+        send(source, String.format(Locale.ROOT, "Load test: %d conversations x %d messages against %s",
+                conversations, messages, Config.providerBaseUrl()), Formatting.GOLD);
+        run.whenComplete((report, err) -> source.getServer().execute(() -> {
+            if (err != null) {
+                ClankerCraft.LOGGER.warn("Load test failed", err);
+                send(source, "Load test failed: " + err, Formatting.RED);
+                return;
+            }
+            for (String line : describe(report)) {
+                ClankerCraft.LOGGER.info(line);
+                send(source, line, Formatting.WHITE);
+            }
+        }));
+        return 1;
+    }
+
+    private static List<String> describe(LoadGenerator.Report r) {
+        List<String> out = new ArrayList<>();
+        out.add(String.format(Locale.ROOT, "Load test done in %.1fs: %d messages, %.2f replies/s, %d failed, %d rejected by the bulkhead",
+                r.seconds(), r.messages(), r.throughput(), r.failed(), r.rejected()));
+        out.add("  reply " + percentiles(r.reply()));
+        out.add("  first sentence " + percentiles(r.firstSentence()));
+        if (r.firstAudio().count() > 0) out.add("  first audio " + percentiles(r.firstAudio()));
+        return out;
+    }
+
+    private static String percentiles(LatencyHistogram.Snapshot l) {
+        return String.format(Locale.ROOT, "p50 %s p90 %s p99 %s p99.9 %s max %s",
+                millis(l.percentileMillis(0.5)), millis(l.percentileMillis(0.9)), millis(l.percentileMillis(0.99)),
+                millis(l.percentileMillis(0.999)), millis(l.maxMillis()));
+    }
+
+    private static int stats(CommandContext<ServerCommandSource> ctx) {
+        ServerCommandSource source = ctx.getSource();
+        List<Metrics.CallStats> calls = Metrics.snapshot();
+        send(source, "Provider calls (since startup):", Formatting.GOLD);
+        if (calls.isEmpty()) send(source, "  none yet", Formatting.GRAY);
+        for (Metrics.CallStats s : calls) {
+            LatencyHistogram.Snapshot l = s.latency();
+            send(source, String.format(Locale.ROOT, "  %s %s %s: %d calls, p50 %s p99 %s max %s, %d errors, %d rate-limited, %s out / %s in",
+                    s.key().provider(), s.key().model(), s.key().endpoint(), s.calls(),
+                    millis(l.percentileMillis(0.5)), millis(l.percentileMillis(0.99)), millis(l.maxMillis()),
+                    s.errors(), s.rateLimited(), bytes(s.bytesSent()), bytes(s.bytesReceived())), Formatting.WHITE);
+        }
+        send(source, "Bulkheads:", Formatting.GOLD);
+        for (Bulkhead b : Bulkhead.values()) {
+            LatencyHistogram.Snapshot w = b.queueWait().snapshot();
+            send(source, String.format(Locale.ROOT, "  %s: %d/%d running, %d queued, wait p99 %s, %d rejected",
+                    b.name(), b.inFlight(), b.maxConcurrent(), b.queued(), millis(w.percentileMillis(0.99)), b.rejected()), Formatting.WHITE);
+        }
+        send(source, "Connections:", Formatting.GOLD);
+        for (HttpTransport.OriginStats o : HttpTransport.stats()) {
+            send(source, String.format(Locale.ROOT, "  %s: %d requests, %.0f%% reused, %d over HTTP/2, mean %s reused / %s new",
+                    o.origin(), o.requests(), o.reuseRatio() * 100, o.http2(),
+                    millis(o.meanReusedMillis()), millis(o.meanColdMillis())), Formatting.WHITE);
+        }
+        routing(source, ChatInteraction.llmRouting());
+        return calls.size();
+    }
+
+    private static void routing(ServerCommandSource source, LLMClient.ProbeStatus p) {
+        send(source, "Gemini model routing:", Formatting.GOLD);
+        if (p.activeModel().equals(p.preferredModel())) {
+            send(source, "  " + p.activeModel() + " (as configured)", Formatting.WHITE);
+            return;
+        }
+        send(source, String.format(Locale.ROOT, "  %s, falling back from %s", p.activeModel(), p.preferredModel()), Formatting.YELLOW);
+        Instant now = Instant.now();
+        String last = (p.lastProbeAt() == null) ? "never probed"
+                : String.format(Locale.ROOT, "last probe %s ago: %s", span(p.lastProbeAt(), now),
+                        p.lastProbeStatus() < 0 ? "transport error" : "HTTP " + p.lastProbeStatus());
+        String next = (p.nextProbeAt() == null) ? "no probe scheduled"
+                : "next in " + span(now, p.nextProbeAt());
+        send(source, String.format(Locale.ROOT, "  %s, %d failures in a row, %s", last, p.consecutiveFailures(), next), Formatting.WHITE);
+    }
+
+    private static String span(Instant from, Instant to) {
+        return millis(Math.max(0, Duration.between(from, to).toMillis()));
+    }
+
+    private static void send(ServerCommandSource source, String line, Formatting color) {
+        source.sendFeedback(() -> Text.literal(line).formatted(color), false);
+    }
+
+    private static String millis(double ms) {
+        if (ms >= 10_000) return String.format(Locale.ROOT, "%.1fs", ms / 1000);
+        if (ms >= 10) return String.format(Locale.ROOT, "%.0fms", ms);
+        return String.format(Locale.ROOT, "%.1fms", ms);
+    }
+
+    private static String bytes(long n) {
+        if (n >= 1 << 20) return String.format(Locale.ROOT, "%.1f MB", n / 1048576.0);
+        if (n >= 1 << 10) return String.format(Locale.ROOT, "%.1f KB", n / 1024.0);
+        return n + " B";
+    }
+}
@@ -1,40 +1,87 @@
 package clanker.craft.config;
 
 import net.fabricmc.loader.api.FabricLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.InputStream;
+import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Arrays;
-import java.util.Objects;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Simple centralized config resolver for ClankerCraft.
  * Precedence: System property -> Environment variable -> Fabric config file (clankercraft-llm.properties).
  *
  * Provides convenience alias resolution so users can provide any of the listed keys.
+ * Everything is resolved into an immutable {@link ConfigSnapshot} that is swapped atomically when
+ * the file changes on disk (see {@link #startWatching()}), so settings can be retuned without a restart.
  */
 public final class Config {
-    private static volatile Properties cached;
+    private static final Logger LOGGER = LoggerFactory.getLogger("ClankerCraft-Config");
+    private static final String FILE_NAME = "clankercraft-llm.properties";
+    /** Sent in place of API keys and access tokens to a PROVIDER_BASE_URL override. */
+    public static final String STAND_IN_CREDENTIAL = "stand-in";
+
+    private static volatile ConfigSnapshot current;
+    private static final List<Listener> LISTENERS = new CopyOnWriteArrayList<>();
+    private static FileWatcher watcher;
+    private static volatile String rejectedBaseUrl; // last PROVIDER_BASE_URL warned about
 
     private Config() {}
 
-    public static String get(String... keys) {
-        Objects.requireNonNull(keys, "keys");
-        for (String k : keys) {
-            if (k == null || k.isBlank()) continue;
-            // 1) System property
-            String v = System.getProperty(k);
-            if (v != null && !v.isBlank()) return v.trim();
-            // 2) Environment variable
-            v = System.getenv(k);
-            if (v != null && !v.isBlank()) return v.trim();
-            // 3) Properties file
-            v = props().getProperty(k);
-            if (v != null && !v.isBlank()) return v.trim();
+    /** Notified on the watcher thread after a reload changed something. */
+    public interface Listener {
+        void changed(ConfigSnapshot previous, ConfigSnapshot next);
+    }
+
+    /** The settings in effect. Read once per operation to see one consistent set of values. */
+    public static ConfigSnapshot current() {
+        ConfigSnapshot s = current;
+        if (s != null) return s;
+        synchronized (Config.class) {
+            if (current == null) current = load();
+            return current;
         }
-        return null;
+    }
+
+    public static void addListener(Listener listener) {
+        LISTENERS.add(listener);
+    }
+
+    /** Re-reads the config file (and properties/environment) and publishes the result if it differs. */
+    public static void reload() {
+        ConfigSnapshot previous;
+        ConfigSnapshot next = load();
+        synchronized (Config.class) {
+            previous = current;
+            if (next.equals(previous)) return;
+            current = next;
+        }
+        if (previous == null) return;
+        LOGGER.info("Reloaded {}", FILE_NAME);
+        for (Listener l : LISTENERS) {
+            try {
+                l.changed(previous, next);
+            } catch (Throwable t) {
+                LOGGER.warn("Config listener failed: {}", t.toString());
+            }
+        }
+    }
+
+    /** Starts reloading whenever the config file changes. Idempotent. */
+    public static synchronized void startWatching() {
+        if (watcher != null) return;
+        Path file = configFile();
+        watcher = FileWatcher.watch(file.getParent(), p -> p.getFileName().toString().equals(FILE_NAME),
+                Config::reload, "Clanker-Config-Watch");
+    }
+
+    public static String get(String... keys) {
+        return current().get(keys);
     }
 
     public static String getOrDefault(String defaultValue, String... keys) {
@@ -43,107 +90,122 @@ public final class Config {
     }
 
     public static Path configFile() {
-        return FabricLoader.getInstance().getConfigDir().resolve("clankercraft-llm.properties");
+        return FabricLoader.getInstance().getConfigDir().resolve(FILE_NAME);
     }
 
-    private static Properties props() {
-        Properties p = cached;
-        if (p != null) return p;
-        synchronized (Config.class) {
-            if (cached != null) return cached;
-            Properties loaded = new Properties();
-            try {
-                Path f = configFile();
-                if (Files.exists(f)) {
-                    try (InputStream in = Files.newInputStream(f)) {
-                        loaded.load(in);
-                    }
+    private static ConfigSnapshot load() {
+        Properties loaded = new Properties();
+        try {
+            Path f = configFile();
+            if (Files.exists(f)) {
+                try (InputStream in = Files.newInputStream(f)) {
+                    loaded.load(in);
                 }
-            } catch (Exception ignored) {}
-            cached = loaded;
-            return cached;
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Could not read {}: {}", FILE_NAME, e.toString());
         }
+        return ConfigSnapshot.resolve(loaded, System.getenv(), System.getProperties());
     }
 
     // Convenience aliases for common keys
     public static String geminiApiKey() {
-        return get(
-                "GOOGLE_AI_STUDIO_API_KEY",
-                "GEMINI_API_KEY",
-                "GOOGLE_AI_API_KEY",
-                "AI_STUDIO_API_KEY"
-        );
+        return current().gemini().apiKey();
     }
 
     public static String geminiModelOrDefault(String def) {
-        return getOrDefault(def,
-                "GEMINI_MODEL",
-                "GOOGLE_AI_STUDIO_MODEL",
-                "LLM_MODEL"
-        );
+        return orDefault(current().gemini().model(), def);
+    }
+
+    public static boolean geminiStreamingOrDefault(boolean def) {
+        return orDefault(current().gemini().streaming(), def);
     }
 
     public static String gcpProjectId() {
-        return get(
-                "GOOGLE_CLOUD_PROJECT_ID",
-                "GCP_PROJECT_ID",
-                "PROJECT_ID"
-        );
+        return current().vertex().projectId();
     }
 
     public static String gcpLocationOrDefault(String def) {
-        return getOrDefault(def,
-                "GCP_LOCATION",
-                "GOOGLE_CLOUD_LOCATION",
-                "LOCATION"
-        );
+        return orDefault(current().vertex().location(), def);
     }
 
     public static String googleCredentialsPath() {
-        return get(
-                "GOOGLE_APPLICATION_CREDENTIALS",
-                "GOOGLE_CLOUD_CREDENTIALS",
-                "GOOGLE_ADC_JSON"
-        );
+        return current().vertex().credentialsPath();
     }
 
     public static String imagenModelOrDefault(String def) {
-        return getOrDefault(def,
-                "IMAGEN_MODEL",
-                "VERTEX_IMAGEN_MODEL"
-        );
+        return orDefault(current().vertex().imagenModel(), def);
     }
 
     public static String lyriaModelOrDefault(String def) {
-        return getOrDefault(def,
-                "VERTEX_LYRIA_MODEL",
-                "LYRIA_MODEL"
-        );
+        return orDefault(current().vertex().lyriaModel(), def);
     }
 
     public static String ttsApiKey() {
-        return get(
-                // Accept both; prefer GOOGLE_TTS_API_KEY in docs
-                "GOOGLE_TTS_API_KEY",
-                "GOOGLE_CLOUD_API_KEY",
-                "TEXT_TO_SPEECH_API_KEY"
-        );
+        return current().tts().apiKey();
     }
 
     public static String ttsLanguageOrDefault(String def) {
-        return getOrDefault(def, "TTS_LANGUAGE_CODE");
+        return orDefault(current().tts().languageCode(), def);
+    }
+
+    public static boolean ttsStreamingOrDefault(boolean def) {
+        return orDefault(current().tts().streaming(), def);
     }
 
-    public static String ttsVoiceName() { return get("TTS_VOICE_NAME"); }
-    public static String ttsSpeakingRate() { return get("TTS_SPEAKING_RATE"); }
-    public static String ttsPitch() { return get("TTS_PITCH"); }
+    public static boolean ttsServerSideOrDefault(boolean def) {
+        return orDefault(current().tts().serverSide(), def);
+    }
+
+    public static String ttsVoiceName() { return current().tts().voiceName(); }
+    public static String ttsSpeakingRate() { return current().tts().speakingRate(); }
+    public static String ttsPitch() { return current().tts().pitch(); }
 
-    public static String personalityName() { return get("CLANKER_PERSONALITY"); }
+    public static String personalityName() { return current().personality(); }
 
     public static String languageOrDefault(String def) {
-        return getOrDefault(def,
-                "CLANKER_LANGUAGE",
-                "LANGUAGE"
-        );
+        return orDefault(current().language(), def);
+    }
+
+    /**
+     * PROVIDER_BASE_URL: send every Gemini, Vertex AI and Cloud TTS request to this origin instead of
+     * Google's (e.g. the local stand-in used for load tests). Only https, or plain http to a loopback
+     * host, is accepted; null when unset or rejected. While it is set, clients send
+     * {@link #STAND_IN_CREDENTIAL} in place of their API keys and tokens.
+     */
+    public static URI providerBaseUrl() {
+        String v = get("PROVIDER_BASE_URL", "CLANKER_PROVIDER_BASE_URL");
+        if (v == null) return null;
+        URI uri;
+        try {
+            uri = URI.create(v.endsWith("/") ? v : v + "/");
+        } catch (IllegalArgumentException e) {
+            uri = null;
+        }
+        if (uri != null && uri.getHost() != null
+                && ("https".equalsIgnoreCase(uri.getScheme())
+                    || ("http".equalsIgnoreCase(uri.getScheme()) && isLoopback(uri.getHost())))) {
+            return uri;
+        }
+        if (!v.equals(rejectedBaseUrl)) {
+            rejectedBaseUrl = v;
+            LOGGER.warn("Ignoring PROVIDER_BASE_URL {}: expected https://, or http:// to localhost/127.0.0.1/[::1]", v);
+        }
+        return null;
+    }
+
+    // Literal loopback names only: no DNS lookup that could point somewhere else
+    private static boolean isLoopback(String host) {
+        return host.equalsIgnoreCase("localhost") || host.equals("[::1]") || host.matches("127(\\.\\d{1,3}){3}");
+    }
+
+    /** The origin to use in place of the given Google one: itself, or the PROVIDER_BASE_URL override. */
+    public static URI providerOrigin(URI google) {
+        URI override = providerBaseUrl();
+        return (override == null) ? google : override;
+    }
+
+    private static <T> T orDefault(T v, T def) {
+        return (v == null) ? def : v;
     }
 }
@@ -0,0 +1,77 @@
+package clanker.craft.config;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * Every setting resolved once (system property -> environment variable -> config file) and frozen.
+ * Lookups are plain map reads, so hot paths do no syscalls or disk I/O. Grouped per subsystem so a
+ * reload listener can tell cheaply whether the part it cares about changed.
+ */
+public record ConfigSnapshot(Map<String, String> values, Gemini gemini, Vertex vertex, Tts tts,
+                             String personality, String language) {
+
+    public record Gemini(String apiKey, String model, Boolean streaming) {}
+
+    public record Vertex(String projectId, String location, String credentialsPath, String imagenModel, String lyriaModel) {}
+
+    public record Tts(String apiKey, String languageCode, String voiceName, String speakingRate, String pitch,
+                      Boolean streaming, Boolean serverSide) {}
+
+    /** Resolves everything from the given sources; later sources win, blank values don't count. */
+    static ConfigSnapshot resolve(Properties file, Map<String, String> env, Properties system) {
+        Map<String, String> v = new HashMap<>();
+        file.stringPropertyNames().forEach(k -> put(v, k, file.getProperty(k)));
+        env.forEach((k, val) -> put(v, k, val));
+        system.stringPropertyNames().forEach(k -> put(v, k, system.getProperty(k)));
+        Map<String, String> values = Map.copyOf(v);
+
+        Gemini gemini = new Gemini(
+                first(values, "GOOGLE_AI_STUDIO_API_KEY", "GEMINI_API_KEY", "GOOGLE_AI_API_KEY", "AI_STUDIO_API_KEY"),
+                first(values, "GEMINI_MODEL", "GOOGLE_AI_STUDIO_MODEL", "LLM_MODEL"),
+                bool(first(values, "GEMINI_STREAMING", "LLM_STREAMING")));
+        Vertex vertex = new Vertex(
+                first(values, "GOOGLE_CLOUD_PROJECT_ID", "GCP_PROJECT_ID", "PROJECT_ID"),
+                first(values, "GCP_LOCATION", "GOOGLE_CLOUD_LOCATION", "LOCATION"),
+                first(values, "GOOGLE_APPLICATION_CREDENTIALS", "GOOGLE_CLOUD_CREDENTIALS", "GOOGLE_ADC_JSON"),
+                first(values, "IMAGEN_MODEL", "VERTEX_IMAGEN_MODEL"),
+                first(values, "VERTEX_LYRIA_MODEL", "LYRIA_MODEL"));
+        Tts tts = new Tts(
+                // Accept both; prefer GOOGLE_TTS_API_KEY in docs
+                first(values, "GOOGLE_TTS_API_KEY", "GOOGLE_CLOUD_API_KEY", "TEXT_TO_SPEECH_API_KEY"),
+                first(values, "TTS_LANGUAGE_CODE"),
+                first(values, "TTS_VOICE_NAME"),
+                first(values, "TTS_SPEAKING_RATE"),
+                first(values, "TTS_PITCH"),
+                bool(first(values, "TTS_STREAMING")),
+                bool(first(values, "TTS_SERVER_SIDE")));
+        return new ConfigSnapshot(values, gemini, vertex, tts,
+                first(values, "CLANKER_PERSONALITY"),
+                first(values, "CLANKER_LANGUAGE", "LANGUAGE"));
+    }
+
+    /** The value of the first key that is set, or null. */
+    public String get(String... keys) {
+        Objects.requireNonNull(keys, "keys");
+        return first(values, keys);
+    }
+
+    private static String first(Map<String, String> values, String... keys) {
+        for (String k : keys) {
+            if (k == null || k.isBlank()) continue;
+            String v = values.get(k);
+            if (v != null) return v;
+        }
+        return null;
+    }
+
+    private static void put(Map<String, String> values, String key, String value) {
+        if (value != null && !value.isBlank()) values.put(key, value.trim());
+    }
+
+    private static Boolean bool(String v) {
+        return (v == null) ? null : Boolean.parseBoolean(v);
+    }
+}
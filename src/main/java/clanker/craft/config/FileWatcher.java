@@ -0,0 +1,99 @@
+package clanker.craft.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Calls back when files in one directory are created, modified or deleted. Editors save in bursts
+ * (truncate, write, rename), so events are coalesced: the callback runs once things have been quiet
+ * for {@link #SETTLE_MILLIS}. One daemon thread per watcher; the callback runs on it.
+ */
+public final class FileWatcher implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger("ClankerCraft-Config");
+    private static final long SETTLE_MILLIS = 250;
+
+    private final Path dir;
+    private final Predicate<Path> filter;
+    private final Runnable onChange;
+    private final WatchService watcher;
+    private final Thread thread;
+
+    private FileWatcher(Path dir, Predicate<Path> filter, Runnable onChange, String name) throws IOException {
+        this.dir = dir;
+        this.filter = filter;
+        this.onChange = onChange;
+        this.watcher = FileSystems.getDefault().newWatchService();
+        dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Watches dir (created if missing) for changes to the file names accepted by filter, which sees
+     * paths relative to dir. Returns null if the platform can't watch the directory.
+     */
+    public static FileWatcher watch(Path dir, Predicate<Path> filter, Runnable onChange, String threadName) {
+        try {
+            Files.createDirectories(dir);
+            return new FileWatcher(dir, filter, onChange, threadName);
+        } catch (IOException | UnsupportedOperationException e) {
+            LOGGER.warn("Cannot watch {} for changes: {}", dir, e.toString());
+            return null;
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                boolean relevant = drain(key);
+                // Wait for the burst to settle before reloading
+                while (true) {
+                    WatchKey more = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                    if (more == null) break;
+                    relevant |= drain(more);
+                }
+                if (!relevant) continue;
+                try {
+                    onChange.run();
+                } catch (Throwable t) {
+                    LOGGER.warn("Reload after change in {} failed: {}", dir, t.toString());
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException stop) {
+            // closed
+        }
+    }
+
+    private boolean drain(WatchKey key) {
+        boolean relevant = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            // Overflow means events were lost; reload to be safe
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) relevant = true;
+            else if (event.context() instanceof Path p && filter.test(p)) relevant = true;
+        }
+        key.reset();
+        return relevant;
+    }
+
+    @Override
+    public void close() {
+        try {
+            watcher.close();
+        } catch (IOException ignored) {}
+        thread.interrupt();
+    }
+}
@@ -2,7 +2,10 @@ package clanker.craft.entity;
 
 import net.minecraft.entity.EntityType;
 import net.minecraft.entity.passive.CopperGolemEntity;
+import net.minecraft.server.world.ServerWorld;
 import net.minecraft.sound.SoundEvent;
+import net.minecraft.storage.ReadView;
+import net.minecraft.storage.WriteView;
 import net.minecraft.world.World;
 
 /**
@@ -10,6 +13,13 @@ import net.minecraft.world.World;
  * We override goal initialization and attack to avoid any hostile actions (no raids, no attacking villagers).
  */
 public class ClankerEntity extends CopperGolemEntity {
+    private static final String PERSONA_KEY = "ClankerPersona";
+
+    // Grid cell this mob is filed under in ClankerIndex
+    long indexedCell = ClankerIndex.UNINDEXED;
+    // Persona name from PersonalityRegistry, assigned on first conversation and saved with the entity
+    private String persona;
+
     public ClankerEntity(EntityType<? extends CopperGolemEntity> entityType, World world) {
         super(entityType, world);
     }
@@ -19,6 +29,30 @@ public class ClankerEntity extends CopperGolemEntity {
         // Remove any goals of the new mob that we don't want.
     }
 
+    @Override
+    public void tick() {
+        super.tick();
+        // Keep the spatial index in step with movement (no-op unless we crossed a cell boundary)
+        if (indexedCell != ClankerIndex.UNINDEXED && getEntityWorld() instanceof ServerWorld sw) {
+            ClankerIndex.of(sw).update(this);
+        }
+    }
+
+    public String getPersona() { return persona; }
+    public void setPersona(String persona) { this.persona = persona; }
+
+    @Override
+    protected void writeCustomData(WriteView view) {
+        super.writeCustomData(view);
+        if (persona != null) view.putString(PERSONA_KEY, persona);
+    }
+
+    @Override
+    protected void readCustomData(ReadView view) {
+        super.readCustomData(view);
+        persona = view.getOptionalString(PERSONA_KEY).orElse(null);
+    }
+
     @Override
     protected SoundEvent getAmbientSound() {
         // Mute sounds while conversing
@@ -0,0 +1,124 @@
+package clanker.craft.entity;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerEntityEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.world.World;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Per-world registry of loaded Clankers, bucketed into a uniform XZ grid.
+ * Kept up to date from entity load/unload events and from ClankerEntity#tick when a mob crosses a cell,
+ * so "nearest Clanker within R" only has to look at a handful of buckets instead of scanning chunks.
+ * Server thread only.
+ */
+public final class ClankerIndex {
+    private static final int CELL_SHIFT = 5; // 32-block cells
+    private static final int CELL_SIZE = 1 << CELL_SHIFT;
+    static final long UNINDEXED = Long.MIN_VALUE;
+
+    private static final Map<RegistryKey<World>, ClankerIndex> WORLDS = new HashMap<>();
+
+    private final Long2ObjectOpenHashMap<ArrayList<ClankerEntity>> cells = new Long2ObjectOpenHashMap<>();
+    private int size;
+
+    private ClankerIndex() {}
+
+    public static void register() {
+        ServerEntityEvents.ENTITY_LOAD.register((entity, world) -> {
+            if (entity instanceof ClankerEntity c) of(world).insert(c);
+        });
+        ServerEntityEvents.ENTITY_UNLOAD.register((entity, world) -> {
+            if (entity instanceof ClankerEntity c) of(world).remove(c);
+        });
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> WORLDS.clear());
+    }
+
+    public static ClankerIndex of(ServerWorld world) {
+        return WORLDS.computeIfAbsent(world.getRegistryKey(), k -> new ClankerIndex());
+    }
+
+    public int size() { return size; }
+
+    /**
+     * Nearest Clanker (by 3D distance) within radius of the given point that matches the filter, or null.
+     * Walks square rings of cells outward and stops once no unvisited ring can beat the best hit.
+     */
+    public ClankerEntity nearest(double x, double y, double z, double radius, Predicate<ClankerEntity> filter) {
+        if (size == 0) return null;
+        int cx = cell(x), cz = cell(z);
+        int maxRing = (int) Math.ceil(radius / CELL_SIZE);
+        double radiusSq = radius * radius;
+        ClankerEntity best = null;
+        double bestSq = Double.MAX_VALUE;
+
+        for (int ring = 0; ring <= maxRing; ring++) {
+            for (int dx = -ring; dx <= ring; dx++) {
+                boolean edgeColumn = dx == -ring || dx == ring;
+                // Interior columns only contribute their top and bottom cell
+                for (int dz = -ring; dz <= ring; dz += edgeColumn ? 1 : Math.max(1, 2 * ring)) {
+                    ArrayList<ClankerEntity> bucket = cells.get(key(cx + dx, cz + dz));
+                    if (bucket == null) continue;
+                    for (int i = 0, n = bucket.size(); i < n; i++) {
+                        ClankerEntity e = bucket.get(i);
+                        double d = e.squaredDistanceTo(x, y, z);
+                        if (d < bestSq && d <= radiusSq && filter.test(e)) {
+                            best = e;
+                            bestSq = d;
+                        }
+                    }
+                }
+            }
+            // Anything in ring+1 or beyond is at least ring*CELL_SIZE blocks away horizontally
+            double bound = (double) ring * CELL_SIZE;
+            if (best != null && bestSq <= bound * bound) break;
+        }
+        return best;
+    }
+
+    // Called from ClankerEntity#tick; only does work when the mob crossed into another cell
+    void update(ClankerEntity e) {
+        long k = key(cell(e.getX()), cell(e.getZ()));
+        if (k == e.indexedCell) return;
+        if (e.indexedCell != UNINDEXED) detach(e, e.indexedCell);
+        attach(e, k);
+    }
+
+    private void insert(ClankerEntity e) {
+        if (e.indexedCell != UNINDEXED) detach(e, e.indexedCell);
+        attach(e, key(cell(e.getX()), cell(e.getZ())));
+    }
+
+    private void remove(ClankerEntity e) {
+        if (e.indexedCell == UNINDEXED) return;
+        detach(e, e.indexedCell);
+        e.indexedCell = UNINDEXED;
+    }
+
+    private void attach(ClankerEntity e, long k) {
+        cells.computeIfAbsent(k, kk -> new ArrayList<>(4)).add(e);
+        e.indexedCell = k;
+        size++;
+    }
+
+    private void detach(ClankerEntity e, long k) {
+        ArrayList<ClankerEntity> bucket = cells.get(k);
+        if (bucket == null || !bucket.remove(e)) return;
+        if (bucket.isEmpty()) cells.remove(k);
+        size--;
+    }
+
+    private static int cell(double coord) {
+        return ((int) Math.floor(coord)) >> CELL_SHIFT;
+    }
+
+    private static long key(int cx, int cz) {
+        return ((long) cx << 32) | (cz & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,192 @@
+package clanker.craft.exec;
+
+import clanker.craft.metrics.LatencyHistogram;
+import clanker.craft.trace.PipelineEvents;
+import clanker.craft.trace.Trace;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs blocking provider work (Gemini, Imagen, Lyria, TTS, ffmpeg) off the server thread.
+ * Each job gets its own virtual thread; a bounded bulkhead per provider caps how many jobs
+ * may run or wait at once, so a long music job never delays chat replies.
+ * When a bulkhead is full the job is rejected instead of running on the caller's thread.
+ */
+public final class GenerationExecutor {
+    private GenerationExecutor() {}
+
+    private static final ExecutorService VIRTUAL = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("Clanker-Gen-", 0).factory()
+    );
+
+    /**
+     * Independent capacity pools. maxConcurrent jobs run at once, up to maxQueued more may wait.
+     */
+    public enum Bulkhead {
+        LLM(4, 32),
+        IMAGEN(2, 4),
+        LYRIA(1, 2),
+        TRANSCODE(2, 4),
+        TTS(4, 16);
+
+        private final int maxConcurrent;
+        private final int capacity;
+        private final Semaphore running;
+        private final AtomicInteger admitted = new AtomicInteger();
+        private final LongAdder rejected = new LongAdder();
+        private final LatencyHistogram queueWait = new LatencyHistogram();
+
+        Bulkhead(int maxConcurrent, int maxQueued) {
+            this.maxConcurrent = maxConcurrent;
+            this.capacity = maxConcurrent + maxQueued;
+            this.running = new Semaphore(maxConcurrent, true);
+        }
+
+        public int maxConcurrent() { return maxConcurrent; }
+        public int capacity() { return capacity; }
+        public int inFlight() { return maxConcurrent - running.availablePermits(); }
+        public int queued() { return Math.max(0, admitted.get() - inFlight()); }
+        /** Jobs turned away because the bulkhead was full, since startup. */
+        public long rejected() { return rejected.sum(); }
+        /** How long admitted jobs waited for a free slot. */
+        public LatencyHistogram queueWait() { return queueWait; }
+
+        private boolean tryAdmit() {
+            while (true) {
+                int cur = admitted.get();
+                if (cur >= capacity) {
+                    rejected.increment();
+                    return false;
+                }
+                if (admitted.compareAndSet(cur, cur + 1)) return true;
+            }
+        }
+
+        private void acquire(long admittedAt, PipelineEvents.BulkheadWait wait) throws InterruptedException {
+            running.acquire();
+            queueWait.record(System.nanoTime() - admittedAt);
+            wait.end();
+            if (wait.shouldCommit()) {
+                wait.bulkhead = name();
+                wait.correlationId = Trace.current();
+                wait.commit();
+            }
+        }
+    }
+
+    /** Thrown (wrapped in the returned future) when a bulkhead has no room left. */
+    public static final class BulkheadFullException extends RejectedExecutionException {
+        private final Bulkhead bulkhead;
+
+        public BulkheadFullException(Bulkhead bulkhead) {
+            super(bulkhead.name() + " bulkhead is full (" + bulkhead.capacity() + " jobs admitted)");
+            this.bulkhead = bulkhead;
+        }
+
+        public Bulkhead bulkhead() { return bulkhead; }
+    }
+
+    /**
+     * Submits a job to the given bulkhead. Never blocks and never runs the job on the calling thread:
+     * if the bulkhead is saturated the future completes exceptionally with {@link BulkheadFullException}.
+     * The job runs as part of the calling thread's {@link Trace}.
+     */
+    public static <T> CompletableFuture<T> submit(Bulkhead bulkhead, Callable<T> job) {
+        return submit(bulkhead, Trace.current(), job);
+    }
+
+    /** Same as {@link #submit(Bulkhead, Callable)}, as part of the chat message with this trace id. */
+    public static <T> CompletableFuture<T> submit(Bulkhead bulkhead, long traceId, Callable<T> job) {
+        if (!bulkhead.tryAdmit()) {
+            return CompletableFuture.failedFuture(new BulkheadFullException(bulkhead));
+        }
+        long admittedAt = System.nanoTime();
+        PipelineEvents.BulkheadWait wait = new PipelineEvents.BulkheadWait();
+        wait.begin();
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            VIRTUAL.execute(() -> Trace.call(traceId, () -> {
+                try {
+                    bulkhead.acquire(admittedAt, wait);
+                    try {
+                        future.complete(run(bulkhead, job));
+                    } finally {
+                        bulkhead.running.release();
+                    }
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    future.completeExceptionally(ie);
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                } finally {
+                    bulkhead.admitted.decrementAndGet();
+                }
+                return null;
+            }));
+        } catch (RejectedExecutionException rex) {
+            bulkhead.admitted.decrementAndGet();
+            future.completeExceptionally(rex);
+        }
+        return future;
+    }
+
+    /**
+     * Runs a stage of an already running job on the calling thread under another bulkhead. The job
+     * keeps its own slot meanwhile, so this suits short stages; chain a second {@link #submit} when
+     * the first slot should be free for the next job. Admission works as in
+     * {@link #submit}: a full bulkhead throws {@link BulkheadFullException} instead of waiting.
+     */
+    public static <T> T call(Bulkhead bulkhead, Callable<T> stage) throws Exception {
+        if (!bulkhead.tryAdmit()) throw new BulkheadFullException(bulkhead);
+        PipelineEvents.BulkheadWait wait = new PipelineEvents.BulkheadWait();
+        wait.begin();
+        try {
+            bulkhead.acquire(System.nanoTime(), wait);
+            try {
+                return run(bulkhead, stage);
+            } finally {
+                bulkhead.running.release();
+            }
+        } finally {
+            bulkhead.admitted.decrementAndGet();
+        }
+    }
+
+    private static <T> T run(Bulkhead bulkhead, Callable<T> job) throws Exception {
+        PipelineEvents.Job event = new PipelineEvents.Job();
+        event.begin();
+        boolean failed = true;
+        try {
+            T result = job.call();
+            failed = false;
+            return result;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.bulkhead = bulkhead.name();
+                event.failed = failed;
+                event.correlationId = Trace.current();
+                event.commit();
+            }
+        }
+    }
+
+    /** True if the failure (possibly wrapped) means a bulkhead rejected the job. */
+    public static boolean isSaturated(Throwable t) {
+        return unwrap(t) instanceof BulkheadFullException;
+    }
+
+    /** Strips CompletableFuture wrapping to get at the real cause. */
+    public static Throwable unwrap(Throwable t) {
+        while (t instanceof CompletionException && t.getCause() != null) t = t.getCause();
+        return t;
+    }
+}
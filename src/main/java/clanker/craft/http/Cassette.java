@@ -0,0 +1,460 @@
+package clanker.craft.http;
+
+import clanker.craft.config.Config;
+import net.fabricmc.loader.api.FabricLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLSession;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Record/replay of provider HTTP exchanges, selected with HTTP_CASSETTE (off, record, replay) and
+ * read once at startup. Recording tees every response body (with the arrival time of each piece) into
+ * HTTP_CASSETTE_FILE; replaying answers requests from that file without touching the network, with
+ * the recorded timing or, with HTTP_CASSETTE_TIMING=fast, as fast as the caller reads. Everything
+ * above {@link TransportClient} (parsing, decoding, transcoding, playback) runs unchanged.
+ *
+ * <p>A request is matched by method, path and query (API key removed) and a hash of its body; failing
+ * that by method and path, then by method and the last path segment (model and method, e.g.
+ * "gemini-2.0-flash:streamGenerateContent"), so a cassette survives a different project id or prompt.
+ * Several recordings under one key are served in recorded order, wrapping around, so replays are
+ * deterministic. Request bodies, headers and credentials are never written.
+ *
+ * <p>The file is a series of gzip members (each recording session appends one), holding
+ * {@code MAGIC} followed by entries: {@code ENTRY}, method, target, request hash, status, HTTP version,
+ * content type, microseconds to headers, then the body as (microseconds since request start, length,
+ * bytes) pieces. Pieces arriving within {@link #MERGE_MICROS} of each other are stored as one.
+ */
+public final class Cassette {
+    private static final Logger LOGGER = LoggerFactory.getLogger("ClankerCraft-Cassette");
+    private static final String DEFAULT_FILE = "clankercraft.cassette";
+    private static final int MAGIC = 0x434C4B43; // "CLKC"
+    private static final int ENTRY = 0x454E5452; // "ENTR"
+    private static final long MERGE_MICROS = 2_000;
+
+    enum Mode { OFF, RECORD, REPLAY }
+
+    /** One recorded exchange. chunkMicros[i] is when chunks[i] had fully arrived, from the start of the request. */
+    public record Recording(String method, String target, long requestHash, int status, HttpClient.Version version,
+                            String contentType, long headersMicros, long[] chunkMicros, byte[][] chunks) {
+        /** The whole response body. */
+        public byte[] body() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (byte[] c : chunks) out.writeBytes(c);
+            return out.toByteArray();
+        }
+    }
+
+    private final Mode mode;
+    private final Path file;
+    private final boolean originalTiming;
+    private final Map<String, List<Recording>> index = new HashMap<>();
+    private final Map<String, AtomicInteger> cursors = new ConcurrentHashMap<>();
+    private DataOutputStream out; // guarded by this
+
+    private Cassette(Mode mode, Path file, boolean originalTiming) {
+        this.mode = mode;
+        this.file = file;
+        this.originalTiming = originalTiming;
+    }
+
+    /** From HTTP_CASSETTE, HTTP_CASSETTE_FILE and HTTP_CASSETTE_TIMING. Falls back to off if the file can't be used. */
+    static Cassette configure() {
+        Mode mode;
+        try {
+            mode = Mode.valueOf(Config.getOrDefault("off", "HTTP_CASSETTE").trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Unknown HTTP_CASSETTE {}; expected off, record or replay", Config.get("HTTP_CASSETTE"));
+            mode = Mode.OFF;
+        }
+        String f = Config.get("HTTP_CASSETTE_FILE");
+        Path file = (f != null) ? Path.of(f) : FabricLoader.getInstance().getGameDir().resolve(DEFAULT_FILE);
+        boolean original = !"fast".equalsIgnoreCase(Config.get("HTTP_CASSETTE_TIMING"));
+        Cassette c = new Cassette(mode, file, original);
+        try {
+            if (mode == Mode.REPLAY) c.load();
+            if (mode == Mode.RECORD) c.openForAppend();
+        } catch (IOException e) {
+            LOGGER.warn("Cassette {} unusable, provider calls go to the network: {}", file, e.toString());
+            return new Cassette(Mode.OFF, file, original);
+        }
+        return c;
+    }
+
+    boolean recording() { return mode == Mode.RECORD; }
+    boolean replaying() { return mode == Mode.REPLAY; }
+
+    /** Every exchange in a cassette file, in recorded order. */
+    public static List<Recording> read(Path file) throws IOException {
+        List<Recording> out = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file), 1 << 16)))) {
+            while (true) {
+                int tag;
+                try {
+                    tag = in.readInt();
+                } catch (EOFException end) {
+                    break;
+                }
+                if (tag == MAGIC) continue; // start of another session's member
+                if (tag != ENTRY) throw new IOException("Corrupt cassette " + file + " after " + out.size() + " entries");
+                try {
+                    out.add(readEntry(in));
+                } catch (EOFException truncated) {
+                    // The game stopped mid-write; everything before it is intact
+                    break;
+                }
+            }
+        } catch (EOFException truncated) {
+            // Unterminated gzip member (no clean shutdown while recording)
+        }
+        return out;
+    }
+
+    private static Recording readEntry(DataInputStream in) throws IOException {
+        String method = in.readUTF();
+        String target = in.readUTF();
+        long hash = in.readLong();
+        int status = in.readInt();
+        HttpClient.Version version = in.readByte() == 2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1;
+        String contentType = in.readUTF();
+        long headersMicros = in.readLong();
+        int n = in.readInt();
+        long[] micros = new long[n];
+        byte[][] chunks = new byte[n][];
+        for (int i = 0; i < n; i++) {
+            micros[i] = in.readLong();
+            chunks[i] = new byte[in.readInt()];
+            in.readFully(chunks[i]);
+        }
+        return new Recording(method, target, hash, status, version, contentType, headersMicros, micros, chunks);
+    }
+
+    private void load() throws IOException {
+        List<Recording> all = read(file);
+        for (Recording r : all) {
+            for (String key : keys(r.method, r.target, r.requestHash)) index.computeIfAbsent(key, k -> new ArrayList<>()).add(r);
+        }
+        LOGGER.info("Replaying {} recorded exchanges from {} ({} timing)", all.size(), file, originalTiming ? "original" : "fast");
+    }
+
+    private void openForAppend() throws IOException {
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(
+                Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND), 1 << 16, true), 1 << 16));
+        out.writeInt(MAGIC);
+        out.flush();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "Clanker-Cassette-Close"));
+        LOGGER.info("Recording provider exchanges to {}", file);
+    }
+
+    private synchronized void close() {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+        out = null;
+    }
+
+    // Exact, then path only, then the last path segment
+    private static List<String> keys(String method, String target, long hash) {
+        String path = target.contains("?") ? target.substring(0, target.indexOf('?')) : target;
+        return List.of(method + " " + target + " " + Long.toHexString(hash),
+                method + " " + target,
+                method + " " + path.substring(path.lastIndexOf('/') + 1));
+    }
+
+    // Path and query without the API key, so cassettes hold no secrets and survive key rotation
+    static String target(URI uri) {
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        String query = uri.getRawQuery();
+        if (query == null) return path;
+        StringBuilder kept = new StringBuilder();
+        for (String p : query.split("&")) {
+            if (p.startsWith("key=") || p.isEmpty()) continue;
+            if (!kept.isEmpty()) kept.append('&');
+            kept.append(p);
+        }
+        return kept.isEmpty() ? path : path + "?" + kept;
+    }
+
+    /** First 8 bytes of the SHA-256 of the request body, 0 without one. */
+    static long requestHash(HttpRequest request) {
+        Optional<HttpRequest.BodyPublisher> publisher = request.bodyPublisher();
+        if (publisher.isEmpty() || publisher.get().contentLength() == 0) return 0;
+        MessageDigest sha;
+        try {
+            sha = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        // The JDK's publishers can be subscribed again (that's how it retries); this one only hashes
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        publisher.get().subscribe(new Flow.Subscriber<>() {
+            @Override public void onSubscribe(Flow.Subscription s) { s.request(Long.MAX_VALUE); }
+            @Override public void onNext(ByteBuffer item) { sha.update(item); }
+            @Override public void onError(Throwable t) { done.completeExceptionally(t); }
+            @Override public void onComplete() { done.complete(null); }
+        });
+        try {
+            done.get(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            return 0;
+        }
+        byte[] d = sha.digest();
+        long h = 0;
+        for (int i = 0; i < 8; i++) h = (h << 8) | (d[i] & 0xFF);
+        return h;
+    }
+
+    // ---- recording ----
+
+    /** Wraps handler so the response is written to the cassette once its body completes. */
+    <T> HttpResponse.BodyHandler<T> record(HttpRequest request, long start, HttpResponse.BodyHandler<T> handler) {
+        if (request.method().equals("HEAD")) return handler; // warm-ups carry nothing worth replaying
+        String target = target(request.uri());
+        long hash = requestHash(request);
+        return info -> {
+            long headersMicros = (System.nanoTime() - start) / 1_000;
+            String contentType = info.headers().firstValue("Content-Type").orElse("");
+            return new Tape<>(handler.apply(info), request.method(), target, hash, info.statusCode(), info.version(),
+                    contentType, headersMicros, start);
+        };
+    }
+
+    private synchronized void append(Recording r) {
+        if (out == null) return;
+        try {
+            out.writeInt(ENTRY);
+            out.writeUTF(r.method);
+            out.writeUTF(r.target);
+            out.writeLong(r.requestHash);
+            out.writeInt(r.status);
+            out.writeByte(r.version == HttpClient.Version.HTTP_2 ? 2 : 1);
+            out.writeUTF(r.contentType);
+            out.writeLong(r.headersMicros);
+            out.writeInt(r.chunks.length);
+            for (int i = 0; i < r.chunks.length; i++) {
+                out.writeLong(r.chunkMicros[i]);
+                out.writeInt(r.chunks[i].length);
+                out.write(r.chunks[i]);
+            }
+            out.flush(); // sync-flushes the gzip stream, so a crash keeps every finished exchange
+        } catch (IOException e) {
+            LOGGER.warn("Stopped recording to {}: {}", file, e.toString());
+            close();
+        }
+    }
+
+    /** Copies the body as it streams past, merging pieces that arrive back to back. */
+    private final class Tape<T> implements HttpResponse.BodySubscriber<T> {
+        private final HttpResponse.BodySubscriber<T> downstream;
+        private final String method, target, contentType;
+        private final long hash, headersMicros, start;
+        private final int status;
+        private final HttpClient.Version version;
+        private final List<byte[]> chunks = new ArrayList<>();
+        private final List<Long> micros = new ArrayList<>();
+        private ByteArrayOutputStream pending;
+        private long pendingMicros;
+
+        Tape(HttpResponse.BodySubscriber<T> downstream, String method, String target, long hash, int status,
+             HttpClient.Version version, String contentType, long headersMicros, long start) {
+            this.downstream = downstream;
+            this.method = method;
+            this.target = target;
+            this.hash = hash;
+            this.status = status;
+            this.version = version;
+            this.contentType = contentType;
+            this.headersMicros = headersMicros;
+            this.start = start;
+        }
+
+        @Override public CompletionStage<T> getBody() { return downstream.getBody(); }
+        @Override public void onSubscribe(Flow.Subscription subscription) { downstream.onSubscribe(subscription); }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            long now = (System.nanoTime() - start) / 1_000;
+            if (pending != null && now - pendingMicros > MERGE_MICROS) flushPending();
+            if (pending == null) pending = new ByteArrayOutputStream();
+            for (ByteBuffer b : items) {
+                ByteBuffer copy = b.duplicate();
+                byte[] a = new byte[copy.remaining()];
+                copy.get(a);
+                pending.writeBytes(a);
+            }
+            pendingMicros = now;
+            downstream.onNext(items);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            downstream.onError(throwable); // an exchange that broke off isn't worth replaying
+        }
+
+        @Override
+        public void onComplete() {
+            if (pending != null) flushPending();
+            append(new Recording(method, target, hash, status, version, contentType, headersMicros,
+                    micros.stream().mapToLong(Long::longValue).toArray(), chunks.toArray(new byte[0][])));
+            downstream.onComplete();
+        }
+
+        private void flushPending() {
+            chunks.add(pending.toByteArray());
+            micros.add(pendingMicros);
+            pending = null;
+        }
+    }
+
+    // ---- replay ----
+
+    /** Answers the request from the cassette, through handler, as the network would have. */
+    <T> HttpResponse<T> replay(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Recording r = find(request);
+        if (r == null) {
+            throw new IOException("No recorded exchange for " + request.method() + " " + target(request.uri()) + " in " + file);
+        }
+        if (originalTiming) sleepUntil(start, r.headersMicros);
+        HttpHeaders headers = HttpHeaders.of(r.contentType.isEmpty() ? Map.of() : Map.of("Content-Type", List.of(r.contentType)),
+                (k, v) -> true);
+        HttpResponse.BodySubscriber<T> subscriber = handler.apply(new HttpResponse.ResponseInfo() {
+            @Override public int statusCode() { return r.status; }
+            @Override public HttpHeaders headers() { return headers; }
+            @Override public HttpClient.Version version() { return r.version; }
+        });
+        Playback playback = new Playback(r, subscriber, start);
+        subscriber.onSubscribe(playback);
+        Thread.ofVirtual().name("Clanker-Replay").start(playback);
+        T body;
+        try {
+            body = subscriber.getBody().toCompletableFuture().get();
+        } catch (ExecutionException e) {
+            throw new IOException("Replayed body failed", e.getCause());
+        }
+        return new Replayed<>(request, r, headers, body);
+    }
+
+    private Recording find(HttpRequest request) {
+        for (String key : keys(request.method(), target(request.uri()), requestHash(request))) {
+            List<Recording> candidates = index.get(key);
+            if (candidates == null) continue;
+            int i = cursors.computeIfAbsent(key, k -> new AtomicInteger()).getAndIncrement();
+            return candidates.get(Math.floorMod(i, candidates.size()));
+        }
+        return null;
+    }
+
+    private static void sleepUntil(long start, long micros) throws InterruptedException {
+        long waitNanos = start + micros * 1_000 - System.nanoTime();
+        if (waitNanos > 0) TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+
+    /** Feeds a recorded body to a subscriber, honouring its demand and (optionally) the recorded pace. */
+    private final class Playback implements Flow.Subscription, Runnable {
+        private final Recording recording;
+        private final HttpResponse.BodySubscriber<?> subscriber;
+        private final long start;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition demanded = lock.newCondition();
+        private long demand;
+        private boolean cancelled;
+
+        Playback(Recording recording, HttpResponse.BodySubscriber<?> subscriber, long start) {
+            this.recording = recording;
+            this.subscriber = subscriber;
+            this.start = start;
+        }
+
+        @Override
+        public void request(long n) {
+            lock.lock();
+            try {
+                demand = (Long.MAX_VALUE - demand < n) ? Long.MAX_VALUE : demand + n;
+                demanded.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            lock.lock();
+            try {
+                cancelled = true;
+                demanded.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int i = 0; i < recording.chunks.length; i++) {
+                    lock.lock();
+                    try {
+                        while (demand == 0 && !cancelled) demanded.await();
+                        if (cancelled) return;
+                        demand--;
+                    } finally {
+                        lock.unlock();
+                    }
+                    if (originalTiming) sleepUntil(start, recording.chunkMicros[i]);
+                    subscriber.onNext(List.of(ByteBuffer.wrap(recording.chunks[i]).asReadOnlyBuffer()));
+                }
+                subscriber.onComplete();
+            } catch (InterruptedException e) {
+                subscriber.onError(e);
+            } catch (RuntimeException e) {
+                LOGGER.debug("Replay of {} aborted: {}", recording.target, e.toString());
+            }
+        }
+    }
+
+    private record Replayed<T>(HttpRequest request, Recording recording, HttpHeaders headers, T body) implements HttpResponse<T> {
+        @Override public int statusCode() { return recording.status; }
+        @Override public Optional<HttpResponse<T>> previousResponse() { return Optional.empty(); }
+        @Override public Optional<SSLSession> sslSession() { return Optional.empty(); }
+        @Override public URI uri() { return request.uri(); }
+        @Override public HttpClient.Version version() { return recording.version; }
+    }
+}
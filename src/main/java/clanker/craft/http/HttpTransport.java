@@ -0,0 +1,196 @@
+package clanker.craft.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The one HTTP client every provider talks through: HTTP/2 preferred (one multiplexed connection
+ * per Google endpoint) and a virtual-thread executor. {@link #warmUp} opens connections ahead of the
+ * first real request and {@link #keepWarm} stops them from idling out between chat messages. The
+ * JDK's idle timeout is JVM-wide (the jdk.httpclient.keepalive.timeout properties), so it is only
+ * read here, never changed under the game's other clients. Per-origin counters estimate how often a
+ * request found a live connection; the JDK client doesn't expose its pool, so a request counts as
+ * reused when the origin saw traffic within the keep-alive window.
+ */
+public final class HttpTransport {
+    private static final Logger LOGGER = LoggerFactory.getLogger("ClankerCraft-HTTP");
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration WARM_TIMEOUT = Duration.ofSeconds(10);
+    private static final long JDK_DEFAULT_KEEPALIVE_SECONDS = 30;
+
+    static final long KEEPALIVE_SECONDS = keepAliveSeconds();
+    private static final Executor EXECUTOR = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("Clanker-HTTP-", 0).factory());
+    private static final Cassette CASSETTE = Cassette.configure();
+    private static final HttpClient CLIENT = new TransportClient(HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(CONNECT_TIMEOUT)
+            .executor(EXECUTOR)
+            .build(), CASSETTE, EXECUTOR);
+    private static final Map<String, Origin> ORIGINS = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService KEEPER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Clanker-HTTP-KeepWarm");
+        t.setDaemon(true);
+        return t;
+    });
+    private static ScheduledFuture<?> keepWarmTask;
+
+    private HttpTransport() {}
+
+    /** The shared client. Safe to hold on to. */
+    public static HttpClient client() {
+        return CLIENT;
+    }
+
+    /** True when provider calls are answered from a recorded {@link Cassette} instead of the network. */
+    public static boolean isReplaying() {
+        return CASSETTE.replaying();
+    }
+
+    // How long the JDK keeps an idle connection; HTTP/2 uses its own setting when there is one
+    private static long keepAliveSeconds() {
+        long http1 = Math.max(1, Long.getLong("jdk.httpclient.keepalive.timeout", JDK_DEFAULT_KEEPALIVE_SECONDS));
+        return Math.min(http1, Math.max(1, Long.getLong("jdk.httpclient.keepalive.timeout.h2", http1)));
+    }
+
+    /**
+     * Opens (or refreshes) a connection to each origin in the background with a cheap HEAD request.
+     * Any response, even 404, leaves a pooled TLS connection behind.
+     */
+    public static void warmUp(Collection<URI> origins) {
+        if (CASSETTE.replaying()) return; // nothing to connect to
+        for (URI origin : origins) {
+            HttpRequest req = HttpRequest.newBuilder(origin)
+                    .timeout(WARM_TIMEOUT)
+                    .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                    .build();
+            CLIENT.sendAsync(req, HttpResponse.BodyHandlers.discarding()).whenComplete((resp, err) -> {
+                if (err != null) LOGGER.debug("Warm-up of {} failed: {}", origin, err.toString());
+            });
+        }
+    }
+
+    /** Warms the origins now and again before their connections would idle out, until {@link #stopKeepWarm()}. */
+    public static synchronized void keepWarm(Collection<URI> origins) {
+        stopKeepWarm();
+        List<URI> copy = List.copyOf(origins);
+        long period = Math.max(5, KEEPALIVE_SECONDS / 2);
+        keepWarmTask = KEEPER.scheduleAtFixedRate(() -> warmIdle(copy), 0, period, TimeUnit.SECONDS);
+    }
+
+    public static synchronized void stopKeepWarm() {
+        if (keepWarmTask != null) keepWarmTask.cancel(false);
+        keepWarmTask = null;
+    }
+
+    // Only origins without real traffic need a ping; one used in the last half of the window is
+    // still open at the next check
+    private static void warmIdle(List<URI> origins) {
+        long now = System.nanoTime();
+        List<URI> idle = new ArrayList<>();
+        for (URI o : origins) {
+            Origin stats = ORIGINS.get(key(o));
+            if (stats == null || !stats.recentlyUsed(now, KEEPALIVE_SECONDS / 2 * 1_000_000_000L)) idle.add(o);
+        }
+        warmUp(idle);
+    }
+
+    /** Connection reuse per origin since startup. */
+    public record OriginStats(String origin, long requests, long reused, long http2, long failures,
+                              double meanReusedMillis, double meanColdMillis) {
+        public double reuseRatio() { return requests == 0 ? 0 : (double) reused / requests; }
+    }
+
+    public static List<OriginStats> stats() {
+        List<OriginStats> out = new ArrayList<>();
+        ORIGINS.forEach((k, o) -> out.add(o.snapshot(k)));
+        out.sort((a, b) -> a.origin().compareTo(b.origin()));
+        return out;
+    }
+
+    static String key(URI uri) {
+        int port = uri.getPort();
+        return uri.getScheme() + "://" + uri.getHost() + (port < 0 ? "" : ":" + port);
+    }
+
+    static Origin origin(URI uri) {
+        return ORIGINS.computeIfAbsent(key(uri), k -> new Origin());
+    }
+
+    /**
+     * Reuse bookkeeping for one origin. Warm-up pings keep the connection alive, so they count as
+     * activity, but they are not requests: they don't show up in the counters, and an origin that
+     * only sees pings still counts as idle for {@link #warmIdle}.
+     */
+    static final class Origin {
+        private final AtomicLong lastActivityNanos = new AtomicLong(Long.MIN_VALUE);
+        private final AtomicLong lastRequestNanos = new AtomicLong(Long.MIN_VALUE);
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder reused = new LongAdder();
+        private final LongAdder http2 = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder reusedNanos = new LongAdder();
+        private final LongAdder coldNanos = new LongAdder();
+
+        /** Marks the start of a request; true if a pooled connection was probably still open. */
+        boolean begin(long now) {
+            long last = lastActivityNanos.getAndSet(now);
+            return last != Long.MIN_VALUE && now - last < KEEPALIVE_SECONDS * 1_000_000_000L;
+        }
+
+        void end(boolean warm, long startNanos, HttpResponse<?> resp, Throwable err) {
+            long now = System.nanoTime();
+            lastActivityNanos.accumulateAndGet(now, Math::max);
+            lastRequestNanos.accumulateAndGet(now, Math::max);
+            requests.increment();
+            if (err != null) {
+                failures.increment();
+                return;
+            }
+            if (resp != null && resp.version() == HttpClient.Version.HTTP_2) http2.increment();
+            if (warm) {
+                reused.increment();
+                reusedNanos.add(now - startNanos);
+            } else {
+                coldNanos.add(now - startNanos);
+            }
+        }
+
+        /** A warm-up ping finished; a successful one leaves a live connection behind. */
+        void pinged(Throwable err) {
+            if (err == null) lastActivityNanos.accumulateAndGet(System.nanoTime(), Math::max);
+        }
+
+        boolean recentlyUsed(long now, long windowNanos) {
+            long last = lastRequestNanos.get();
+            return last != Long.MIN_VALUE && now - last < windowNanos;
+        }
+
+        OriginStats snapshot(String name) {
+            long req = requests.sum();
+            long re = reused.sum();
+            long fail = failures.sum();
+            long cold = req - re - fail;
+            return new OriginStats(name, req, re, http2.sum(), fail,
+                    re == 0 ? 0 : reusedNanos.sum() / 1e6 / re,
+                    cold <= 0 ? 0 : coldNanos.sum() / 1e6 / cold);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package clanker.craft.http;
+
+import clanker.craft.metrics.Metrics;
+import clanker.craft.trace.PipelineEvents;
+import clanker.craft.trace.Trace;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import java.io.IOException;
+import java.net.Authenticator;
+import java.net.CookieHandler;
+import java.net.ProxySelector;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The shared JDK client with per-origin bookkeeping around every exchange (see {@link HttpTransport}),
+ * per-endpoint latency for {@link Metrics} and the {@link Cassette} recorder/player. Providers keep
+ * using the plain {@link HttpClient} API.
+ */
+final class TransportClient extends HttpClient {
+    private final HttpClient delegate;
+    private final Cassette cassette;
+    private final Executor replayExecutor;
+
+    TransportClient(HttpClient delegate, Cassette cassette, Executor replayExecutor) {
+        this.delegate = delegate;
+        this.cassette = cassette;
+        this.replayExecutor = replayExecutor;
+    }
+
+    @Override
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException, InterruptedException {
+        HttpTransport.Origin origin = HttpTransport.origin(request.uri());
+        long start = System.nanoTime();
+        boolean ping = isWarmUp(request);
+        boolean warm = !ping && origin.begin(start);
+        Exchange exchange = new Exchange(request, start);
+        HttpResponse<T> resp = null;
+        Throwable err = null;
+        try {
+            resp = cassette.replaying()
+                    ? cassette.replay(request, exchange.wrap(handler))
+                    : delegate.send(request, tape(request, start, exchange.wrap(handler)));
+            return resp;
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            err = e;
+            exchange.failed();
+            throw e;
+        } finally {
+            if (ping) origin.pinged(err);
+            else origin.end(warm, start, resp, err);
+        }
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        return sendAsync(request, handler, null);
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler,
+                                                            HttpResponse.PushPromiseHandler<T> push) {
+        HttpTransport.Origin origin = HttpTransport.origin(request.uri());
+        long start = System.nanoTime();
+        boolean ping = isWarmUp(request);
+        boolean warm = !ping && origin.begin(start);
+        Exchange exchange = new Exchange(request, start);
+        CompletableFuture<HttpResponse<T>> pending;
+        if (cassette.replaying()) {
+            pending = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return cassette.replay(request, exchange.wrap(handler));
+                } catch (IOException | InterruptedException e) {
+                    throw new CompletionException(e);
+                }
+            }, replayExecutor);
+        } else {
+            pending = delegate.sendAsync(request, tape(request, start, exchange.wrap(handler)), push);
+        }
+        return pending.whenComplete((resp, err) -> {
+            if (err != null) exchange.failed();
+            if (ping) origin.pinged(err);
+            else origin.end(warm, start, resp, err);
+        });
+    }
+
+    // Providers never send HEAD; only HttpTransport.warmUp does
+    private static boolean isWarmUp(HttpRequest request) {
+        return "HEAD".equals(request.method());
+    }
+
+    private <T> HttpResponse.BodyHandler<T> tape(HttpRequest request, long start, HttpResponse.BodyHandler<T> handler) {
+        return cassette.recording() ? cassette.record(request, start, handler) : handler;
+    }
+
+    /**
+     * Latency and byte counts of one exchange for {@link Metrics} and a {@link PipelineEvents.HttpCall}. The clock stops when the body has
+     * been fully read (or fails), so streamed replies count their whole duration.
+     */
+    private static final class Exchange {
+        private final Metrics.Key key;
+        private final long start;
+        private final long sent;
+        private final AtomicBoolean recorded = new AtomicBoolean();
+        private final LongAdder received = new LongAdder();
+        private final PipelineEvents.HttpCall event = new PipelineEvents.HttpCall();
+        private final long traceId = Trace.current();
+        private volatile int status;
+
+        Exchange(HttpRequest request, long start) {
+            this.key = Metrics.keyFor(request.method(), request.uri().getHost(), request.uri().getPath());
+            this.start = start;
+            this.sent = request.bodyPublisher().map(HttpRequest.BodyPublisher::contentLength).orElse(0L);
+            event.begin();
+        }
+
+        <T> HttpResponse.BodyHandler<T> wrap(HttpResponse.BodyHandler<T> handler) {
+            return info -> {
+                status = info.statusCode();
+                return new Counting<>(handler.apply(info));
+            };
+        }
+
+        void failed() {
+            record(Metrics.Outcome.ERROR);
+        }
+
+        void done() {
+            record(Metrics.Outcome.of(status));
+        }
+
+        private void record(Metrics.Outcome outcome) {
+            if (!recorded.compareAndSet(false, true)) return;
+            long bytes = received.sum();
+            Metrics.record(key.provider(), key.model(), key.endpoint(), System.nanoTime() - start, outcome, sent, bytes);
+            event.end();
+            if (event.shouldCommit()) {
+                event.provider = key.provider();
+                event.model = key.model();
+                event.endpoint = key.endpoint();
+                event.status = status;
+                event.bytesSent = sent;
+                event.bytesReceived = bytes;
+                event.correlationId = traceId;
+                event.commit();
+            }
+        }
+
+        private final class Counting<T> implements HttpResponse.BodySubscriber<T> {
+            private final HttpResponse.BodySubscriber<T> downstream;
+
+            Counting(HttpResponse.BodySubscriber<T> downstream) {
+                this.downstream = downstream;
+            }
+
+            @Override public CompletionStage<T> getBody() { return downstream.getBody(); }
+            @Override public void onSubscribe(Flow.Subscription subscription) { downstream.onSubscribe(subscription); }
+
+            @Override
+            public void onNext(List<ByteBuffer> items) {
+                long n = 0;
+                for (ByteBuffer b : items) n += b.remaining();
+                received.add(n);
+                downstream.onNext(items);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                failed();
+                downstream.onError(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                done();
+                downstream.onComplete();
+            }
+        }
+    }
+
+    @Override public Optional<CookieHandler> cookieHandler() { return delegate.cookieHandler(); }
+    @Override public Optional<Duration> connectTimeout() { return delegate.connectTimeout(); }
+    @Override public Redirect followRedirects() { return delegate.followRedirects(); }
+    @Override public Optional<ProxySelector> proxy() { return delegate.proxy(); }
+    @Override public SSLContext sslContext() { return delegate.sslContext(); }
+    @Override public SSLParameters sslParameters() { return delegate.sslParameters(); }
+    @Override public Optional<Authenticator> authenticator() { return delegate.authenticator(); }
+    @Override public Version version() { return delegate.version(); }
+    @Override public Optional<Executor> executor() { return delegate.executor(); }
+}
@@ -3,53 +3,132 @@ package clanker.craft.i18n;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import clanker.craft.config.Config;
+import net.minecraft.server.network.ServerPlayerEntity;
 
-import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 /**
  * Manages language resources for ClankerCraft.
- * Loads language strings from JSON files and provides translations based on configured language.
+ * Every bundled language is loaded once, merged over English (so a missing key never needs a second
+ * lookup) and frozen; templates are split into literal and placeholder segments up front.
+ * Players are answered in their own client language when it is bundled, otherwise in the configured
+ * language (CLANKER_LANGUAGE), otherwise in English.
  */
 public final class LanguageManager {
     private static final Gson GSON = new Gson();
     private static final String DEFAULT_LANGUAGE = "en";
-    private static volatile String cachedLanguage;
-    private static volatile Map<String, String> cachedTranslations;
+    private static final List<String> BUNDLED = List.of("en", "de", "es", "fr", "it", "pt");
+    private static final Map<String, Translations> TABLES = loadAll();
 
     private LanguageManager() {}
 
+    /** One language's strings, English filling the gaps. Immutable and shared. */
+    public static final class Translations {
+        private final String code;
+        private final Map<String, Template> templates;
+
+        private Translations(String code, Map<String, Template> templates) {
+            this.code = code;
+            this.templates = templates;
+        }
+
+        public String code() { return code; }
+
+        public String get(String key) {
+            Template t = templates.get(key);
+            return (t == null) ? key : t.text;
+        }
+
+        public String format(String key, Object... args) {
+            Template t = templates.get(key);
+            if (t == null) return key;
+            return t.format(args);
+        }
+    }
+
+    /**
+     * A template split at its {n} placeholders: literals[i] precedes the argument args[slots[i]],
+     * and the last literal follows the last placeholder. Placeholders without a matching argument
+     * are kept verbatim.
+     */
+    private static final class Template {
+        final String text;
+        final String[] literals;
+        final int[] slots;
+
+        Template(String text) {
+            this.text = text;
+            List<String> lits = new ArrayList<>();
+            List<Integer> idx = new ArrayList<>();
+            int start = 0;
+            int i = text.indexOf('{');
+            while (i >= 0) {
+                int close = text.indexOf('}', i + 1);
+                if (close < 0) break;
+                int slot = parseIndex(text, i + 1, close);
+                if (slot >= 0) {
+                    lits.add(text.substring(start, i));
+                    idx.add(slot);
+                    start = close + 1;
+                }
+                i = text.indexOf('{', slot >= 0 ? close + 1 : i + 1);
+            }
+            lits.add(text.substring(start));
+            this.literals = lits.toArray(new String[0]);
+            this.slots = idx.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        String format(Object... args) {
+            if (slots.length == 0) return text;
+            int n = (args == null) ? 0 : args.length;
+            StringBuilder sb = new StringBuilder(text.length() + 16 * slots.length);
+            for (int i = 0; i < slots.length; i++) {
+                sb.append(literals[i]);
+                if (slots[i] < n) sb.append(args[slots[i]]);
+                else sb.append('{').append(slots[i]).append('}');
+            }
+            return sb.append(literals[slots.length]).toString();
+        }
+
+        private static int parseIndex(String s, int from, int to) {
+            if (from == to || to - from > 3) return -1;
+            int v = 0;
+            for (int i = from; i < to; i++) {
+                char c = s.charAt(i);
+                if (c < '0' || c > '9') return -1;
+                v = v * 10 + (c - '0');
+            }
+            return v;
+        }
+    }
+
     /**
-     * Get a translated string for the given key.
+     * Get a translated string for the given key in the configured language.
      * Falls back to English if the key is not found in the configured language.
      * Falls back to the key itself if not found in any language.
      */
     public static String get(String key) {
-        return get(key, key);
+        return forLanguage(getConfiguredLanguage()).get(key);
     }
 
     /**
      * Get a translated string for the given key with a custom fallback.
      */
     public static String get(String key, String fallback) {
-        String currentLang = getConfiguredLanguage();
-        Map<String, String> translations = getTranslations(currentLang);
-        
-        String value = translations.get(key);
-        if (value != null) return value;
-        
-        // Try fallback to English if not already using English
-        if (!DEFAULT_LANGUAGE.equals(currentLang)) {
-            Map<String, String> englishTranslations = getTranslations(DEFAULT_LANGUAGE);
-            value = englishTranslations.get(key);
-            if (value != null) return value;
-        }
-        
-        return fallback;
+        Template t = forLanguage(getConfiguredLanguage()).templates.get(key);
+        return (t == null) ? fallback : t.text;
+    }
+
+    /** Get a translated string in the player's language. */
+    public static String get(ServerPlayerEntity player, String key) {
+        return of(player).get(key);
     }
 
     /**
@@ -57,32 +136,55 @@ public final class LanguageManager {
      * Placeholders are in the format {0}, {1}, etc.
      */
     public static String format(String key, Object... args) {
-        String template = get(key);
-        if (args == null || args.length == 0) return template;
-        
-        String result = template;
-        for (int i = 0; i < args.length; i++) {
-            result = result.replace("{" + i + "}", String.valueOf(args[i]));
+        return forLanguage(getConfiguredLanguage()).format(key, args);
+    }
+
+    /** Same as {@link #format(String, Object...)} in the player's language. */
+    public static String format(ServerPlayerEntity player, String key, Object... args) {
+        return of(player).format(key, args);
+    }
+
+    /** The strings for the player's client language. */
+    public static Translations of(ServerPlayerEntity player) {
+        return forLocale(player.getClientOptions().language());
+    }
+
+    /**
+     * The strings for a Minecraft locale such as "de_de" or "pt_br": the exact language if bundled,
+     * else its base language, else the configured language.
+     */
+    public static Translations forLocale(String locale) {
+        if (locale != null && !locale.isBlank()) {
+            String l = locale.toLowerCase(Locale.ROOT);
+            Translations t = TABLES.get(l);
+            if (t != null) return t;
+            int sep = l.indexOf('_');
+            if (sep > 0 && (t = TABLES.get(l.substring(0, sep))) != null) return t;
         }
-        return result;
+        return forLanguage(getConfiguredLanguage());
+    }
+
+    /** The player's language code (one of the bundled ones). */
+    public static String languageOf(ServerPlayerEntity player) {
+        return of(player).code();
+    }
+
+    private static Translations forLanguage(String code) {
+        Translations t = TABLES.get(code);
+        return (t != null) ? t : TABLES.get(DEFAULT_LANGUAGE);
     }
 
     /**
      * Get the currently configured language code.
      */
     public static String getConfiguredLanguage() {
-        String lang = Config.get("CLANKER_LANGUAGE", "LANGUAGE");
-        if (lang == null || lang.isBlank()) {
-            lang = DEFAULT_LANGUAGE;
-        }
-        return lang.toLowerCase();
+        return Config.languageOrDefault(DEFAULT_LANGUAGE).toLowerCase(Locale.ROOT);
     }
 
     /**
      * Get the full language name for display purposes.
      */
-    public static String getLanguageName() {
-        String code = getConfiguredLanguage();
+    public static String getLanguageName(String code) {
         return switch (code) {
             case "en" -> "English";
             case "es" -> "Español";
@@ -90,64 +192,50 @@ public final class LanguageManager {
             case "de" -> "Deutsch";
             case "it" -> "Italiano";
             case "pt" -> "Português";
-            default -> code.toUpperCase();
+            default -> code.toUpperCase(Locale.ROOT);
         };
     }
 
     /**
      * Get the language instruction for the LLM.
      */
-    public static String getLanguageInstruction() {
-        String langName = getLanguageName();
-        String code = getConfiguredLanguage();
-        
+    public static String getLanguageInstruction(String code) {
+        String langName = getLanguageName(code);
+
         if (DEFAULT_LANGUAGE.equals(code)) {
             return "Always respond in English.";
         }
-        
+
         return "Always respond in " + langName + ". All your responses must be in " + langName + ", never in English or any other language.";
     }
 
+    private static Map<String, Translations> loadAll() {
+        Map<String, Template> english = load(DEFAULT_LANGUAGE);
+        Map<String, Translations> tables = new HashMap<>();
+        for (String code : BUNDLED) {
+            Map<String, Template> merged = new HashMap<>(english);
+            if (!code.equals(DEFAULT_LANGUAGE)) merged.putAll(load(code));
+            tables.put(code, new Translations(code, Map.copyOf(merged)));
+        }
+        return Map.copyOf(tables);
+    }
+
     /**
      * Load translations for a specific language.
      */
-    private static Map<String, String> getTranslations(String langCode) {
-        // Check cache
-        if (langCode.equals(cachedLanguage) && cachedTranslations != null) {
-            return cachedTranslations;
-        }
-        
-        Map<String, String> translations = new HashMap<>();
+    private static Map<String, Template> load(String langCode) {
+        Map<String, Template> translations = new HashMap<>();
         String resourcePath = "/assets/clankercraft/lang/" + langCode + ".json";
-        
+
         try (InputStream in = LanguageManager.class.getResourceAsStream(resourcePath)) {
             if (in != null) {
-                try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
-                    StringBuilder jsonBuilder = new StringBuilder();
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        jsonBuilder.append(line);
-                    }
-                    JsonObject json = GSON.fromJson(jsonBuilder.toString(), JsonObject.class);
-                    json.entrySet().forEach(entry -> translations.put(entry.getKey(), entry.getValue().getAsString()));
-                }
+                JsonObject json = GSON.fromJson(new InputStreamReader(in, StandardCharsets.UTF_8), JsonObject.class);
+                // Interned keys: every table shares one String per key
+                json.entrySet().forEach(entry -> translations.put(entry.getKey().intern(), new Template(entry.getValue().getAsString())));
             }
         } catch (Exception e) {
             // Silent failure - will use fallback
         }
-        
-        // Cache the result
-        cachedLanguage = langCode;
-        cachedTranslations = translations;
-        
         return translations;
     }
-
-    /**
-     * Clear the cache. Useful when language settings change.
-     */
-    public static void clearCache() {
-        cachedLanguage = null;
-        cachedTranslations = null;
-    }
 }
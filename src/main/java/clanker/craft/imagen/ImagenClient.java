@@ -1,13 +1,14 @@
 package clanker.craft.imagen;
 
-import com.google.auth.oauth2.AccessToken;
-import com.google.auth.oauth2.GoogleCredentials;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import net.fabricmc.loader.api.FabricLoader;
 import clanker.craft.config.Config;
+import clanker.craft.http.HttpTransport;
+import clanker.craft.vertex.GoogleTokenProvider;
+import clanker.craft.vertex.StreamingBase64Extractor;
+import clanker.craft.vertex.VertexEndpointDiscovery;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,7 +18,6 @@ import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
@@ -27,9 +27,9 @@ import java.nio.file.Path;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Base64;
-import java.util.Collections;
-import java.util.Properties;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Client to call Vertex AI Imagen text-to-image and save the resulting image locally.
@@ -37,15 +37,19 @@ import java.util.Properties;
 public final class ImagenClient {
     private static final Gson GSON = new Gson();
     private static final Duration TIMEOUT = Duration.ofSeconds(90);
+    private static final Duration DISCOVERY_TTL = Duration.ofHours(6);
+    // predictions[0].bytesBase64Encoded, generatedImages[0].bytesBase64Encoded, images[0](.base64Data)
+    static final Set<String> IMAGE_KEYS = Set.of("bytesBase64Encoded", "base64Data", "images");
     private static final DateTimeFormatter TS = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
     private static final Logger LOGGER = LoggerFactory.getLogger("ClankerCraft-Imagen");
 
-    private final HttpClient http = HttpClient.newHttpClient();
+    private final HttpClient http = HttpTransport.client();
     private final String projectId;
     private final String location;
     private final String model;
 
-    private final GoogleCredentials credentials;
+    private final GoogleTokenProvider tokens = GoogleTokenProvider.shared();
+    private final VertexEndpointDiscovery discovery;
 
     public ImagenClient() {
         this.projectId = Config.gcpProjectId();
@@ -53,13 +57,13 @@ public final class ImagenClient {
         this.location = (loc == null || loc.isBlank()) ? "us-central1" : loc.trim();
         String m = Config.imagenModelOrDefault("imagegeneration");
         this.model = (m == null || m.isBlank()) ? "imagegeneration" : m.trim();
-        this.credentials = loadCredentials();
+        this.discovery = new VertexEndpointDiscovery("Imagen", http, location, projectId, candidates(model), DISCOVERY_TTL);
         // Ensure output dir exists early to fail fast on permissions
         try { Files.createDirectories(getOutputDir()); } catch (IOException ignored) {}
     }
 
     public boolean isEnabled() {
-        return credentials != null && projectId != null && !projectId.isBlank();
+        return tokens.isAvailable() && projectId != null && !projectId.isBlank();
     }
 
     public String getProjectId() { return projectId; }
@@ -73,231 +77,96 @@ public final class ImagenClient {
         if (!isEnabled()) throw new IllegalStateException("Imagen is not configured");
         if (prompt == null || prompt.isBlank()) throw new IllegalArgumentException("Prompt is empty");
 
-        String token = getAccessToken();
+        String token = tokens.token();
         if (token == null || token.isBlank()) throw new IllegalStateException("Failed to obtain Google access token");
 
-        // Build possible model identifiers (try raw, then versioned) and endpoints (:predict first, then :generate)
-        String baseModel = model;
-        String[] modelVariants;
-        if (baseModel.contains("@")) {
-            modelVariants = new String[]{baseModel};
-        } else {
-            modelVariants = new String[]{baseModel, baseModel + "@002", baseModel + "@001"}; // common Imagen revision suffixes
-        }
-        String[] endpoints = new String[]{":predict", ":generate"};
-
-        byte[] imageBytes = null;
-        int lastStatus = -1; String lastBody = null; boolean any2xx = false; String usedModel = null; String usedEndpoint = null;
-        for (String mv : modelVariants) {
-            for (String ep : endpoints) {
-                URI uri = URI.create("https://" + location + "-aiplatform.googleapis.com/v1/projects/" + projectId + "/locations/" + location + "/publishers/google/models/" + mv + ep);
-                JsonObject body = new JsonObject();
-                JsonArray instances = new JsonArray();
-                JsonObject instance = new JsonObject();
-                instance.addProperty("prompt", prompt);
-                instances.add(instance);
-                body.add("instances", instances);
-                JsonObject params = new JsonObject();
-                params.addProperty("sampleCount", 1);
-                body.add("parameters", params);
-                HttpRequest req = HttpRequest.newBuilder(uri)
-                        .timeout(TIMEOUT)
-                        .header("Authorization", "Bearer " + token)
-                        .header("Content-Type", "application/json; charset=UTF-8")
-                        .POST(HttpRequest.BodyPublishers.ofString(GSON.toJson(body), StandardCharsets.UTF_8))
-                        .build();
-                HttpResponse<String> resp;
-                try {
-                    resp = http.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
-                } catch (Exception e) {
-                    lastBody = e.getMessage();
-                    continue; // try next
-                }
-                lastStatus = resp.statusCode();
-                lastBody = resp.body();
-                if (resp.statusCode() / 100 == 2) {
-                    any2xx = true;
-                    imageBytes = extractImageBytes(resp.body());
-                    usedModel = mv; usedEndpoint = ep;
-                    if (imageBytes != null && imageBytes.length > 0) {
-                        break; // success
-                    }
-                } else if (resp.statusCode() == 404) {
-                    // try next variant
-                    continue;
-                } else {
-                    // Non-404 error; still allow trying next variant but record
-                    continue;
-                }
-            }
-            if (imageBytes != null && imageBytes.length > 0) break;
-        }
-
-        // If still not found and lastStatus was 404, attempt well-known Imagen model identifiers as fallback
-        if ((imageBytes == null || imageBytes.length > 0) && lastStatus == 404) {
-            String[] fallbackModels = new String[]{
-                    "imagen-3.0-generate-001",
-                    "imagen-3.0-fast-generate-001",
-                    "imagen-2.0-generate-001",
-                    "imagen-2.0-fast-generate-001",
-                    "imagegeneration@002",
-                    "imagegeneration@001"
-            };
-            for (String fm : fallbackModels) {
-                for (String ep : endpoints) {
-                    URI uri = URI.create("https://" + location + "-aiplatform.googleapis.com/v1/projects/" + projectId + "/locations/" + location + "/publishers/google/models/" + fm + ep);
-                    JsonObject body = new JsonObject();
-                    JsonArray instances = new JsonArray();
-                    JsonObject instance = new JsonObject();
-                    instance.addProperty("prompt", prompt);
-                    instances.add(instance);
-                    body.add("instances", instances);
-                    JsonObject params = new JsonObject();
-                    params.addProperty("sampleCount", 1);
-                    body.add("parameters", params);
-                    HttpRequest req = HttpRequest.newBuilder(uri)
-                            .timeout(TIMEOUT)
-                            .header("Authorization", "Bearer " + token)
-                            .header("Content-Type", "application/json; charset=UTF-8")
-                            .POST(HttpRequest.BodyPublishers.ofString(GSON.toJson(body), StandardCharsets.UTF_8))
-                            .build();
-                    HttpResponse<String> resp;
-                    try { resp = http.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8)); }
-                    catch (Exception e) { lastBody = e.getMessage(); continue; }
-                    lastStatus = resp.statusCode();
-                    lastBody = resp.body();
-                    if (resp.statusCode() / 100 == 2) {
-                        any2xx = true;
-                        imageBytes = extractImageBytes(resp.body());
-                        usedModel = fm; usedEndpoint = ep;
-                        if (imageBytes != null && imageBytes.length > 0) break;
-                    } else if (resp.statusCode() == 404) {
-                        continue;
-                    }
-                }
-                if (imageBytes != null && imageBytes.length > 0) break;
-            }
-        }
-
-        if (imageBytes == null || imageBytes.length == 0) {
-            if (any2xx) {
-                throw new RuntimeException("Imagen response OK but contained no image data (last modelAttempt=" + usedModel + usedEndpoint + ")");
+        // One request against the discovered model/method; rediscover once if it has gone away
+        VertexEndpointDiscovery.Target target = discovery.resolve(token);
+        HttpResponse<InputStream> resp = send(target, prompt, token);
+        if (resp.statusCode() == 404) {
+            discovery.invalidate(target);
+            VertexEndpointDiscovery.Target retry = discovery.resolve(token);
+            if (!retry.equals(target)) {
+                resp.body().close();
+                target = retry;
+                resp = send(target, prompt, token);
             }
-            throw new RuntimeException("Imagen request failed (lastStatus=" + lastStatus + "): " + (lastBody == null ? "(no body)" : truncate(lastBody, 500)));
         }
 
         Path outDir = getOutputDir();
         String safe = slug(prompt);
         String filename = "painting-" + TS.format(LocalDateTime.now()) + (safe.isEmpty() ? "" : ("-" + safe)) + ".png";
         Path file = outDir.resolve(filename);
-        Files.write(file, imageBytes);
+        long size;
+        try (InputStream body = resp.body()) {
+            if (resp.statusCode() / 100 != 2) {
+                String detail = discovery.lastFailure() == null ? "" : " (discovery: " + discovery.lastFailure() + ")";
+                throw new RuntimeException("Imagen request failed (status=" + resp.statusCode() + ", model=" + target + ")" + detail + ": " + StreamingBase64Extractor.readLimited(body, 500));
+            }
+            // Decode the image straight from the response stream into the file
+            size = StreamingBase64Extractor.extractToFile(body, IMAGE_KEYS, file);
+        }
+        if (size <= 0) {
+            throw new RuntimeException("Imagen response OK but contained no image data (last modelAttempt=" + target + ")");
+        }
         try {
-            LOGGER.info("Imagen generated (model={}, endpoint={}, bytes={}, prompt='{}', file={})", usedModel, usedEndpoint, imageBytes.length, truncate(prompt, 120), file.toAbsolutePath());
+            LOGGER.info("Imagen generated (model={}, endpoint={}, bytes={}, prompt='{}', file={})", target.model(), target.method(), size, truncate(prompt, 120), file.toAbsolutePath());
         } catch (Throwable ignored) {}
         return file;
     }
 
-    private static String readFromConfig(String key) {
-        // Deprecated: use Config helper
-
-        try {
-            Path configDir = FabricLoader.getInstance().getConfigDir();
-            Path file = configDir.resolve("clankercraft-llm.properties");
-            if (!Files.exists(file)) return null;
-            Properties props = new Properties();
-            try (InputStream in = Files.newInputStream(file)) {
-                props.load(in);
-            }
-            String v = props.getProperty(key);
-            return (v == null || v.isBlank()) ? null : v.trim();
-        } catch (Throwable ignored) {
-            return null;
-        }
+    private HttpResponse<InputStream> send(VertexEndpointDiscovery.Target target, String prompt, String token) throws Exception {
+        JsonObject body = new JsonObject();
+        JsonArray instances = new JsonArray();
+        JsonObject instance = new JsonObject();
+        instance.addProperty("prompt", prompt);
+        instances.add(instance);
+        body.add("instances", instances);
+        JsonObject params = new JsonObject();
+        params.addProperty("sampleCount", 1);
+        body.add("parameters", params);
+        HttpRequest req = HttpRequest.newBuilder(target.uri(location, projectId))
+                .timeout(TIMEOUT)
+                .header("Authorization", "Bearer " + token)
+                .header("Content-Type", "application/json; charset=UTF-8")
+                .POST(HttpRequest.BodyPublishers.ofString(GSON.toJson(body), StandardCharsets.UTF_8))
+                .build();
+        return http.send(req, HttpResponse.BodyHandlers.ofInputStream());
     }
 
-    private GoogleCredentials loadCredentials() {
-        try {
-            String path = Config.googleCredentialsPath();
-            GoogleCredentials creds;
-            if (path != null && !path.isBlank()) {
-                try (InputStream in = Files.newInputStream(Path.of(path))) {
-                    creds = GoogleCredentials.fromStream(in);
-                }
-            } else {
-                creds = GoogleCredentials.getApplicationDefault();
+    /**
+     * Runs model/method discovery in the background so the first painting doesn't pay for it.
+     */
+    public void warmUp() {
+        if (!isEnabled()) return;
+        Thread.ofVirtual().name("Clanker-Imagen-Discovery").start(() -> {
+            try {
+                String token = tokens.token();
+                if (token != null && !token.isBlank()) discovery.resolve(token);
+            } catch (Exception e) {
+                LOGGER.warn("Imagen discovery failed: {}", e.getMessage());
             }
-            if (creds == null) return null;
-            return creds.createScoped(Collections.singletonList("https://www.googleapis.com/auth/cloud-platform"));
-        } catch (Exception e) {
-            return null;
-        }
+        });
     }
 
-    private String getAccessToken() throws IOException {
-        if (credentials == null) return null;
-        synchronized (credentials) {
-            AccessToken t = credentials.getAccessToken();
-            if (t == null || t.getTokenValue() == null || t.getExpirationTime() == null || t.getExpirationTime().getTime() - System.currentTimeMillis() < 60_000) {
-                credentials.refreshIfExpired();
-                t = credentials.getAccessToken();
-                if (t == null || t.getTokenValue() == null) {
-                    // some environments require explicit refresh
-                    t = credentials.refreshAccessToken();
-                }
-            }
-            return (t == null) ? null : t.getTokenValue();
+    private static List<VertexEndpointDiscovery.Target> candidates(String baseModel) {
+        // Build possible model identifiers (try raw, then versioned) and endpoints (:predict first, then :generate)
+        List<String> models = new ArrayList<>();
+        models.add(baseModel);
+        if (!baseModel.contains("@")) {
+            models.add(baseModel + "@002"); // common Imagen revision suffixes
+            models.add(baseModel + "@001");
         }
-    }
-
-    private static byte[] extractImageBytes(String body) {
-        try {
-            JsonObject json = GSON.fromJson(body, JsonObject.class);
-            // Try predictions[0].bytesBase64Encoded
-            if (json.has("predictions")) {
-                JsonArray preds = json.getAsJsonArray("predictions");
-                if (preds.size() > 0) {
-                    JsonObject p0 = preds.get(0).getAsJsonObject();
-                    if (p0.has("bytesBase64Encoded")) {
-                        String b64 = p0.get("bytesBase64Encoded").getAsString();
-                        return Base64.getDecoder().decode(b64);
-                    }
-                    // Try generatedImages[0].bytesBase64Encoded
-                    if (p0.has("generatedImages")) {
-                        JsonArray arr = p0.getAsJsonArray("generatedImages");
-                        if (arr.size() > 0) {
-                            JsonObject g0 = arr.get(0).getAsJsonObject();
-                            if (g0.has("bytesBase64Encoded")) {
-                                String b64 = g0.get("bytesBase64Encoded").getAsString();
-                                return Base64.getDecoder().decode(b64);
-                            }
-                        }
-                    }
-                    // Some responses embed images in "images" array with base64 data
-                    if (p0.has("images") && p0.get("images").isJsonArray()) {
-                        JsonArray imgs = p0.getAsJsonArray("images");
-                        if (imgs.size() > 0) {
-                            JsonElement first = imgs.get(0);
-                            if (first.isJsonObject()) {
-                                JsonObject im0 = first.getAsJsonObject();
-                                if (im0.has("bytesBase64Encoded")) {
-                                    String b64 = im0.get("bytesBase64Encoded").getAsString();
-                                    return Base64.getDecoder().decode(b64);
-                                }
-                                if (im0.has("base64Data")) {
-                                    String b64 = im0.get("base64Data").getAsString();
-                                    return Base64.getDecoder().decode(b64);
-                                }
-                            } else if (first.isJsonPrimitive()) {
-                                // If image is returned directly as a base64 string
-                                String b64 = first.getAsString();
-                                return Base64.getDecoder().decode(b64);
-                            }
-                        }
-                    }
-                }
-            }
-        } catch (Exception ignored) {}
-        return null;
+        // Well-known Imagen model identifiers as fallback
+        models.addAll(List.of(
+                "imagen-3.0-generate-001",
+                "imagen-3.0-fast-generate-001",
+                "imagen-2.0-generate-001",
+                "imagen-2.0-fast-generate-001",
+                "imagegeneration@002",
+                "imagegeneration@001"
+        ));
+        return VertexEndpointDiscovery.combine(models, List.of(":predict", ":generate"));
     }
 
     private static Path getOutputDir() {
@@ -371,7 +240,7 @@ public final class ImagenClient {
     }
 
 
-    private static BufferedImage resizeImage(BufferedImage originalImage, int targetWidth, int targetHeight) {
+    static BufferedImage resizeImage(BufferedImage originalImage, int targetWidth, int targetHeight) {
         BufferedImage resizedImage = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_ARGB);
         Graphics2D g = resizedImage.createGraphics();
         g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
@@ -4,34 +4,60 @@ import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import net.fabricmc.loader.api.FabricLoader;
 import clanker.craft.config.Config;
+import clanker.craft.http.HttpTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * LLM client using Google AI Studio (Gemini) client.
  */
 public class LLMClient {
     private static final Gson GSON = new Gson();
+    private static final URI GOOGLE_ORIGIN = URI.create("https://generativelanguage.googleapis.com/");
     private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration PROBE_INITIAL_DELAY = Duration.ofMinutes(1);
+    private static final Duration PROBE_MAX_DELAY = Duration.ofMinutes(30);
+    private static final Logger LOGGER = LoggerFactory.getLogger("ClankerCraft-LLM");
+    private static final ScheduledExecutorService PROBER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Clanker-LLM-Probe");
+        t.setDaemon(true);
+        return t;
+    });
 
     private final HttpClient http;
     private final String apiKey;
     private final String model;
 
+    // Model routing: memoized winner of the fallback chain plus background re-probe state
+    private volatile String activeModel;
+    private ScheduledFuture<?> probeTask;
+    private Instant lastProbeAt;
+    private Instant nextProbeAt;
+    private int lastProbeStatus;
+    private int probeFailures;
+    private volatile boolean closed; // set once by close(); an in-flight probe must not reschedule
+
     public LLMClient() {
-        this.http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+        this.http = HttpTransport.client();
         this.apiKey = resolveApiKey();
         String m = resolveModel();
         if (m == null || m.isBlank()) {
@@ -39,10 +65,24 @@ public class LLMClient {
             m = "gemini-2.5-flash-latest";
         }
         this.model = m;
+        this.activeModel = m;
     }
 
     public boolean isEnabled() { return apiKey != null && !apiKey.isBlank(); }
+
+    /** Where every Gemini request goes (Google, or PROVIDER_BASE_URL); warmed up at server start. */
+    public static URI origin() { return Config.providerOrigin(GOOGLE_ORIGIN); }
     public String getModel() { return model; }
+    public String getActiveModel() { return activeModel; }
+
+    // pathAndQuery ends in "key="; the real key only ever goes to Google. One read of the override
+    // decides both, so a reload between them can't send the key to the stand-in.
+    private URI endpoint(String pathAndQuery) {
+        URI override = Config.providerBaseUrl();
+        return (override == null)
+                ? GOOGLE_ORIGIN.resolve(pathAndQuery + apiKey)
+                : override.resolve(pathAndQuery + Config.STAND_IN_CREDENTIAL);
+    }
 
     private static String resolveApiKey() {
         return Config.geminiApiKey();
@@ -52,16 +92,80 @@ public class LLMClient {
         return Config.geminiModelOrDefault(null);
     }
 
-    // Deprecated: use Config helper
-    private static String readFromConfig(String key) {
-        return clanker.craft.config.Config.get(key);
-    }
-
     /**
      * Generates a model reply given a conversation history and the latest user message.
      * History format: alternating roles in a simple string pair list: ["user: ...", "model: ...", ...]
      */
     public String generate(List<String> history, String userInput) throws Exception {
+        return generate(buildBody(history, userInput));
+    }
+
+    /**
+     * Streams a reply through the SSE :streamGenerateContent endpoint, handing each completed
+     * sentence to onSentence as soon as it arrives. Returns the full reply text once the stream ends.
+     * Falls back to the non-streaming path (with its model fallbacks) if the model isn't found.
+     */
+    public String generateStream(List<String> history, String userInput, Consumer<String> onSentence) throws Exception {
+        JsonObject body = buildBody(history, userInput);
+        URI uri = endpoint("v1/models/" + activeModel + ":streamGenerateContent?alt=sse&key=");
+        HttpRequest req = HttpRequest.newBuilder(uri)
+                .timeout(TIMEOUT)
+                .header("Content-Type", "application/json; charset=UTF-8")
+                .header("Accept", "text/event-stream")
+                .POST(HttpRequest.BodyPublishers.ofString(GSON.toJson(body), StandardCharsets.UTF_8))
+                .build();
+        HttpResponse<Stream<String>> resp = http.send(req, HttpResponse.BodyHandlers.ofLines());
+
+        if (resp.statusCode() / 100 != 2) {
+            String err;
+            try (Stream<String> lines = resp.body()) { err = lines.collect(Collectors.joining("\n")); }
+            if (resp.statusCode() == 404) {
+                // Let the blocking path walk its model fallbacks, then deliver the reply sentence by sentence
+                String text = generate(body);
+                for (String sentence : SentenceSplitter.split(text)) onSentence.accept(sentence);
+                return text;
+            }
+            throw new RuntimeException("Gemini HTTP " + resp.statusCode() + ": " + err);
+        }
+
+        StringBuilder full = new StringBuilder();
+        SentenceSplitter splitter = new SentenceSplitter();
+        try (Stream<String> lines = resp.body()) {
+            Iterator<String> it = lines.iterator();
+            while (it.hasNext()) {
+                String line = it.next();
+                // SSE frames look like "data: {...}"; blank lines separate events
+                if (!line.startsWith("data:")) continue;
+                String data = line.substring(5).trim();
+                if (data.isEmpty() || data.equals("[DONE]")) continue;
+                String delta = parseDelta(data);
+                if (delta.isEmpty()) continue;
+                full.append(delta);
+                for (String sentence : splitter.offer(delta)) onSentence.accept(sentence);
+            }
+        }
+        String rest = splitter.flush();
+        if (!rest.isEmpty()) onSentence.accept(rest);
+        return full.length() == 0 ? "..." : full.toString();
+    }
+
+    /**
+     * Condenses older conversation turns (plus any previous summary) into a short summary that
+     * replaces them in later prompts.
+     */
+    public String summarize(String previousSummary, List<String> turns) throws Exception {
+        StringBuilder prompt = new StringBuilder(
+                "Summarize the following conversation between a player and Clanker in at most 5 short sentences. " +
+                "Keep names, facts, requests and promises that matter for continuing the conversation. " +
+                "Reply with the summary only, in the same language as the conversation.\n\n");
+        if (previousSummary != null && !previousSummary.isBlank()) {
+            prompt.append("Earlier summary: ").append(previousSummary).append("\n\n");
+        }
+        for (String turn : turns) prompt.append(turn).append('\n');
+        return generate(List.of(), prompt.toString());
+    }
+
+    static JsonObject buildBody(List<String> history, String userInput) {
         JsonObject body = new JsonObject();
         JsonArray contents = new JsonArray();
         for (String turn : history) {
@@ -72,28 +176,26 @@ public class LLMClient {
         }
         contents.add(content("user", userInput));
         body.add("contents", contents);
+        return body;
+    }
 
-        // Try configured/default model first (v1 endpoint)
-        Response r = call(body, model);
+    private String generate(JsonObject body) throws Exception {
+        // Go straight to whichever model last worked (the configured one unless it 404'd before)
+        String active = activeModel;
+        Response r = call(body, active);
         if (r.ok)
             return r.text;
 
-        // On 404 NOT_FOUND, try common fallbacks automatically
+        // On 404 NOT_FOUND, walk the fallbacks once and remember the winner for every later message
         if (r.statusCode == 404) {
-            // 1) If user supplied without -latest, try adding -latest
-            if (!model.endsWith("-latest")) {
-                Response r2 = call(body, model + "-latest");
-                if (r2.ok) return r2.text;
+            for (String candidate : fallbackChain()) {
+                if (candidate.equals(active)) continue;
+                Response rf = call(body, candidate);
+                if (rf.ok) {
+                    switchTo(candidate);
+                    return rf.text;
+                }
             }
-            // 2) Try a modern flash model
-            Response r3 = call(body, "gemini-2.5-flash-latest");
-            if (r3.ok) return r3.text;
-            // 3) Try gemini-2.0-flash
-            Response r4 = call(body, "gemini-2.0-flash");
-            if (r4.ok) return r4.text;
-            // 4) Try legacy
-            Response r5 = call(body, "gemini-1.5-flash-latest");
-            if (r5.ok) return r5.text;
             throw new RuntimeException("Gemini model not found. Tried variants including -latest and common flash models. Last error: " + r.body);
         }
 
@@ -101,8 +203,92 @@ public class LLMClient {
         throw new RuntimeException("Gemini HTTP " + r.statusCode + ": " + r.body);
     }
 
+    // Preferred model first, then the fallbacks in the order we'd like them
+    private List<String> fallbackChain() {
+        List<String> chain = new ArrayList<>();
+        chain.add(model);
+        // 1) If user supplied without -latest, try adding -latest
+        if (!model.endsWith("-latest")) chain.add(model + "-latest");
+        // 2) Try a modern flash model, 3) gemini-2.0-flash, 4) legacy
+        for (String fb : new String[]{"gemini-2.5-flash-latest", "gemini-2.0-flash", "gemini-1.5-flash-latest"}) {
+            if (!chain.contains(fb)) chain.add(fb);
+        }
+        return chain;
+    }
+
+    private synchronized void switchTo(String candidate) {
+        if (candidate.equals(activeModel)) return;
+        activeModel = candidate;
+        if (candidate.equals(model)) {
+            // Preferred model is back; no need to keep probing
+            probeFailures = 0;
+            nextProbeAt = null;
+            if (probeTask != null) probeTask.cancel(false);
+            probeTask = null;
+            LOGGER.info("Gemini model {} is available again", model);
+        } else {
+            LOGGER.warn("Gemini model {} not found; routing to {} and re-probing in the background", model, candidate);
+            scheduleProbe(PROBE_INITIAL_DELAY);
+        }
+    }
+
+    private synchronized void scheduleProbe(Duration delay) {
+        if (closed) return;
+        if (probeTask != null && !probeTask.isDone()) probeTask.cancel(false);
+        nextProbeAt = Instant.now().plus(delay);
+        probeTask = PROBER.schedule(this::probePreferred, delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // Cheap metadata lookup (models.get) rather than a generation request
+    private void probePreferred() {
+        if (closed) return;
+        int status;
+        try {
+            URI uri = endpoint("v1/models/" + model + "?key=");
+            HttpRequest req = HttpRequest.newBuilder(uri).timeout(TIMEOUT).GET().build();
+            status = http.send(req, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (Exception e) {
+            status = -1;
+        }
+        synchronized (this) {
+            if (closed) return;
+            lastProbeAt = Instant.now();
+            lastProbeStatus = status;
+            if (status / 100 == 2) {
+                switchTo(model);
+                return;
+            }
+            if (activeModel.equals(model)) return; // something else already restored it
+            probeFailures++;
+            // Exponential backoff, capped
+            long factor = 1L << Math.min(probeFailures, 10);
+            Duration next = PROBE_INITIAL_DELAY.multipliedBy(factor);
+            scheduleProbe(next.compareTo(PROBE_MAX_DELAY) > 0 ? PROBE_MAX_DELAY : next);
+        }
+    }
+
+    /** Stops background probing; called when a config reload replaces this client. */
+    public synchronized void close() {
+        closed = true;
+        if (probeTask != null) probeTask.cancel(false);
+        probeTask = null;
+        nextProbeAt = null;
+    }
+
+    /**
+     * Diagnostics snapshot of model routing: which model is configured, which one is actually used,
+     * and how the background probe for the configured model is doing.
+     */
+    public synchronized ProbeStatus probeStatus() {
+        return new ProbeStatus(model, activeModel, lastProbeAt, lastProbeStatus, probeFailures, nextProbeAt);
+    }
+
+    /** lastProbeStatus is the HTTP status of the last probe, -1 on transport error, 0 if never probed. */
+    public record ProbeStatus(String preferredModel, String activeModel, Instant lastProbeAt,
+                              int lastProbeStatus, int consecutiveFailures, Instant nextProbeAt) {}
+
     private Response call(JsonObject body, String modelToUse) throws Exception {
-        URI uri = URI.create("https://generativelanguage.googleapis.com/v1/models/" + modelToUse + ":generateContent?key=" + apiKey);
+        URI uri = endpoint("v1/models/" + modelToUse + ":generateContent?key=");
         HttpRequest req = HttpRequest.newBuilder(uri)
                 .timeout(TIMEOUT)
                 .header("Content-Type", "application/json; charset=UTF-8")
@@ -117,7 +303,7 @@ public class LLMClient {
     }
 
 
-    private static String parseText(String body) {
+    static String parseText(String body) {
         JsonObject json = GSON.fromJson(body, JsonObject.class);
         JsonArray candidates = json.has("candidates") && json.get("candidates").isJsonArray() ? json.getAsJsonArray("candidates") : null;
         if (candidates == null || candidates.size() == 0) return "...";
@@ -132,6 +318,26 @@ public class LLMClient {
         return partObj.has("text") ? partObj.get("text").getAsString() : "...";
     }
 
+    // Text of one streamed chunk; unlike parseText, an empty chunk yields "" rather than "..."
+    static String parseDelta(String chunk) {
+        try {
+            JsonObject json = GSON.fromJson(chunk, JsonObject.class);
+            JsonArray candidates = json.has("candidates") && json.get("candidates").isJsonArray() ? json.getAsJsonArray("candidates") : null;
+            if (candidates == null || candidates.size() == 0) return "";
+            JsonObject content = candidates.get(0).getAsJsonObject().getAsJsonObject("content");
+            if (content == null || !content.has("parts")) return "";
+            StringBuilder sb = new StringBuilder();
+            for (JsonElement part : content.getAsJsonArray("parts")) {
+                if (part.isJsonObject() && part.getAsJsonObject().has("text")) {
+                    sb.append(part.getAsJsonObject().get("text").getAsString());
+                }
+            }
+            return sb.toString();
+        } catch (RuntimeException e) {
+            return "";
+        }
+    }
+
     private static JsonObject content(String role, String text) {
         JsonObject c = new JsonObject();
         c.addProperty("role", role.equalsIgnoreCase("model") ? "model" : "user");
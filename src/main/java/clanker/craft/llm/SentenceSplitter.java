@@ -0,0 +1,84 @@
+package clanker.craft.llm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incrementally cuts streamed model text into sentence-sized pieces.
+ * A sentence ends at '.', '!', '?' or '…' (plus any closing quotes/brackets) followed by whitespace,
+ * or at a line break. Very short sentences are merged with the next one so chat and TTS
+ * don't get flooded with fragments like "Oh!".
+ */
+public final class SentenceSplitter {
+    private static final int MIN_CHARS = 16;
+
+    private final StringBuilder pending = new StringBuilder();
+    private int scanFrom = 0;
+
+    /**
+     * Adds a streamed delta and returns every sentence it completed (possibly none).
+     */
+    public List<String> offer(String delta) {
+        List<String> out = new ArrayList<>(2);
+        if (delta == null || delta.isEmpty()) return out;
+        pending.append(delta);
+
+        int start = 0;
+        int i = Math.max(scanFrom, 0);
+        for (; i < pending.length(); i++) {
+            char c = pending.charAt(i);
+            int end;
+            if (c == '\n') {
+                end = i;
+            } else if (isTerminator(c)) {
+                int j = i + 1;
+                while (j < pending.length() && isCloser(pending.charAt(j))) j++;
+                if (j >= pending.length()) break; // need the next char to decide
+                if (!Character.isWhitespace(pending.charAt(j))) continue; // e.g. "3.5" or "a.b"
+                end = j;
+                i = j;
+            } else {
+                continue;
+            }
+            String sentence = pending.substring(start, end).trim();
+            if (sentence.length() >= MIN_CHARS) {
+                out.add(sentence);
+                start = i + 1;
+            } else if (sentence.isEmpty()) {
+                start = i + 1;
+            }
+        }
+        pending.delete(0, start);
+        scanFrom = Math.max(0, i - start);
+        return out;
+    }
+
+    /**
+     * Returns whatever text is left once the stream has ended (may be empty).
+     */
+    public String flush() {
+        String rest = pending.toString().trim();
+        pending.setLength(0);
+        scanFrom = 0;
+        return rest;
+    }
+
+    /**
+     * Splits a complete text in one go.
+     */
+    public static List<String> split(String text) {
+        SentenceSplitter s = new SentenceSplitter();
+        List<String> out = s.offer(text);
+        String rest = s.flush();
+        if (!rest.isEmpty()) out.add(rest);
+        return out;
+    }
+
+    private static boolean isTerminator(char c) {
+        return c == '.' || c == '!' || c == '?' || c == '…';
+    }
+
+    private static boolean isCloser(char c) {
+        return c == '"' || c == '\'' || c == ')' || c == ']' || c == '»' || c == '”' || c == '’' || isTerminator(c);
+    }
+}
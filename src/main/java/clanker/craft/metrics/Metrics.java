@@ -0,0 +1,115 @@
+package clanker.craft.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency and outcome of every provider call, keyed by provider, model and endpoint. HTTP calls
+ * are recorded by the shared transport, ffmpeg runs by the transcoder; readers are
+ * {@code /clanker stats} and the Prometheus file ({@link PrometheusExporter}).
+ * Everything counts from startup.
+ */
+public final class Metrics {
+    private static final Map<Key, Calls> CALLS = new ConcurrentHashMap<>();
+
+    private Metrics() {}
+
+    public record Key(String provider, String model, String endpoint) {}
+
+    public enum Outcome {
+        OK, ERROR, RATE_LIMITED;
+
+        /** From an HTTP status; 0 means the call failed before a response arrived. */
+        public static Outcome of(int status) {
+            if (status == 429) return RATE_LIMITED;
+            return (status >= 200 && status < 400) ? OK : ERROR;
+        }
+    }
+
+    /** Counters for one provider/model/endpoint. */
+    public static final class Calls {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder ok = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rateLimited = new LongAdder();
+        private final LongAdder bytesSent = new LongAdder();
+        private final LongAdder bytesReceived = new LongAdder();
+
+        public void record(long nanos, Outcome outcome, long sent, long received) {
+            latency.record(nanos);
+            switch (outcome) {
+                case OK -> ok.increment();
+                case ERROR -> errors.increment();
+                case RATE_LIMITED -> rateLimited.increment();
+            }
+            if (sent > 0) bytesSent.add(sent);
+            if (received > 0) bytesReceived.add(received);
+        }
+
+        CallStats snapshot(Key key) {
+            return new CallStats(key, latency.snapshot(), ok.sum(), errors.sum(), rateLimited.sum(),
+                    bytesSent.sum(), bytesReceived.sum());
+        }
+    }
+
+    public record CallStats(Key key, LatencyHistogram.Snapshot latency, long ok, long errors, long rateLimited,
+                            long bytesSent, long bytesReceived) {
+        public long calls() { return ok + errors + rateLimited; }
+    }
+
+    public static Calls calls(String provider, String model, String endpoint) {
+        return CALLS.computeIfAbsent(new Key(provider, model, endpoint), k -> new Calls());
+    }
+
+    public static void record(String provider, String model, String endpoint, long nanos, Outcome outcome, long sent, long received) {
+        calls(provider, model, endpoint).record(nanos, outcome, sent, received);
+    }
+
+    /** All keys seen so far, sorted. */
+    public static List<CallStats> snapshot() {
+        List<CallStats> out = new ArrayList<>();
+        CALLS.forEach((k, c) -> out.add(c.snapshot(k)));
+        out.sort(Comparator.comparing((CallStats s) -> s.key().provider())
+                .thenComparing(s -> s.key().model())
+                .thenComparing(s -> s.key().endpoint()));
+        return out;
+    }
+
+    /**
+     * Labels an HTTP call to a Google endpoint: provider from the host, model and method from the
+     * path (".../models/gemini-2.0-flash:generateContent", ".../v1/text:synthesize"). Other hosts
+     * (PROVIDER_BASE_URL) are labelled by the shape of the path.
+     */
+    public static Key keyFor(String method, String host, String path) {
+        String provider;
+        if (host == null) provider = "unknown";
+        else if (host.startsWith("generativelanguage.")) provider = "gemini";
+        else if (host.startsWith("texttospeech.")) provider = "tts";
+        else if (host.endsWith("aiplatform.googleapis.com")) provider = "vertex";
+        else provider = providerOf(host, path);
+        if ("HEAD".equals(method)) return new Key(provider, "-", "warmup");
+        String p = (path == null) ? "" : path;
+        int models = p.lastIndexOf("/models/");
+        String last = (models >= 0) ? p.substring(models + "/models/".length()) : p.substring(p.lastIndexOf('/') + 1);
+        int colon = last.indexOf(':');
+        if (models >= 0) {
+            return (colon >= 0)
+                    ? new Key(provider, last.substring(0, colon), last.substring(colon + 1))
+                    : new Key(provider, last, method);
+        }
+        return new Key(provider, "-", last.isEmpty() ? "/" : last);
+    }
+
+    // A stand-in serves every provider from one host; tell them apart by their Google paths
+    private static String providerOf(String host, String path) {
+        if (path == null) return host;
+        if (path.contains("/publishers/")) return "vertex";
+        if (path.startsWith("/v1/text:")) return "tts";
+        if (path.contains("/models")) return "gemini";
+        return host;
+    }
+}
@@ -0,0 +1,162 @@
+package clanker.craft.metrics;
+
+import clanker.craft.config.Config;
+import clanker.craft.exec.GenerationExecutor.Bulkhead;
+import clanker.craft.http.HttpTransport;
+import net.fabricmc.loader.api.FabricLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes every metric in Prometheus text format to {@code <game dir>/clankercraft-metrics.prom}
+ * every METRICS_EXPORT_SECONDS (default 60, 0 turns it off), for node_exporter's textfile
+ * collector or a quick look. The file is replaced atomically so a scrape never sees half of it.
+ */
+public final class PrometheusExporter {
+    private static final Logger LOGGER = LoggerFactory.getLogger("ClankerCraft-Metrics");
+    private static final String FILE_NAME = "clankercraft-metrics.prom";
+    private static final long DEFAULT_INTERVAL_SECONDS = 60;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Clanker-Metrics-Export");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static ScheduledFuture<?> task;
+    private static long intervalSeconds = -1;
+
+    private PrometheusExporter() {}
+
+    /** Starts the periodic export and follows METRICS_EXPORT_SECONDS across config reloads. */
+    public static synchronized void start() {
+        schedule();
+        Config.addListener((previous, next) -> {
+            if (!Objects.equals(previous.get("METRICS_EXPORT_SECONDS"), next.get("METRICS_EXPORT_SECONDS"))) schedule();
+        });
+    }
+
+    private static synchronized void schedule() {
+        long seconds = DEFAULT_INTERVAL_SECONDS;
+        String v = Config.get("METRICS_EXPORT_SECONDS");
+        if (v != null) {
+            try { seconds = Math.max(0, Long.parseLong(v)); } catch (NumberFormatException ignored) {}
+        }
+        if (seconds == intervalSeconds) return;
+        intervalSeconds = seconds;
+        if (task != null) task.cancel(false);
+        task = (seconds == 0) ? null : WRITER.scheduleAtFixedRate(PrometheusExporter::write, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    public static Path file() {
+        return FabricLoader.getInstance().getGameDir().resolve(FILE_NAME);
+    }
+
+    private static void write() {
+        Path target = file();
+        try {
+            Path tmp = target.resolveSibling(FILE_NAME + ".tmp");
+            Files.writeString(tmp, render(), StandardCharsets.UTF_8);
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException atomicUnsupported) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Cannot write metrics to {}: {}", target, e.toString());
+        }
+    }
+
+    /** The current metrics in Prometheus text exposition format. */
+    public static String render() {
+        StringBuilder sb = new StringBuilder(4096);
+        List<Metrics.CallStats> calls = Metrics.snapshot();
+
+        sb.append("# HELP clankercraft_call_latency_seconds Provider call latency, request sent to response fully read.\n");
+        sb.append("# TYPE clankercraft_call_latency_seconds summary\n");
+        for (Metrics.CallStats s : calls) {
+            String labels = callLabels(s.key());
+            for (double q : QUANTILES) {
+                sb.append("clankercraft_call_latency_seconds{").append(labels).append(",quantile=\"").append(q).append("\"} ")
+                        .append(num(s.latency().percentileMillis(q) / 1e3)).append('\n');
+            }
+            sb.append("clankercraft_call_latency_seconds_sum{").append(labels).append("} ").append(num(s.latency().sumSeconds())).append('\n');
+            sb.append("clankercraft_call_latency_seconds_count{").append(labels).append("} ").append(s.latency().count()).append('\n');
+        }
+        sb.append("# HELP clankercraft_calls_total Provider calls by outcome.\n");
+        sb.append("# TYPE clankercraft_calls_total counter\n");
+        for (Metrics.CallStats s : calls) {
+            String labels = callLabels(s.key());
+            sb.append("clankercraft_calls_total{").append(labels).append(",outcome=\"ok\"} ").append(s.ok()).append('\n');
+            sb.append("clankercraft_calls_total{").append(labels).append(",outcome=\"error\"} ").append(s.errors()).append('\n');
+            sb.append("clankercraft_calls_total{").append(labels).append(",outcome=\"rate_limited\"} ").append(s.rateLimited()).append('\n');
+        }
+        sb.append("# TYPE clankercraft_sent_bytes_total counter\n");
+        for (Metrics.CallStats s : calls) {
+            sb.append("clankercraft_sent_bytes_total{").append(callLabels(s.key())).append("} ").append(s.bytesSent()).append('\n');
+        }
+        sb.append("# TYPE clankercraft_received_bytes_total counter\n");
+        for (Metrics.CallStats s : calls) {
+            sb.append("clankercraft_received_bytes_total{").append(callLabels(s.key())).append("} ").append(s.bytesReceived()).append('\n');
+        }
+
+        sb.append("# TYPE clankercraft_bulkhead_in_flight gauge\n");
+        for (Bulkhead b : Bulkhead.values()) gauge(sb, "clankercraft_bulkhead_in_flight", b, b.inFlight());
+        sb.append("# TYPE clankercraft_bulkhead_queued gauge\n");
+        for (Bulkhead b : Bulkhead.values()) gauge(sb, "clankercraft_bulkhead_queued", b, b.queued());
+        sb.append("# TYPE clankercraft_bulkhead_capacity gauge\n");
+        for (Bulkhead b : Bulkhead.values()) gauge(sb, "clankercraft_bulkhead_capacity", b, b.capacity());
+        sb.append("# TYPE clankercraft_bulkhead_rejected_total counter\n");
+        for (Bulkhead b : Bulkhead.values()) gauge(sb, "clankercraft_bulkhead_rejected_total", b, b.rejected());
+        sb.append("# HELP clankercraft_bulkhead_wait_seconds Time admitted jobs waited for a free slot.\n");
+        sb.append("# TYPE clankercraft_bulkhead_wait_seconds summary\n");
+        for (Bulkhead b : Bulkhead.values()) {
+            LatencyHistogram.Snapshot w = b.queueWait().snapshot();
+            String labels = "bulkhead=\"" + b.name().toLowerCase(Locale.ROOT) + "\"";
+            for (double q : QUANTILES) {
+                sb.append("clankercraft_bulkhead_wait_seconds{").append(labels).append(",quantile=\"").append(q).append("\"} ")
+                        .append(num(w.percentileMillis(q) / 1e3)).append('\n');
+            }
+            sb.append("clankercraft_bulkhead_wait_seconds_sum{").append(labels).append("} ").append(num(w.sumSeconds())).append('\n');
+            sb.append("clankercraft_bulkhead_wait_seconds_count{").append(labels).append("} ").append(w.count()).append('\n');
+        }
+
+        sb.append("# HELP clankercraft_http_requests_total HTTP requests per origin; reused ones found a live connection.\n");
+        sb.append("# TYPE clankercraft_http_requests_total counter\n");
+        for (HttpTransport.OriginStats o : HttpTransport.stats()) {
+            String labels = "origin=\"" + escape(o.origin()) + "\"";
+            sb.append("clankercraft_http_requests_total{").append(labels).append(",connection=\"reused\"} ").append(o.reused()).append('\n');
+            sb.append("clankercraft_http_requests_total{").append(labels).append(",connection=\"new\"} ").append(o.requests() - o.reused()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void gauge(StringBuilder sb, String name, Bulkhead b, long value) {
+        sb.append(name).append("{bulkhead=\"").append(b.name().toLowerCase(Locale.ROOT)).append("\"} ").append(value).append('\n');
+    }
+
+    private static String callLabels(Metrics.Key k) {
+        return "provider=\"" + escape(k.provider()) + "\",model=\"" + escape(k.model()) + "\",endpoint=\"" + escape(k.endpoint()) + "\"";
+    }
+
+    private static String num(double v) {
+        return String.format(Locale.ROOT, "%.6f", v);
+    }
+
+    private static String escape(String v) {
+        return v.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
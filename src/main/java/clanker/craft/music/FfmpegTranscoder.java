@@ -1,30 +1,211 @@
 package clanker.craft.music;
 
+import clanker.craft.metrics.Metrics;
+
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
 public final class FfmpegTranscoder {
+    private static final Duration TIMEOUT = Duration.ofMinutes(2);
+    private static final int STDERR_TAIL = 2048; // keep the end of ffmpeg's log for error messages
+
     private FfmpegTranscoder() {}
 
     /**
-     * Transcodes input audio (.wav) to OGG using ffmpeg on PATH.
-     * Throws IOException if ffmpeg fails or is not available.
+     * Starts ffmpeg reading audio (WAV/PCM, any container ffmpeg can probe) from stdin and writing
+     * OGG Vorbis to stdout, which is copied to a temp file next to outputOgg. stdout and stderr are
+     * drained on their own threads so ffmpeg can never stall on a full pipe, and the process is
+     * killed if it runs past the timeout.
      */
-    public static void toOggVorbis(Path inputAudio, Path outputOgg) throws IOException, InterruptedException {
-        if (inputAudio == null || outputOgg == null) throw new IllegalArgumentException("null path");
-        if (!Files.exists(inputAudio)) throw new IOException("Input audio not found: " + inputAudio);
-        Files.createDirectories(outputOgg.getParent());
-        Process p = new ProcessBuilder(
-                "ffmpeg", "-y",
-                "-i", inputAudio.toAbsolutePath().toString(),
-                "-ac", "2",
-                "-ar", "44100",
-                "-c:a", "libvorbis",
-                outputOgg.toAbsolutePath().toString()
-        ).redirectErrorStream(true).start();
-        int code = p.waitFor();
-        if (code != 0) throw new IOException("ffmpeg exited with code " + code);
+    public static OggVorbisStream openOggVorbis(Path outputOgg) throws IOException {
+        if (outputOgg == null) throw new IllegalArgumentException("null path");
+        Path dir = outputOgg.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, ".part-", ".ogg");
+        Process p;
+        try {
+            p = new ProcessBuilder(
+                    "ffmpeg", "-hide_banner", "-nostats", "-loglevel", "warning",
+                    "-i", "pipe:0",
+                    "-ac", "2",
+                    "-ar", "44100",
+                    "-c:a", "libvorbis",
+                    "-f", "ogg", "pipe:1"
+            ).start();
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw new IOException("ffmpeg is not available: " + e.getMessage(), e);
+        }
+        return new OggVorbisStream(p, tmp, outputOgg);
     }
-}
 
+    /**
+     * Encodes raw 16-bit little-endian PCM to an in-memory OGG Vorbis stream (speech quality), for
+     * clips small enough to hold in memory. stdin is fed from a virtual thread while stdout is read here.
+     */
+    public static byte[] pcmToOggVorbis(byte[] pcm, int sampleRate, int channels) throws IOException, InterruptedException {
+        Process p;
+        try {
+            p = new ProcessBuilder(
+                    "ffmpeg", "-hide_banner", "-nostats", "-loglevel", "error",
+                    "-f", "s16le", "-ar", Integer.toString(sampleRate), "-ac", Integer.toString(channels),
+                    "-i", "pipe:0",
+                    "-c:a", "libvorbis",
+                    "-q:a", "2",
+                    "-f", "ogg", "pipe:1"
+            ).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        } catch (IOException e) {
+            throw new IOException("ffmpeg is not available: " + e.getMessage(), e);
+        }
+        Thread feeder = Thread.ofVirtual().name("Clanker-Ffmpeg-In").start(() -> {
+            try (OutputStream in = p.getOutputStream()) {
+                in.write(pcm);
+            } catch (IOException ignored) {
+                // ffmpeg died; the exit code tells why
+            }
+        });
+        Thread watchdog = Thread.ofVirtual().name("Clanker-Ffmpeg-Watchdog").start(() -> {
+            try {
+                if (!p.waitFor(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) p.destroyForcibly();
+            } catch (InterruptedException ignored) {
+                // finished
+            }
+        });
+        long start = System.nanoTime();
+        Metrics.Outcome outcome = Metrics.Outcome.ERROR;
+        byte[] ogg = null;
+        try (InputStream out = p.getInputStream()) {
+            ogg = out.readAllBytes();
+            int code = p.waitFor();
+            feeder.join();
+            if (code != 0) throw new IOException("ffmpeg exited with code " + code);
+            outcome = Metrics.Outcome.OK;
+            return ogg;
+        } finally {
+            Metrics.record("ffmpeg", "libvorbis", "pcm_to_ogg", System.nanoTime() - start, outcome,
+                    pcm.length, ogg == null ? 0 : ogg.length);
+            watchdog.interrupt();
+            p.destroyForcibly(); // no-op once exited
+        }
+    }
+
+    /**
+     * A running transcode. Write the source audio to {@link #input()}, then call {@link #finish()};
+     * closing without finishing aborts ffmpeg and discards the partial output.
+     */
+    public static final class OggVorbisStream implements AutoCloseable {
+        private final Process process;
+        private final Path tmp;
+        private final Path target;
+        private final Thread stdout;
+        private final Thread stderr;
+        private final Thread watchdog;
+        private final long startNanos = System.nanoTime();
+        private final byte[] errTail = new byte[STDERR_TAIL];
+        private int errLen;
+        private volatile IOException stdoutError;
+        private volatile boolean timedOut;
+        private boolean finished;
+
+        private OggVorbisStream(Process process, Path tmp, Path target) {
+            this.process = process;
+            this.tmp = tmp;
+            this.target = target;
+            this.stdout = Thread.ofVirtual().name("Clanker-Ffmpeg-Out").start(() -> {
+                try (InputStream in = process.getInputStream()) {
+                    Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException e) {
+                    stdoutError = e;
+                }
+            });
+            this.stderr = Thread.ofVirtual().name("Clanker-Ffmpeg-Err").start(this::drainStderr);
+            this.watchdog = Thread.ofVirtual().name("Clanker-Ffmpeg-Watchdog").start(() -> {
+                try {
+                    if (!process.waitFor(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                        timedOut = true;
+                        process.destroyForcibly();
+                    }
+                } catch (InterruptedException ignored) {
+                    // finished or aborted; nothing to guard any more
+                }
+            });
+        }
+
+        /** ffmpeg's stdin. Writes fail with an IOException if ffmpeg died or was killed. */
+        public OutputStream input() { return process.getOutputStream(); }
+
+        /** Closes stdin, waits for ffmpeg and moves the OGG into place. */
+        public Path finish() throws IOException, InterruptedException {
+            try {
+                process.getOutputStream().close();
+            } catch (IOException ignored) {
+                // ffmpeg already gone; the exit code tells why
+            }
+            int code = process.waitFor(); // bounded by the watchdog
+            stdout.join();
+            stderr.join();
+            if (timedOut) throw new IOException("ffmpeg timed out after " + TIMEOUT.toSeconds() + "s");
+            if (code != 0) throw new IOException("ffmpeg exited with code " + code + errorTail());
+            if (stdoutError != null) throw stdoutError;
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException atomicUnsupported) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            finished = true;
+            Metrics.record("ffmpeg", "libvorbis", "to_ogg", System.nanoTime() - startNanos, Metrics.Outcome.OK, 0, Files.size(target));
+            return target;
+        }
+
+        @Override
+        public void close() {
+            watchdog.interrupt();
+            if (finished) return;
+            Metrics.record("ffmpeg", "libvorbis", "to_ogg", System.nanoTime() - startNanos, Metrics.Outcome.ERROR, 0, 0);
+            process.destroyForcibly();
+            try { process.getOutputStream().close(); } catch (IOException ignored) {}
+            try {
+                stdout.join(1000); // let the copy notice the kill before removing its file
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            try { Files.deleteIfExists(tmp); } catch (IOException ignored) {}
+        }
+
+        private void drainStderr() {
+            byte[] chunk = new byte[1024];
+            try (InputStream in = process.getErrorStream()) {
+                int n;
+                while ((n = in.read(chunk)) > 0) {
+                    synchronized (errTail) {
+                        if (n >= errTail.length) {
+                            System.arraycopy(chunk, n - errTail.length, errTail, 0, errTail.length);
+                            errLen = errTail.length;
+                        } else {
+                            int keep = Math.min(errLen, errTail.length - n);
+                            System.arraycopy(errTail, errLen - keep, errTail, 0, keep);
+                            System.arraycopy(chunk, 0, errTail, keep, n);
+                            errLen = keep + n;
+                        }
+                    }
+                }
+            } catch (IOException ignored) {
+                // process killed
+            }
+        }
+
+        private String errorTail() {
+            synchronized (errTail) {
+                if (errLen == 0) return "";
+                return ": " + new String(errTail, 0, errLen, StandardCharsets.UTF_8).trim();
+            }
+        }
+    }
+}
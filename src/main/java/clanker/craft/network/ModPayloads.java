@@ -0,0 +1,16 @@
+package clanker.craft.network;
+
+import net.fabricmc.fabric.api.networking.v1.PayloadTypeRegistry;
+
+/**
+ * Payload types must be registered on both sides (a dedicated server never runs the client entrypoint),
+ * so this is called from the common initializer.
+ */
+public final class ModPayloads {
+    private ModPayloads() {}
+
+    public static void register() {
+        PayloadTypeRegistry.playS2C().register(TTSSpeakS2CPayload.ID, TTSSpeakS2CPayload.CODEC);
+        PayloadTypeRegistry.playS2C().register(TTSAudioChunkS2CPayload.ID, TTSAudioChunkS2CPayload.CODEC);
+    }
+}
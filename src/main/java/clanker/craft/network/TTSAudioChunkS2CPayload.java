@@ -0,0 +1,49 @@
+package clanker.craft.network;
+
+import net.minecraft.network.RegistryByteBuf;
+import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.packet.CustomPayload;
+import net.minecraft.util.Identifier;
+import clanker.craft.ClankerCraft;
+
+/**
+ * One piece of a line the server already synthesized (server-side TTS). The compressed audio of an
+ * utterance is split into {@link #CHUNK_BYTES} pieces sharing an utteranceId; the client plays it
+ * once all total pieces arrived. entityId, priority, replyId and traceId mean the same as in
+ * {@link TTSSpeakS2CPayload}; codec is one of the {@link clanker.craft.tts.TtsCodec} constants.
+ */
+public record TTSAudioChunkS2CPayload(long utteranceId, int entityId, byte priority, long replyId, long traceId,
+                                      byte codec, int sampleRate, byte channels,
+                                      int index, int total, byte[] data) implements CustomPayload {
+    public static final int CHUNK_BYTES = 16 * 1024;
+    public static final int MAX_CHUNKS = 256; // 4 MiB of compressed speech is far more than any line
+
+    public static final Id<TTSAudioChunkS2CPayload> ID = new Id<>(Identifier.of(ClankerCraft.MOD_ID, "tts_audio"));
+    public static final PacketCodec<RegistryByteBuf, TTSAudioChunkS2CPayload> CODEC =
+            CustomPayload.codecOf(TTSAudioChunkS2CPayload::write, TTSAudioChunkS2CPayload::new);
+
+    private TTSAudioChunkS2CPayload(RegistryByteBuf buf) {
+        this(buf.readVarLong(), buf.readVarInt(), buf.readByte(), buf.readVarLong(), buf.readLong(),
+                buf.readByte(), buf.readVarInt(), buf.readByte(),
+                buf.readVarInt(), buf.readVarInt(), buf.readByteArray(CHUNK_BYTES));
+    }
+
+    private void write(RegistryByteBuf buf) {
+        buf.writeVarLong(utteranceId);
+        buf.writeVarInt(entityId);
+        buf.writeByte(priority);
+        buf.writeVarLong(replyId);
+        buf.writeLong(traceId);
+        buf.writeByte(codec);
+        buf.writeVarInt(sampleRate);
+        buf.writeByte(channels);
+        buf.writeVarInt(index);
+        buf.writeVarInt(total);
+        buf.writeByteArray(data);
+    }
+
+    @Override
+    public Id<? extends CustomPayload> getId() {
+        return ID;
+    }
+}
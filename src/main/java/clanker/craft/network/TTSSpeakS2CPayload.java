@@ -7,14 +7,34 @@ import net.minecraft.network.packet.CustomPayload;
 import net.minecraft.util.Identifier;
 import clanker.craft.ClankerCraft;
 
-public record TTSSpeakS2CPayload(String text, int entityId) implements CustomPayload {
+/**
+ * Asks the client to speak a line at an entity. priority orders lines per entity (replies before
+ * status lines); all sentences of one streamed reply share a replyId, and a reply with a new id
+ * interrupts the entity's current speech. traceId is the {@link clanker.craft.trace.Trace} id of the
+ * chat message the line answers, so the client's profiling events line up with the server's.
+ */
+public record TTSSpeakS2CPayload(String text, int entityId, byte priority, long replyId, long traceId) implements CustomPayload {
+    public static final byte PRIORITY_STATUS = 0;
+    public static final byte PRIORITY_REPLY = 1;
+
     public static final Id<TTSSpeakS2CPayload> ID = new Id<>(Identifier.of(ClankerCraft.MOD_ID, "tts_speak"));
     public static final PacketCodec<RegistryByteBuf, TTSSpeakS2CPayload> CODEC = PacketCodec.tuple(
             PacketCodecs.STRING, TTSSpeakS2CPayload::text,
             PacketCodecs.VAR_INT, TTSSpeakS2CPayload::entityId,
+            PacketCodecs.BYTE, TTSSpeakS2CPayload::priority,
+            PacketCodecs.VAR_LONG, TTSSpeakS2CPayload::replyId,
+            PacketCodecs.LONG, TTSSpeakS2CPayload::traceId,
             TTSSpeakS2CPayload::new
     );
 
+    public static TTSSpeakS2CPayload status(String text, int entityId, long traceId) {
+        return new TTSSpeakS2CPayload(text, entityId, PRIORITY_STATUS, 0L, traceId);
+    }
+
+    public static TTSSpeakS2CPayload reply(String text, int entityId, long replyId, long traceId) {
+        return new TTSSpeakS2CPayload(text, entityId, PRIORITY_REPLY, replyId, traceId);
+    }
+
     @Override
     public Id<? extends CustomPayload> getId() {
         return ID;
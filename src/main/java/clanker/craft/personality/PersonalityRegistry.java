@@ -0,0 +1,132 @@
+package clanker.craft.personality;
+
+import net.fabricmc.loader.api.FabricLoader;
+import clanker.craft.ClankerCraft;
+import clanker.craft.config.Config;
+import clanker.craft.config.FileWatcher;
+import clanker.craft.entity.ClankerEntity;
+import clanker.craft.i18n.LanguageManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Every persona available to Clankers: the bundled ones (assets/clankercraft/personalities) overlaid
+ * by the server's own files in config/clankercraft/personalities, loaded at startup and reloaded
+ * whenever that folder changes. Each Clanker keeps the persona it was given in its entity data, so
+ * personas vary across a world; CLANKER_PERSONALITY set to a name makes every Clanker use that one.
+ * Lookups never touch the disk.
+ */
+public final class PersonalityRegistry {
+    private static final Logger LOGGER = LoggerFactory.getLogger("ClankerCraft-Personality");
+    private static final String RANDOM = "random";
+    private static final String SUFFIX = ".txt";
+
+    public record Persona(String name, String text) {}
+
+    // Keyed by lower-case name; replaced wholesale on reload
+    private static volatile Map<String, Persona> personas = Map.of();
+    private static FileWatcher watcher;
+
+    private PersonalityRegistry() {}
+
+    /** Loads all personas and starts watching the user folder. Idempotent. */
+    public static synchronized void init() {
+        reload();
+        if (watcher == null) {
+            watcher = FileWatcher.watch(userDir(), p -> p.getFileName().toString().endsWith(SUFFIX),
+                    PersonalityRegistry::reload, "Clanker-Personality-Watch");
+        }
+    }
+
+    public static void reload() {
+        Map<String, Persona> loaded = new LinkedHashMap<>();
+        Optional<Path> bundled = FabricLoader.getInstance().getModContainer(ClankerCraft.MOD_ID)
+                .flatMap(c -> c.findPath("assets/" + ClankerCraft.MOD_ID + "/personalities"));
+        bundled.ifPresent(dir -> loadDir(dir, loaded));
+        // Server-provided files win over bundled ones of the same name
+        loadDir(userDir(), loaded);
+        personas = Map.copyOf(loaded);
+        LOGGER.info("Loaded {} personalities: {}", loaded.size(), names());
+    }
+
+    /** Persona names, sorted. */
+    public static List<String> names() {
+        List<String> out = new ArrayList<>();
+        for (Persona p : personas.values()) out.add(p.name);
+        out.sort(String.CASE_INSENSITIVE_ORDER);
+        return out;
+    }
+
+    public static Persona get(String name) {
+        return (name == null) ? null : personas.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * The system instruction for a conversation with this Clanker, told to answer in the given
+     * language (a {@link LanguageManager} code). Assigns the mob a persona if it has none yet. Server thread.
+     */
+    public static String personaFor(ClankerEntity mob, String language) {
+        Persona persona = assign(mob);
+        String text = (persona != null) ? persona.text : builtInFallback();
+        // Append language instruction to ensure LLM responds in the correct language
+        return text + " " + LanguageManager.getLanguageInstruction(language);
+    }
+
+    private static Persona assign(ClankerEntity mob) {
+        String configured = Config.personalityName();
+        if (configured != null && !configured.isBlank() && !configured.equalsIgnoreCase(RANDOM)) {
+            Persona forced = get(configured);
+            if (forced != null) return forced;
+            LOGGER.warn("Personality {} not found; picking one per Clanker", configured);
+        }
+        Persona own = get(mob.getPersona());
+        if (own != null) return own;
+        // New Clanker, or its persona file was removed: pick one and remember it with the entity
+        List<Persona> all = List.copyOf(personas.values());
+        if (all.isEmpty()) return null;
+        Persona picked = all.get(mob.getRandom().nextInt(all.size()));
+        mob.setPersona(picked.name);
+        return picked;
+    }
+
+    private static Path userDir() {
+        return FabricLoader.getInstance().getConfigDir().resolve("clankercraft").resolve("personalities");
+    }
+
+    private static void loadDir(Path dir, Map<String, Persona> into) {
+        if (!Files.isDirectory(dir)) return;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted()::iterator) {
+                String fileName = file.getFileName().toString();
+                if (!fileName.endsWith(SUFFIX) || !Files.isRegularFile(file)) continue;
+                String name = fileName.substring(0, fileName.length() - SUFFIX.length());
+                try {
+                    String text = Files.readString(file, StandardCharsets.UTF_8).strip();
+                    if (!text.isEmpty()) into.put(name.toLowerCase(Locale.ROOT), new Persona(name, text));
+                } catch (IOException e) {
+                    LOGGER.warn("Skipping personality {}: {}", file, e.toString());
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Cannot list personalities in {}: {}", dir, e.toString());
+        }
+    }
+
+    private static String builtInFallback() {
+        // Default to Excited
+        return "System instruction: You are Clanker, an excitable, upbeat companion. " +
+                "Respond with enthusiasm, positivity, and helpful energy. Keep responses concise but lively.";
+    }
+}
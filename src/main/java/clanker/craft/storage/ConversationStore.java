@@ -0,0 +1,479 @@
+package clanker.craft.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Durable per-player, per-Clanker conversation history in a single append-only log file.
+ *
+ * Layout: an 8-byte file header (magic, version) followed by records of the form
+ * [int length][int crc32][byte type][player uuid][mob uuid][long timestamp][type-specific body],
+ * where length counts everything after the crc field. TURN records carry one "role: text" line;
+ * COMPACT records say "the oldest N turns are gone" and optionally carry a new rolling summary.
+ *
+ * Callers only encode a record and queue it: a single background writer appends it to the file, so
+ * the server thread never waits on disk. Only record offsets live in heap; text is read back with
+ * positional reads on that same writer when a conversation is resumed, and handed back as a future,
+ * so the log has no size limit. Dead records
+ * (dropped turns, superseded summaries) are reclaimed in the background once they dominate the log:
+ * the live records are copied to a fresh file while appends carry on, and the append lock is only
+ * taken to copy what was appended meanwhile and swap the files.
+ */
+public final class ConversationStore implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger("ClankerCraft-Store");
+
+    private static final int FILE_MAGIC = 0x434C4B43; // "CLKC"
+    private static final int FILE_VERSION = 1;
+    private static final int FILE_HEADER = 8;
+    private static final int RECORD_PREFIX = 8; // length + crc
+    private static final int RECORD_FIXED = 1 + 16 + 16 + 8; // type, two uuids, timestamp
+    private static final byte TURN = 1;
+    private static final byte COMPACT = 2;
+
+    private static final long COMPACT_MIN_BYTES = 1L << 20; // don't bother below 1 MiB
+    private static final long COMPACT_INTERVAL_MINUTES = 5;
+    private static final int SCAN_WINDOW = 1 << 16;
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+    /** A conversation is identified by who talked to which Clanker. */
+    public record Key(UUID player, UUID mob) {}
+
+    /** What a resumed conversation looks like: rolling summary (may be null) and the live turns. */
+    public record Conversation(String summary, List<String> turns) {}
+
+    private static final class Entry {
+        long summaryOffset = -1;
+        int summarySize;
+        long[] offsets = new long[8];
+        int[] sizes = new int[8];
+        int head, tail;
+
+        int liveTurns() { return tail - head; }
+
+        void push(long offset, int size) {
+            if (tail == offsets.length) {
+                int live = liveTurns();
+                if (head > 0 && live < offsets.length / 2) {
+                    System.arraycopy(offsets, head, offsets, 0, live);
+                    System.arraycopy(sizes, head, sizes, 0, live);
+                } else {
+                    offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                    sizes = Arrays.copyOf(sizes, sizes.length * 2);
+                    System.arraycopy(offsets, head, offsets, 0, live);
+                    System.arraycopy(sizes, head, sizes, 0, live);
+                }
+                head = 0;
+                tail = live;
+            }
+            offsets[tail] = offset;
+            sizes[tail++] = size;
+        }
+
+        Entry copy() {
+            Entry c = new Entry();
+            c.summaryOffset = summaryOffset;
+            c.summarySize = summarySize;
+            c.offsets = Arrays.copyOfRange(offsets, head, Math.max(tail, head + 1));
+            c.sizes = Arrays.copyOfRange(sizes, head, Math.max(tail, head + 1));
+            c.tail = liveTurns();
+            return c;
+        }
+    }
+
+    private final Path file;
+    private final ExecutorService writer;
+    private final ScheduledExecutorService maintenance;
+    private volatile boolean closed;
+    // Guarded by this
+    private Map<Key, Entry> index = new HashMap<>();
+    private FileChannel channel;
+    private long size;
+    private long deadBytes;
+
+    private ConversationStore(Path file) {
+        this.file = file;
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "Clanker-Store");
+            t.setDaemon(true);
+            return t;
+        });
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Clanker-Store-Compact");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Opens (or creates) the log, rebuilds the offset index and schedules background compaction.
+     */
+    public static ConversationStore open(Path file) throws IOException {
+        ConversationStore store = new ConversationStore(file);
+        synchronized (store) {
+            store.openChannel(new HashMap<>(), FILE_HEADER);
+        }
+        store.maintenance.execute(store::compact);
+        store.maintenance.scheduleWithFixedDelay(store::maintain, COMPACT_INTERVAL_MINUTES, COMPACT_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        return store;
+    }
+
+    public void appendTurn(Key key, String line) {
+        byte[] text = line.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = ByteBuffer.allocate(4 + text.length);
+        body.putInt(text.length).put(text).flip();
+        enqueue(encode(TURN, key, body), "conversation turn");
+    }
+
+    /**
+     * Records that the oldest removedTurns turns are gone, replaced by summary (null keeps the old one).
+     */
+    public void appendCompaction(Key key, String summary, int removedTurns) {
+        byte[] text = summary == null ? null : summary.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = ByteBuffer.allocate(8 + (text == null ? 0 : text.length));
+        body.putInt(removedTurns).putInt(text == null ? -1 : text.length);
+        if (text != null) body.put(text);
+        body.flip();
+        enqueue(encode(COMPACT, key, body), "conversation summary");
+    }
+
+    /**
+     * Reads a stored conversation back from the log; completes with null if there is none or it
+     * could not be read. Runs behind records still queued for the writer, so everything appended
+     * before this call is included. Never join this from the server thread.
+     */
+    public CompletableFuture<Conversation> load(Key key) {
+        try {
+            return CompletableFuture.supplyAsync(() -> read(key), writer)
+                    .exceptionally(e -> {
+                        LOGGER.warn("Failed to read stored conversation: {}", e.getMessage());
+                        return null;
+                    });
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Failed to read stored conversation: {}", e.getMessage());
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /** Writes everything still queued, then closes the log. */
+    @Override
+    public void close() {
+        closed = true;
+        maintenance.shutdown();
+        writer.shutdown();
+        try {
+            // A compaction in progress notices closed before swapping files and backs out
+            maintenance.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (!writer.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.warn("Conversation store writer did not drain in {}s; the newest turns may be lost", CLOSE_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            try {
+                if (channel != null) {
+                    channel.force(true);
+                    channel.close();
+                }
+            } catch (IOException ignored) {}
+            channel = null;
+        }
+    }
+
+    private void maintain() {
+        FileChannel ch;
+        synchronized (this) {
+            ch = channel;
+        }
+        if (ch == null) return;
+        try {
+            ch.force(false); // outside the lock: the writer keeps appending while this syncs
+        } catch (IOException e) {
+            LOGGER.warn("Conversation store maintenance failed: {}", e.getMessage());
+        }
+        compact();
+    }
+
+    // ---- writing (Clanker-Store thread) ----
+
+    // On the caller's thread: the record is built (and timestamped) here, only the write is queued
+    private static ByteBuffer encode(byte type, Key key, ByteBuffer body) {
+        int length = RECORD_FIXED + body.remaining();
+        ByteBuffer rec = ByteBuffer.allocate(RECORD_PREFIX + length);
+        rec.putInt(length).putInt(0).put(type)
+                .putLong(key.player().getMostSignificantBits()).putLong(key.player().getLeastSignificantBits())
+                .putLong(key.mob().getMostSignificantBits()).putLong(key.mob().getLeastSignificantBits())
+                .putLong(System.currentTimeMillis())
+                .put(body);
+        CRC32 crc = new CRC32();
+        crc.update(rec.array(), RECORD_PREFIX, length);
+        rec.putInt(4, (int) crc.getValue());
+        return rec.flip();
+    }
+
+    private void enqueue(ByteBuffer rec, String what) {
+        try {
+            writer.execute(() -> write(rec, what));
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Failed to persist {}: store closed", what);
+        }
+    }
+
+    private synchronized void write(ByteBuffer rec, String what) {
+        try {
+            if (channel == null) throw new IOException("store closed");
+            long offset = size;
+            while (rec.hasRemaining()) channel.write(rec, offset + rec.position());
+            size += rec.limit();
+            apply(offset, rec.rewind().position(RECORD_PREFIX).slice());
+        } catch (IOException e) {
+            LOGGER.warn("Failed to persist {}: {}", what, e.getMessage());
+        }
+    }
+
+    // Updates the index for the record at offset; rec is everything after the crc
+    private void apply(long offset, ByteBuffer rec) {
+        byte type = rec.get(0);
+        Key key = new Key(new UUID(rec.getLong(1), rec.getLong(9)), new UUID(rec.getLong(17), rec.getLong(25)));
+        int recordSize = RECORD_PREFIX + rec.limit();
+        Entry e = index.computeIfAbsent(key, k -> new Entry());
+        if (type == TURN) {
+            e.push(offset, recordSize);
+        } else if (type == COMPACT) {
+            applyCompaction(e, offset, recordSize, rec.getInt(RECORD_FIXED), rec.getInt(RECORD_FIXED + 4) >= 0);
+        } else {
+            deadBytes += recordSize;
+        }
+    }
+
+    private void applyCompaction(Entry e, long offset, int recordSize, int removedTurns, boolean hasSummary) {
+        int n = Math.min(removedTurns, e.liveTurns());
+        for (int i = 0; i < n; i++) deadBytes += e.sizes[e.head++];
+        if (hasSummary) {
+            if (e.summaryOffset >= 0) deadBytes += e.summarySize;
+            e.summaryOffset = offset;
+            e.summarySize = recordSize;
+        } else {
+            deadBytes += recordSize; // only meaningful for the turns it removed
+        }
+    }
+
+    // ---- reading ----
+
+    private synchronized Conversation read(Key key) {
+        Entry e = index.get(key);
+        if (e == null || (e.liveTurns() == 0 && e.summaryOffset < 0)) return null;
+        try {
+            String summary = e.summaryOffset < 0 ? null : readCompactSummary(channel, e.summaryOffset, e.summarySize);
+            List<String> turns = new ArrayList<>(e.liveTurns());
+            for (int i = e.head; i < e.tail; i++) turns.add(readTurn(channel, e.offsets[i], e.sizes[i]));
+            return new Conversation(summary, turns);
+        } catch (IOException | RuntimeException ex) {
+            throw new CompletionException(ex);
+        }
+    }
+
+    // Opens the log with an index already known up to scanFrom and scans the rest
+    private void openChannel(Map<Key, Entry> known, long scanFrom) throws IOException {
+        Files.createDirectories(file.getParent());
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < FILE_HEADER) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER).putInt(FILE_MAGIC).putInt(FILE_VERSION).flip();
+            channel.truncate(0);
+            while (header.hasRemaining()) channel.write(header, header.position());
+            channel.force(true);
+        }
+        size = channel.size();
+        ByteBuffer header = readFully(channel, 0, FILE_HEADER);
+        if (header.getInt(0) != FILE_MAGIC || header.getInt(4) != FILE_VERSION) {
+            throw new IOException("Not a ClankerCraft conversation log: " + file);
+        }
+        index = known;
+        deadBytes = 0;
+        scan(scanFrom);
+    }
+
+    // Rebuild the index from disk; a torn or corrupt tail (crash mid-write) is cut off
+    private void scan(long from) throws IOException {
+        Window window = new Window(channel, size);
+        long pos = from;
+        CRC32 crc = new CRC32();
+        while (true) {
+            ByteBuffer prefix = window.at(pos, RECORD_PREFIX);
+            if (prefix == null) break;
+            int length = prefix.getInt(0);
+            int stored = prefix.getInt(4);
+            if (length < RECORD_FIXED || length > size - pos - RECORD_PREFIX) break;
+            ByteBuffer rec = window.at(pos + RECORD_PREFIX, length);
+            if (rec == null) break;
+            crc.reset();
+            crc.update(rec.duplicate());
+            if ((int) crc.getValue() != stored) break;
+            apply(pos, rec);
+            pos += RECORD_PREFIX + length;
+        }
+        if (pos < size) {
+            LOGGER.warn("Conversation log {} has a damaged tail; truncating {} bytes", file, size - pos);
+            channel.truncate(pos);
+            size = pos;
+        }
+        index.values().removeIf(e -> e.liveTurns() == 0 && e.summaryOffset < 0);
+    }
+
+    private static String readTurn(FileChannel ch, long offset, int recordSize) throws IOException {
+        ByteBuffer rec = readFully(ch, offset, recordSize);
+        int body = RECORD_PREFIX + RECORD_FIXED;
+        return readString(rec, body + 4, rec.getInt(body));
+    }
+
+    private static String readCompactSummary(FileChannel ch, long offset, int recordSize) throws IOException {
+        ByteBuffer rec = readFully(ch, offset, recordSize);
+        int body = RECORD_PREFIX + RECORD_FIXED;
+        int len = rec.getInt(body + 4);
+        return len < 0 ? null : readString(rec, body + 8, len);
+    }
+
+    private static String readString(ByteBuffer rec, int at, int len) {
+        return new String(rec.array(), at, len, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer readFully(FileChannel ch, long offset, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, offset + buf.position()) < 0) throw new IOException("Conversation log ends inside a record");
+        }
+        return buf.flip();
+    }
+
+    /** Sequential reads through a buffer, so a scan costs one read per window rather than per record. */
+    private static final class Window {
+        private final FileChannel ch;
+        private final long end;
+        private ByteBuffer buf = ByteBuffer.allocate(SCAN_WINDOW).limit(0);
+        private long start;
+
+        Window(FileChannel ch, long end) {
+            this.ch = ch;
+            this.end = end;
+        }
+
+        /** The bytes [pos, pos + len), or null if the file ends first. Valid until the next call. */
+        ByteBuffer at(long pos, int len) throws IOException {
+            if (pos + len > end) return null;
+            if (pos < start || pos + len > start + buf.limit()) {
+                if (buf.capacity() < len) buf = ByteBuffer.allocate(len);
+                buf.clear().limit((int) Math.min(buf.capacity(), end - pos));
+                while (buf.hasRemaining()) {
+                    if (ch.read(buf, pos + buf.position()) < 0) break;
+                }
+                buf.flip();
+                start = pos;
+                if (buf.limit() < len) return null;
+            }
+            return buf.slice((int) (pos - start), len);
+        }
+    }
+
+    // ---- compaction (Clanker-Store-Compact thread) ----
+
+    private void compact() {
+        Path tmp = file.resolveSibling(file.getFileName() + ".compact");
+        FileChannel src;
+        long before;
+        List<Map.Entry<Key, Entry>> live = new ArrayList<>();
+        synchronized (this) {
+            if (closed || channel == null || size < COMPACT_MIN_BYTES || deadBytes * 2 < size) return;
+            src = channel;
+            before = size;
+            // A private copy of the live offsets: appends and summaries keep changing the real index
+            for (Map.Entry<Key, Entry> e : index.entrySet()) live.add(Map.entry(e.getKey(), e.getValue().copy()));
+        }
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            // The bulk of the work, without the lock: records below `before` never change
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER).putInt(FILE_MAGIC).putInt(FILE_VERSION).flip();
+            while (header.hasRemaining()) out.write(header);
+            long pos = FILE_HEADER;
+            Map<Key, Entry> fresh = new HashMap<>();
+            for (Map.Entry<Key, Entry> le : live) {
+                Entry e = le.getValue();
+                Entry n = new Entry();
+                // A summary record with a removed count of zero replays cleanly in the new file
+                if (e.summaryOffset >= 0) {
+                    n.summaryOffset = pos;
+                    n.summarySize = e.summarySize;
+                    pos += copyRecord(src, e.summaryOffset, e.summarySize, out, true);
+                }
+                for (int i = e.head; i < e.tail; i++) {
+                    n.push(pos, e.sizes[i]);
+                    pos += copyRecord(src, e.offsets[i], e.sizes[i], out, false);
+                }
+                if (n.liveTurns() > 0 || n.summaryOffset >= 0) fresh.put(le.getKey(), n);
+            }
+            out.force(true);
+
+            synchronized (this) {
+                if (closed || channel != src) {
+                    Files.deleteIfExists(tmp);
+                    return;
+                }
+                // Records appended while copying replay on top of the copied state (a COMPACT
+                // still drops the oldest turns, which were copied in order), so copy them as they are
+                for (long p = before; p < size; ) p += channel.transferTo(p, size - p, out);
+                out.force(true);
+                channel.close();
+                channel = null;
+                try {
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    LOGGER.warn("Could not swap in compacted conversation log: {}", e.getMessage());
+                    Files.deleteIfExists(tmp);
+                    openChannel(new HashMap<>(), FILE_HEADER);
+                    return;
+                }
+                openChannel(fresh, pos);
+                LOGGER.info("Compacted conversation log: {} -> {} bytes", before, size);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Conversation log compaction failed: {}", e.getMessage());
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private static int copyRecord(FileChannel src, long offset, int recordSize, FileChannel out, boolean resetRemovedCount) throws IOException {
+        ByteBuffer rec = readFully(src, offset, recordSize);
+        if (resetRemovedCount) {
+            rec.putInt(RECORD_PREFIX + RECORD_FIXED, 0);
+            CRC32 crc = new CRC32();
+            crc.update(rec.array(), RECORD_PREFIX, recordSize - RECORD_PREFIX);
+            rec.putInt(4, (int) crc.getValue());
+        }
+        while (rec.hasRemaining()) out.write(rec);
+        return recordSize;
+    }
+}
@@ -0,0 +1,124 @@
+package clanker.craft.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events for each stage between a chat message and the Clanker's voice:
+ * bulkhead wait and run, HTTP calls, thread hops, payload send and receive, synthesis, decode
+ * and OpenAL upload. They cost nothing unless a recording is running (Minecraft's {@code /jfr start}
+ * or {@code -XX:StartFlightRecording}); every event carries the message's {@link Trace} id, which
+ * is the same on server and client.
+ */
+public final class PipelineEvents {
+    private PipelineEvents() {}
+
+    private static final String CATEGORY = "ClankerCraft";
+
+    @Name("clankercraft.BulkheadWait")
+    @Label("Bulkhead Wait")
+    @Description("Time a job waited for a free slot in its bulkhead")
+    @Category({CATEGORY, "Executor"})
+    @StackTrace(false)
+    public static final class BulkheadWait extends Event {
+        @Label("Bulkhead") public String bulkhead;
+        @Label("Correlation Id") public long correlationId;
+    }
+
+    @Name("clankercraft.Job")
+    @Label("Generation Job")
+    @Description("A provider job running in its bulkhead")
+    @Category({CATEGORY, "Executor"})
+    @StackTrace(false)
+    public static final class Job extends Event {
+        @Label("Bulkhead") public String bulkhead;
+        @Label("Failed") public boolean failed;
+        @Label("Correlation Id") public long correlationId;
+    }
+
+    @Name("clankercraft.HttpCall")
+    @Label("Provider HTTP Call")
+    @Description("One HTTP exchange with a provider, until the body was fully read")
+    @Category({CATEGORY, "Network"})
+    @StackTrace(false)
+    public static final class HttpCall extends Event {
+        @Label("Provider") public String provider;
+        @Label("Model") public String model;
+        @Label("Endpoint") public String endpoint;
+        @Label("Status") public int status;
+        @Label("Bytes Sent") @DataAmount public long bytesSent;
+        @Label("Bytes Received") @DataAmount public long bytesReceived;
+        @Label("Correlation Id") public long correlationId;
+    }
+
+    @Name("clankercraft.Hop")
+    @Label("Thread Hop")
+    @Description("Time a task waited in the server or client thread's queue")
+    @Category({CATEGORY, "Executor"})
+    @StackTrace(false)
+    public static final class Hop extends Event {
+        @Label("Stage") public String stage;
+        @Label("Correlation Id") public long correlationId;
+    }
+
+    @Name("clankercraft.PayloadSend")
+    @Label("Payload Send")
+    @Description("Handing TTS payloads to the network")
+    @Category({CATEGORY, "Network"})
+    @StackTrace(false)
+    public static final class PayloadSend extends Event {
+        @Label("Payload") public String payload;
+        @Label("Recipients") public int recipients;
+        @Label("Packets") public int packets;
+        @Label("Bytes") @DataAmount public long bytes;
+        @Label("Correlation Id") public long correlationId;
+    }
+
+    @Name("clankercraft.PayloadReceive")
+    @Label("Payload Receive")
+    @Description("A TTS payload arriving on the client")
+    @Category({CATEGORY, "Network"})
+    @StackTrace(false)
+    public static final class PayloadReceive extends Event {
+        @Label("Payload") public String payload;
+        @Label("Correlation Id") public long correlationId;
+    }
+
+    @Name("clankercraft.TtsSynthesis")
+    @Label("TTS Synthesis")
+    @Description("Turning one line into audio, from the cache or Cloud TTS")
+    @Category({CATEGORY, "Speech"})
+    @StackTrace(false)
+    public static final class TtsSynthesis extends Event {
+        @Label("Characters") public int characters;
+        @Label("Cached") public boolean cached;
+        @Label("Correlation Id") public long correlationId;
+    }
+
+    @Name("clankercraft.AudioDecode")
+    @Label("Audio Decode")
+    @Description("Decoding a server-synthesized line on the client")
+    @Category({CATEGORY, "Speech"})
+    @StackTrace(false)
+    public static final class AudioDecode extends Event {
+        @Label("Codec") public int codec;
+        @Label("Bytes") @DataAmount public long bytes;
+        @Label("Correlation Id") public long correlationId;
+    }
+
+    @Name("clankercraft.AudioUpload")
+    @Label("OpenAL Upload")
+    @Description("Uploading and queueing one chunk of speech on its OpenAL source")
+    @Category({CATEGORY, "Speech"})
+    @StackTrace(false)
+    public static final class AudioUpload extends Event {
+        @Label("Entity Id") public int entityId;
+        @Label("Bytes") @DataAmount public long bytes;
+        @Label("Correlation Id") public long correlationId;
+    }
+}
@@ -0,0 +1,64 @@
+package clanker.craft.trace;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Correlation ids that tie the stages of one chat message together across threads and across the
+ * network: every {@link PipelineEvents} event carries the id of the message it belongs to, and the
+ * id travels to the client inside the TTS payloads, so server and client recordings can be joined on it.
+ * 0 means "not part of a traced message".
+ */
+public final class Trace {
+    private static final ThreadLocal<Long> CURRENT = new ThreadLocal<>();
+
+    private Trace() {}
+
+    /** A fresh id for a new chat message. Random so ids from different server runs don't collide. */
+    public static long newId() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+        } while (id == 0);
+        return id;
+    }
+
+    /** The id of the message this thread is working on, or 0. */
+    public static long current() {
+        Long id = CURRENT.get();
+        return (id == null) ? 0 : id;
+    }
+
+    /** Runs work on this thread as part of the given message. */
+    public static <T> T call(long id, Supplier<T> work) {
+        Long previous = CURRENT.get();
+        CURRENT.set(id);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) CURRENT.remove();
+            else CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Wraps a task handed to another thread's queue (server.execute, client.execute) so the wait
+     * until it runs is recorded as a {@link PipelineEvents.Hop}.
+     */
+    public static Runnable hop(String stage, long id, Runnable task) {
+        PipelineEvents.Hop event = new PipelineEvents.Hop();
+        event.begin();
+        return () -> {
+            event.end();
+            if (event.shouldCommit()) {
+                event.stage = stage;
+                event.correlationId = id;
+                event.commit();
+            }
+            call(id, () -> {
+                task.run();
+                return null;
+            });
+        };
+    }
+}
@@ -0,0 +1,10 @@
+package clanker.craft.tts;
+
+/**
+ * Signed 16-bit little-endian PCM.
+ */
+public record PcmAudio(byte[] data, int sampleRate, int channels) {
+    public long durationNanos() {
+        return data.length * 1_000_000_000L / ((long) sampleRate * channels * 2);
+    }
+}
@@ -0,0 +1,197 @@
+package clanker.craft.tts;
+
+import net.fabricmc.loader.api.FabricLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Synthesized speech keyed by everything that affects the audio (sanitized text, voice, language,
+ * rate, pitch). A byte-bounded LRU keeps recent lines in memory; every line is also stored gzipped
+ * under config/clankercraft/tts-cache, named by its hash, so fixed lines (greetings, "busy", "done")
+ * survive restarts and never cost quota twice. The disk tier is trimmed oldest-first past its budget.
+ * Used by both the client (local synthesis) and the server (server-side synthesis); writes go through
+ * a temp file and an atomic rename, so both may share the directory on an integrated server.
+ */
+public final class TtsAudioCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger("ClankerCraft-TTS");
+    private static final long MEMORY_BUDGET_BYTES = 16L * 1024 * 1024;
+    private static final long DISK_BUDGET_BYTES = 128L * 1024 * 1024;
+    private static final int MAGIC = 0x43545453; // "CTTS"
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".pcm.gz";
+
+    private final Path dir;
+    private final LinkedHashMap<String, PcmAudio> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryBytes;
+    private final AtomicLong diskBytes = new AtomicLong(-1); // unknown until the first scan
+
+    public TtsAudioCache() {
+        this(FabricLoader.getInstance().getConfigDir().resolve("clankercraft").resolve("tts-cache"));
+    }
+
+    public TtsAudioCache(Path dir) {
+        this.dir = dir;
+    }
+
+    /** Hex SHA-256 over the fields, each length-prefixed so no two inputs collide by concatenation. */
+    public static String key(String sanitizedText, String voice, String language, String rate, String pitch) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            for (String part : new String[]{sanitizedText, voice, language, rate, pitch}) {
+                byte[] b = (part == null ? "" : part).getBytes(StandardCharsets.UTF_8);
+                sha.update((byte) (b.length >>> 24));
+                sha.update((byte) (b.length >>> 16));
+                sha.update((byte) (b.length >>> 8));
+                sha.update((byte) b.length);
+                sha.update(b);
+            }
+            return HexFormat.of().formatHex(sha.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JRE ships SHA-256
+        }
+    }
+
+    /** The cached audio, or null. Disk hits are promoted to memory. */
+    public PcmAudio get(String key) {
+        synchronized (memory) {
+            PcmAudio hit = memory.get(key);
+            if (hit != null) return hit;
+        }
+        PcmAudio loaded = readDisk(key);
+        if (loaded != null) putMemory(key, loaded);
+        return loaded;
+    }
+
+    public void put(String key, PcmAudio pcm) {
+        if (pcm == null || pcm.data().length == 0) return;
+        putMemory(key, pcm);
+        writeDisk(key, pcm);
+    }
+
+    private void putMemory(String key, PcmAudio pcm) {
+        if (pcm.data().length > MEMORY_BUDGET_BYTES / 4) return; // one huge line shouldn't flush everything else
+        synchronized (memory) {
+            PcmAudio old = memory.put(key, pcm);
+            if (old != null) memoryBytes -= old.data().length;
+            memoryBytes += pcm.data().length;
+            for (Iterator<PcmAudio> it = memory.values().iterator(); memoryBytes > MEMORY_BUDGET_BYTES && it.hasNext();) {
+                memoryBytes -= it.next().data().length;
+                it.remove();
+            }
+        }
+    }
+
+    private Path file(String key) {
+        return dir.resolve(key.substring(0, 2)).resolve(key + SUFFIX);
+    }
+
+    private PcmAudio readDisk(String key) {
+        Path f = file(key);
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(Files.newInputStream(f))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            int sampleRate = in.readInt();
+            int channels = in.readInt();
+            byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            try { Files.setLastModifiedTime(f, FileTime.fromMillis(System.currentTimeMillis())); } catch (IOException ignored) {}
+            return new PcmAudio(data, sampleRate, channels);
+        } catch (NoSuchFileException miss) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Dropping unreadable TTS cache entry {}: {}", f, e.toString());
+            try { Files.deleteIfExists(f); } catch (IOException ignored) {}
+            return null;
+        }
+    }
+
+    private void writeDisk(String key, PcmAudio pcm) {
+        Path f = file(key);
+        try {
+            Files.createDirectories(f.getParent());
+            Path tmp = Files.createTempFile(f.getParent(), ".part-", ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)), 8192))) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    out.writeInt(pcm.sampleRate());
+                    out.writeInt(pcm.channels());
+                    out.writeInt(pcm.data().length);
+                    out.write(pcm.data());
+                }
+                long size = Files.size(tmp);
+                if (diskBytes.get() < 0) diskBytes.set(scanSize());
+                Files.move(tmp, f, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                if (diskBytes.addAndGet(size) > DISK_BUDGET_BYTES) trimDisk();
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Could not store TTS cache entry {}: {}", f, e.toString());
+        }
+    }
+
+    private long scanSize() {
+        long total = 0;
+        for (Path p : entries()) {
+            try { total += Files.size(p); } catch (IOException ignored) {}
+        }
+        return total;
+    }
+
+    // Least recently used first (reads touch the modification time)
+    private synchronized void trimDisk() {
+        record Entry(Path path, long size, long mtime) {}
+        List<Entry> all = new ArrayList<>();
+        long total = 0;
+        for (Path p : entries()) {
+            try {
+                long size = Files.size(p);
+                all.add(new Entry(p, size, Files.getLastModifiedTime(p).toMillis()));
+                total += size;
+            } catch (IOException ignored) {}
+        }
+        all.sort(Comparator.comparingLong(Entry::mtime));
+        long target = DISK_BUDGET_BYTES * 3 / 4; // leave headroom so we don't trim on every write
+        for (Entry e : all) {
+            if (total <= target) break;
+            try {
+                Files.deleteIfExists(e.path);
+                total -= e.size;
+            } catch (IOException ignored) {}
+        }
+        diskBytes.set(total);
+    }
+
+    private List<Path> entries() {
+        if (!Files.isDirectory(dir)) return List.of();
+        try (Stream<Path> s = Files.walk(dir, 2)) {
+            return s.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).toList();
+        } catch (IOException e) {
+            return List.of();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package clanker.craft.tts;
+
+import clanker.craft.config.Config;
+import clanker.craft.exec.GenerationExecutor;
+import clanker.craft.exec.GenerationExecutor.Bulkhead;
+import clanker.craft.i18n.LanguageManager;
+import clanker.craft.network.TTSAudioChunkS2CPayload;
+import clanker.craft.network.TTSSpeakS2CPayload;
+import clanker.craft.trace.PipelineEvents;
+import clanker.craft.trace.Trace;
+import net.fabricmc.fabric.api.networking.v1.PlayerLookup;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
+import net.minecraft.entity.Entity;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.Vec3d;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Routes Clanker speech. By default the conversing player's client synthesizes it (text payload).
+ * With TTS_SERVER_SIDE the server synthesizes each line once, compresses it and sends the chunks to
+ * every player within hearing range of the speaking entity, so API calls scale with lines, not
+ * listeners, and clients need no key. Lines of one entity reach clients in the order they were spoken.
+ */
+public final class TtsBroadcaster {
+    private static final Logger LOGGER = LoggerFactory.getLogger("ClankerCraft-TTS");
+    private static final double HEARING_RANGE = 48.0; // OpenAL sources on the client fade out by 64 blocks
+
+    private static final TtsSynthesizer SYNTH = new TtsSynthesizer(new TtsAudioCache());
+    private static final AtomicLong UTTERANCE_IDS = new AtomicLong();
+    // Per speaking entity: completes once its previous line was handed to the network
+    private static final Map<Integer, CompletableFuture<Void>> TAILS = new ConcurrentHashMap<>();
+
+    private TtsBroadcaster() {}
+
+    public static boolean isServerSide() {
+        return Config.ttsServerSideOrDefault(false) && SYNTH.isEnabled();
+    }
+
+    /** Speaks a line for the player's conversation. Server thread. */
+    public static void speak(ServerPlayerEntity listener, TTSSpeakS2CPayload line) {
+        if (!isServerSide()) {
+            sendText(listener, line);
+            return;
+        }
+        ServerWorld world = (ServerWorld) listener.getEntityWorld();
+        MinecraftServer server = world.getServer();
+        // Lines are in the conversing player's language, so the voice follows it
+        String language = LanguageManager.languageOf(listener);
+        CompletableFuture<TtsCodec.Encoded> audio = synthesize(line.text(), language, line.traceId());
+        // Synthesis runs in parallel; sending waits for the entity's previous line
+        int entityId = line.entityId();
+        CompletableFuture<Void> next = new CompletableFuture<>();
+        CompletableFuture<Void> prev = TAILS.put(entityId, next);
+        if (prev == null) prev = CompletableFuture.completedFuture(null);
+        prev.thenCombine(audio.handle((enc, err) -> {
+                    if (err != null) logFailure(err);
+                    return enc;
+                }), (v, enc) -> enc)
+                .thenAcceptAsync(enc -> {
+                    if (enc != null) broadcast(world, listener, line, enc);
+                    else if (!listener.isDisconnected()) sendText(listener, line); // let the client try
+                }, task -> server.execute(Trace.hop("tts_send", line.traceId(), task)))
+                .whenComplete((v, err) -> {
+                    if (err != null) LOGGER.warn("Failed to send TTS audio: {}", err.toString());
+                    TAILS.remove(entityId, next);
+                    next.complete(null);
+                });
+    }
+
+    /** Synthesizes and compresses one line on the TTS bulkhead; completes with null if there is nothing to say. */
+    public static CompletableFuture<TtsCodec.Encoded> synthesize(String text, String language, long traceId) {
+        return GenerationExecutor.submit(Bulkhead.TTS, traceId, () -> {
+            PcmAudio pcm = SYNTH.speak(text, language);
+            return (pcm == null || pcm.data().length == 0) ? null : TtsCodec.encode(pcm);
+        });
+    }
+
+    private static void sendText(ServerPlayerEntity listener, TTSSpeakS2CPayload line) {
+        PipelineEvents.PayloadSend event = new PipelineEvents.PayloadSend();
+        event.begin();
+        ServerPlayNetworking.send(listener, line);
+        event.end();
+        if (event.shouldCommit()) {
+            event.payload = "tts_speak";
+            event.recipients = 1;
+            event.packets = 1;
+            event.bytes = line.text().getBytes(StandardCharsets.UTF_8).length;
+            event.correlationId = line.traceId();
+            event.commit();
+        }
+    }
+
+    private static void logFailure(Throwable err) {
+        Throwable cause = (err.getCause() != null) ? err.getCause() : err;
+        if (cause instanceof TtsSynthesizer.QuotaExceededException q) {
+            if (q.justHit()) LOGGER.warn("TTS quota exceeded; uncached lines fall back to client-side TTS");
+        } else {
+            LOGGER.warn("Server-side TTS failed, falling back to client-side: {}", cause.toString());
+        }
+    }
+
+    // Server thread: split once, send the same payloads to everyone in range
+    private static void broadcast(ServerWorld world, ServerPlayerEntity listener, TTSSpeakS2CPayload line, TtsCodec.Encoded enc) {
+        int total = (enc.data().length + TTSAudioChunkS2CPayload.CHUNK_BYTES - 1) / TTSAudioChunkS2CPayload.CHUNK_BYTES;
+        if (total > TTSAudioChunkS2CPayload.MAX_CHUNKS) {
+            LOGGER.warn("TTS line too long to send ({} bytes)", enc.data().length);
+            return;
+        }
+        long utteranceId = UTTERANCE_IDS.incrementAndGet();
+        List<TTSAudioChunkS2CPayload> chunks = new ArrayList<>(total);
+        for (int i = 0; i < total; i++) {
+            int from = i * TTSAudioChunkS2CPayload.CHUNK_BYTES;
+            int to = Math.min(enc.data().length, from + TTSAudioChunkS2CPayload.CHUNK_BYTES);
+            chunks.add(new TTSAudioChunkS2CPayload(utteranceId, line.entityId(), line.priority(), line.replyId(), line.traceId(),
+                    enc.codec(), enc.sampleRate(), (byte) enc.channels(), i, total, Arrays.copyOfRange(enc.data(), from, to)));
+        }
+        PipelineEvents.PayloadSend event = new PipelineEvents.PayloadSend();
+        event.begin();
+        int sentTo = 0;
+        for (ServerPlayerEntity p : recipients(world, listener, line.entityId())) {
+            if (!ServerPlayNetworking.canSend(p, TTSAudioChunkS2CPayload.ID)) continue; // no mod on that client
+            for (TTSAudioChunkS2CPayload chunk : chunks) ServerPlayNetworking.send(p, chunk);
+            sentTo++;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.payload = "tts_audio";
+            event.recipients = sentTo;
+            event.packets = sentTo * total;
+            event.bytes = (long) sentTo * enc.data().length;
+            event.correlationId = line.traceId();
+            event.commit();
+        }
+    }
+
+    private static Set<ServerPlayerEntity> recipients(ServerWorld world, ServerPlayerEntity listener, int entityId) {
+        Entity speaker = (entityId >= 0) ? world.getEntityById(entityId) : null;
+        Entity source = (speaker != null) ? speaker : listener;
+        Vec3d at = new Vec3d(source.getX(), source.getY(), source.getZ());
+        Set<ServerPlayerEntity> out = new LinkedHashSet<>(PlayerLookup.around(world, at, HEARING_RANGE));
+        if (!listener.isDisconnected()) out.add(listener); // the conversation partner always hears the reply
+        return out;
+    }
+}
@@ -0,0 +1,89 @@
+package clanker.craft.tts;
+
+import clanker.craft.exec.GenerationExecutor;
+import clanker.craft.exec.GenerationExecutor.Bulkhead;
+import clanker.craft.music.FfmpegTranscoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression for speech sent from the server to clients. OGG Vorbis through ffmpeg shrinks 24 kHz
+ * speech about tenfold; servers without ffmpeg fall back to deflated PCM (roughly half the size),
+ * which every client can decode without native help. Every ffmpeg run counts against the TRANSCODE
+ * bulkhead, like music transcodes; a line that finds it full is sent as deflated PCM.
+ */
+public final class TtsCodec {
+    private static final Logger LOGGER = LoggerFactory.getLogger("ClankerCraft-TTS");
+
+    public static final byte DEFLATE_PCM = 0;
+    public static final byte OGG_VORBIS = 1;
+
+    private static volatile boolean ffmpegMissing = false;
+
+    private TtsCodec() {}
+
+    public record Encoded(byte codec, byte[] data, int sampleRate, int channels) {}
+
+    public static Encoded encode(PcmAudio pcm) {
+        if (!ffmpegMissing) {
+            try {
+                byte[] ogg = GenerationExecutor.call(Bulkhead.TRANSCODE,
+                        () -> FfmpegTranscoder.pcmToOggVorbis(pcm.data(), pcm.sampleRate(), pcm.channels()));
+                if (ogg.length > 0) return new Encoded(OGG_VORBIS, ogg, pcm.sampleRate(), pcm.channels());
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                if (GenerationExecutor.isSaturated(e)) {
+                    // Every transcoder slot is taken: this line goes out bigger, not later
+                    LOGGER.debug("Transcoder busy, sending deflated PCM");
+                } else {
+                    // Don't try to spawn a missing binary for every line; other failures cost just this line
+                    if (e.getMessage() != null && e.getMessage().startsWith("ffmpeg is not available")) ffmpegMissing = true;
+                    LOGGER.warn("Vorbis encoding failed, sending deflated PCM instead: {}", e.getMessage());
+                }
+            }
+        }
+        return new Encoded(DEFLATE_PCM, deflate(pcm.data()), pcm.sampleRate(), pcm.channels());
+    }
+
+    public static byte[] deflate(byte[] data) {
+        Deflater d = new Deflater(Deflater.BEST_SPEED);
+        try {
+            d.setInput(data);
+            d.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+            byte[] buf = new byte[8192];
+            while (!d.finished()) {
+                int n = d.deflate(buf);
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            d.end();
+        }
+    }
+
+    /** Inflates at most maxBytes, so a hostile or corrupt stream can't exhaust memory. */
+    public static byte[] inflate(byte[] data, int maxBytes) throws DataFormatException {
+        Inflater inf = new Inflater();
+        try {
+            inf.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 2);
+            byte[] buf = new byte[8192];
+            while (!inf.finished()) {
+                int n = inf.inflate(buf);
+                if (n == 0 && (inf.needsInput() || inf.needsDictionary())) throw new DataFormatException("truncated stream");
+                if (out.size() + n > maxBytes) throw new DataFormatException("inflated audio exceeds " + maxBytes + " bytes");
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            inf.end();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package clanker.craft.tts;
+
+import clanker.craft.config.Config;
+import clanker.craft.http.HttpTransport;
+import clanker.craft.config.ConfigSnapshot;
+import clanker.craft.i18n.LanguageManager;
+import clanker.craft.trace.PipelineEvents;
+import clanker.craft.trace.Trace;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Google Cloud Text-to-Speech (LINEAR16, 24 kHz mono) behind the two-tier {@link TtsAudioCache}.
+ * Shared by client-side playback and server-side synthesis; blocking, call off the game threads.
+ */
+public final class TtsSynthesizer {
+    public static final int SAMPLE_RATE = 24000;
+    private static final URI GOOGLE_ORIGIN = URI.create("https://texttospeech.googleapis.com/");
+    private static final Gson GSON = new Gson();
+
+    private final HttpClient http = HttpTransport.client();
+    private final TtsAudioCache cache;
+    private volatile boolean quotaExceeded = false;
+
+    public TtsSynthesizer(TtsAudioCache cache) {
+        this.cache = cache;
+    }
+
+    /** Thrown when Cloud TTS answered 429, or already had and the line isn't cached. */
+    public static final class QuotaExceededException extends Exception {
+        private final boolean justHit;
+
+        QuotaExceededException(boolean justHit) {
+            super("TTS quota exceeded");
+            this.justHit = justHit;
+        }
+
+        /** True for the request that ran into the quota, false for lines skipped afterwards. */
+        public boolean justHit() { return justHit; }
+    }
+
+    /** Everything besides the text that shapes the synthesized audio; also part of the cache key. */
+    public record Voice(String language, String name, String speakingRate, String pitch) {
+        /** The voice for text in the given language (a {@link LanguageManager} code). */
+        public static Voice forLanguage(String clankerLang) {
+            ConfigSnapshot.Tts cfg = Config.current().tts();
+            String lang = cfg.languageCode();
+            // If no explicit TTS language is set, derive it from the language being spoken
+            if (lang == null || lang.isBlank()) {
+                lang = mapLanguageCodeToTTS(clankerLang);
+            }
+            String voiceName = cfg.voiceName(); // e.g., "en-US-Chirp-HD-F"
+            // Voice names start with their language; one for another language would be rejected
+            if (voiceName != null && !voiceName.regionMatches(true, 0, lang, 0, lang.length())) voiceName = null;
+            // Chirp 3: HD voices (e.g., en-US-Chirp-HD-F) do not support speakingRate/pitch.
+            boolean isChirp = voiceName != null && voiceName.toLowerCase().contains("chirp");
+            String rate = isChirp ? null : cfg.speakingRate();
+            String pitch = isChirp ? null : cfg.pitch();
+            return new Voice(lang, voiceName, rate, pitch);
+        }
+    }
+
+    public boolean isEnabled() {
+        String key = Config.ttsApiKey();
+        return key != null && !key.isBlank();
+    }
+
+    /** Opens the connection to Cloud TTS in the background so the first line doesn't pay the handshake. */
+    public void warmUp() {
+        if (isEnabled()) HttpTransport.warmUp(List.of(origin()));
+    }
+
+    /** Where every synthesis request goes (Google, or PROVIDER_BASE_URL); warmed up before the first line. */
+    public static URI origin() { return Config.providerOrigin(GOOGLE_ORIGIN); }
+
+    /**
+     * Audio for the line in language (a {@link LanguageManager} code), from the cache when possible
+     * (cached lines play even when the quota is gone). Returns null if nothing is left to say after
+     * sanitizing or the API returned no audio.
+     */
+    public PcmAudio speak(String text, String language) throws Exception {
+        // Sanitize text to remove symbols that shouldn't be pronounced
+        String sanitized = sanitize(text);
+        if (sanitized == null || sanitized.isEmpty()) return null;
+        Voice voice = Voice.forLanguage(language);
+        String key = TtsAudioCache.key(sanitized, voice.name, voice.language, voice.speakingRate, voice.pitch);
+        PipelineEvents.TtsSynthesis event = new PipelineEvents.TtsSynthesis();
+        event.begin();
+        PcmAudio pcm = cache.get(key);
+        if (pcm != null) {
+            commit(event, sanitized, true);
+            return pcm;
+        }
+        if (quotaExceeded) throw new QuotaExceededException(false);
+        pcm = synthesize(sanitized, voice);
+        if (pcm != null && pcm.data().length > 0) cache.put(key, pcm);
+        commit(event, sanitized, false);
+        return pcm;
+    }
+
+    private static void commit(PipelineEvents.TtsSynthesis event, String text, boolean cached) {
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.characters = text.length();
+        event.cached = cached;
+        event.correlationId = Trace.current();
+        event.commit();
+    }
+
+    /**
+     * Sanitize text for TTS by removing or replacing symbols that shouldn't be pronounced.
+     * This includes markdown formatting symbols, special characters, and other non-verbal elements.
+     */
+    public static String sanitize(String text) {
+        if (text == null || text.isEmpty()) return text;
+
+        // Remove markdown-style emphasis markers (*, _, ~, `)
+        String sanitized = text.replaceAll("[*_~`]", "");
+
+        // Remove other common symbols that shouldn't be spoken
+        sanitized = sanitized.replaceAll("[#@$%^&+=<>\\[\\]{}|\\\\]", "");
+
+        // Replace multiple spaces with single space
+        sanitized = sanitized.replaceAll("\\s+", " ");
+
+        // Trim leading/trailing whitespace
+        sanitized = sanitized.trim();
+
+        return sanitized;
+    }
+
+    private PcmAudio synthesize(String sanitizedText, Voice v) throws Exception {
+        String apiKey = Config.ttsApiKey();
+        if (apiKey == null || apiKey.isBlank()) throw new IllegalStateException("No GOOGLE_TTS_API_KEY configured (you can also set GOOGLE_CLOUD_API_KEY). See clankercraft-llm.properties");
+
+        // Cloud Text-to-Speech v1 request for 24 kHz, mono, 16-bit PCM (LINEAR16)
+        JsonObject body = new JsonObject();
+        JsonObject input = new JsonObject();
+        input.addProperty("text", sanitizedText);
+        body.add("input", input);
+
+        JsonObject voice = new JsonObject();
+        voice.addProperty("languageCode", v.language);
+        if (v.name != null && !v.name.isBlank()) voice.addProperty("name", v.name);
+        body.add("voice", voice);
+
+        JsonObject audioCfg = new JsonObject();
+        audioCfg.addProperty("audioEncoding", "LINEAR16");
+        audioCfg.addProperty("sampleRateHertz", SAMPLE_RATE);
+
+        if (v.speakingRate != null && !v.speakingRate.isBlank()) {
+            try { audioCfg.addProperty("speakingRate", Double.parseDouble(v.speakingRate)); } catch (NumberFormatException ignored) {}
+        }
+        if (v.pitch != null && !v.pitch.isBlank()) {
+            try { audioCfg.addProperty("pitch", Double.parseDouble(v.pitch)); } catch (NumberFormatException ignored) {}
+        }
+        body.add("audioConfig", audioCfg);
+
+        // The real key only ever goes to Google; a PROVIDER_BASE_URL override gets the placeholder
+        URI override = Config.providerBaseUrl();
+        URI uri = (override == null)
+                ? GOOGLE_ORIGIN.resolve("v1/text:synthesize?key=" + apiKey)
+                : override.resolve("v1/text:synthesize?key=" + Config.STAND_IN_CREDENTIAL);
+        HttpRequest req = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json; charset=UTF-8")
+                .POST(HttpRequest.BodyPublishers.ofString(GSON.toJson(body), StandardCharsets.UTF_8))
+                .build();
+        HttpResponse<String> resp = http.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        int sc = resp.statusCode();
+        if (sc == 429) {
+            quotaExceeded = true;
+            throw new QuotaExceededException(true);
+        }
+        if (sc / 100 != 2) throw new RuntimeException("HTTP " + sc + ": " + resp.body());
+
+        JsonObject json = GSON.fromJson(resp.body(), JsonObject.class);
+        if (!json.has("audioContent")) return null;
+        String b64 = json.get("audioContent").getAsString();
+        byte[] pcm = Base64.getDecoder().decode(b64);
+        return new PcmAudio(pcm, SAMPLE_RATE, 1);
+    }
+
+    /**
+     * Map a simple language code (e.g., "en", "es") to a TTS language code (e.g., "en-US", "es-ES").
+     */
+    private static String mapLanguageCodeToTTS(String langCode) {
+        return switch (langCode.toLowerCase()) {
+            case "en" -> "en-US";
+            case "es" -> "es-ES";
+            case "fr" -> "fr-FR";
+            case "de" -> "de-DE";
+            case "it" -> "it-IT";
+            case "pt" -> "pt-PT";
+            default -> "en-US";
+        };
+    }
+}
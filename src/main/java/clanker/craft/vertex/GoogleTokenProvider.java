@@ -0,0 +1,158 @@
+package clanker.craft.vertex;
+
+import clanker.craft.config.Config;
+import clanker.craft.http.HttpTransport;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OAuth access tokens for every Vertex AI client. The token is refreshed on a background thread well
+ * before it expires, so requests just read a volatile field; only a request that finds no usable
+ * token at all (cold start, or every background refresh failed) refreshes inline.
+ */
+public final class GoogleTokenProvider {
+    private static final Logger LOGGER = LoggerFactory.getLogger("ClankerCraft-Auth");
+    private static final String SCOPE = "https://www.googleapis.com/auth/cloud-platform";
+    private static final Duration REFRESH_AHEAD = Duration.ofMinutes(5);
+    private static final Duration MIN_REMAINING = Duration.ofSeconds(60); // don't hand out a token about to die
+    private static final Duration ASSUMED_LIFETIME = Duration.ofMinutes(55); // tokens without an expiry
+    private static final Duration RETRY_MIN = Duration.ofSeconds(5);
+    private static final Duration RETRY_MAX = Duration.ofMinutes(1);
+    private static final String STAND_IN_TOKEN = Config.STAND_IN_CREDENTIAL; // accepted by the stand-in, ignored by replay
+    private static final ScheduledExecutorService REFRESHER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Clanker-Token-Refresh");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static GoogleTokenProvider shared;
+
+    private record Token(String value, long expiresAtMillis) {}
+
+    private final String credentialsPath;
+    private final boolean standIn;
+    private final GoogleCredentials credentials;
+    private final Object refreshLock = new Object();
+    private volatile Token current;
+    private ScheduledFuture<?> next; // guarded by refreshLock
+    private int failures;            // guarded by refreshLock
+    private volatile boolean closed;
+
+    private GoogleTokenProvider(String credentialsPath, boolean standIn) {
+        this.credentialsPath = credentialsPath;
+        this.standIn = standIn;
+        // Real credentials are never loaded for a stand-in, so no real token can be sent to it
+        this.credentials = standIn ? null : loadCredentials(credentialsPath);
+        if (credentials != null) schedule(Duration.ZERO); // fetch the first token before anyone asks
+    }
+
+    /**
+     * The provider for the configured credentials (GOOGLE_APPLICATION_CREDENTIALS, else application
+     * default credentials). Replaced when the configured path changes. With PROVIDER_BASE_URL set or a
+     * cassette replaying, hands out a placeholder token instead, whether or not credentials exist.
+     */
+    public static synchronized GoogleTokenProvider shared() {
+        String path = Config.googleCredentialsPath();
+        boolean standIn = Config.providerBaseUrl() != null || HttpTransport.isReplaying();
+        if (shared == null || !Objects.equals(shared.credentialsPath, path) || shared.standIn != standIn) {
+            if (shared != null) shared.close();
+            shared = new GoogleTokenProvider(path, standIn);
+        }
+        return shared;
+    }
+
+    public boolean isAvailable() {
+        return credentials != null || standIn;
+    }
+
+    /** A token valid for at least a minute, or null without credentials. */
+    public String token() throws IOException {
+        if (credentials == null) return standIn ? STAND_IN_TOKEN : null;
+        Token t = current;
+        if (t != null && t.expiresAtMillis - System.currentTimeMillis() > MIN_REMAINING.toMillis()) return t.value;
+        synchronized (refreshLock) {
+            // Another request may have refreshed while we waited
+            t = current;
+            if (t != null && t.expiresAtMillis - System.currentTimeMillis() > MIN_REMAINING.toMillis()) return t.value;
+            return refresh().value;
+        }
+    }
+
+    /** Stops background refreshes. */
+    public void close() {
+        closed = true;
+        synchronized (refreshLock) {
+            if (next != null) next.cancel(false);
+            next = null;
+        }
+    }
+
+    // Caller holds refreshLock
+    private Token refresh() throws IOException {
+        credentials.refresh();
+        AccessToken at = credentials.getAccessToken();
+        if (at == null || at.getTokenValue() == null) throw new IOException("Google credentials returned no access token");
+        long expires = (at.getExpirationTime() != null)
+                ? at.getExpirationTime().getTime()
+                : System.currentTimeMillis() + ASSUMED_LIFETIME.toMillis();
+        Token t = new Token(at.getTokenValue(), expires);
+        current = t;
+        failures = 0;
+        long untilRefresh = expires - System.currentTimeMillis() - REFRESH_AHEAD.toMillis();
+        schedule(Duration.ofMillis(Math.max(RETRY_MIN.toMillis(), untilRefresh)));
+        return t;
+    }
+
+    private void backgroundRefresh() {
+        synchronized (refreshLock) {
+            if (closed) return;
+            try {
+                refresh();
+            } catch (Exception e) {
+                failures++;
+                long backoff = Math.min(RETRY_MAX.toMillis(), RETRY_MIN.toMillis() << Math.min(failures - 1, 6));
+                LOGGER.warn("Google token refresh failed (attempt {}), retrying in {}s: {}", failures, backoff / 1000, e.toString());
+                schedule(Duration.ofMillis(backoff));
+            }
+        }
+    }
+
+    private void schedule(Duration delay) {
+        synchronized (refreshLock) {
+            if (closed) return;
+            if (next != null) next.cancel(false);
+            next = REFRESHER.schedule(this::backgroundRefresh, delay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static GoogleCredentials loadCredentials(String path) {
+        try {
+            GoogleCredentials creds;
+            if (path != null && !path.isBlank()) {
+                try (InputStream in = Files.newInputStream(Path.of(path))) {
+                    creds = GoogleCredentials.fromStream(in);
+                }
+            } else {
+                creds = GoogleCredentials.getApplicationDefault();
+            }
+            if (creds == null) return null;
+            return creds.createScoped(Collections.singletonList(SCOPE));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
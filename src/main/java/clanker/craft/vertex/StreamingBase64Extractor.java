@@ -0,0 +1,276 @@
+package clanker.craft.vertex;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Base64;
+import java.util.Set;
+
+/**
+ * Pulls the first base64 media field out of a JSON response body while it is still streaming in,
+ * decoding it chunk by chunk into a sink. Neither the body nor the encoded or decoded media is ever
+ * held in memory as a whole, so memory per job stays constant regardless of media size.
+ *
+ * A string value is taken when its member key (or, for array elements, the array's key) is one of
+ * the given keys, or - as a fallback for unknown schemas - when it is a long run of base64 alphabet.
+ * "data:" URI prefixes and JSON escapes (notably {@code \/}) are handled.
+ *
+ * Only structural ASCII matters here, so the body is scanned as bytes: UTF-8 continuation bytes are
+ * all >= 0x80 and can never be mistaken for quotes or backslashes.
+ */
+public final class StreamingBase64Extractor {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_DEPTH = 64;
+    private static final int MAX_KEY_LENGTH = 128;
+    private static final int MAX_DATA_URI_PREFIX = 256;
+    private static final int KEYED_MIN_CHARS = 16; // e.g. "audio": "wav" is a format, not media
+    private static final int HEURISTIC_MIN_CHARS = 256; // shorter strings are ids, mime types, prompts...
+
+    private StreamingBase64Extractor() {}
+
+    /**
+     * Decodes the first matching field of the JSON body into target, via a temp file in the same
+     * directory that is only moved into place once complete. Returns the decoded size, or -1 (and
+     * no file) if the body had no media field.
+     */
+    public static long extractToFile(InputStream json, Set<String> keys, Path target) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, ".part-", ".tmp");
+        boolean ok = false;
+        try {
+            long n;
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                 OutputStream out = Channels.newOutputStream(ch)) {
+                n = extract(json, keys, out);
+            }
+            if (n < 0) return -1;
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException atomicUnsupported) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            ok = true;
+            return n;
+        } finally {
+            if (!ok) {
+                try { Files.deleteIfExists(tmp); } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    /**
+     * Decodes the first matching field of the JSON body into sink. Returns the decoded size, or -1
+     * if the body ended without a media field. The body is not consumed past the decoded value.
+     */
+    public static long extract(InputStream json, Set<String> keys, OutputStream sink) throws IOException {
+        return new Scanner(json, keys).run(sink);
+    }
+
+    /**
+     * Reads at most maxBytes of a (typically error) body as UTF-8 text and discards the rest.
+     */
+    public static String readLimited(InputStream body, int maxBytes) throws IOException {
+        byte[] head = body.readNBytes(maxBytes);
+        boolean more = body.read() >= 0;
+        String s = new String(head, StandardCharsets.UTF_8);
+        return more ? s + "..." : s;
+    }
+
+    private static final class Scanner {
+        private final InputStream in;
+        private final Set<String> keys;
+        private final byte[] buf = new byte[BUFFER_SIZE];
+        private int pos, lim;
+
+        // Container stack: whether each level is an object, and the key that owns its values
+        private final boolean[] isObject = new boolean[MAX_DEPTH];
+        private final String[] key = new String[MAX_DEPTH];
+        private int depth = -1;
+        private boolean expectKey;
+
+        Scanner(InputStream in, Set<String> keys) {
+            this.in = in;
+            this.keys = keys;
+        }
+
+        long run(OutputStream sink) throws IOException {
+            int c;
+            while ((c = read()) >= 0) {
+                switch (c) {
+                    case '{' -> push(true, null);
+                    case '[' -> push(false, depth >= 0 && depth < MAX_DEPTH ? key[depth] : null);
+                    case '}', ']' -> { if (depth >= 0) depth--; expectKey = false; }
+                    case ',' -> expectKey = inObject();
+                    case ':' -> expectKey = false;
+                    case '"' -> {
+                        if (inObject() && expectKey) {
+                            String k = readKey();
+                            if (depth < MAX_DEPTH) key[depth] = k;
+                        } else {
+                            long n = value(sink);
+                            if (n >= 0) return n;
+                        }
+                    }
+                    default -> {} // whitespace, numbers, literals
+                }
+            }
+            return -1;
+        }
+
+        private void push(boolean object, String owner) {
+            depth++;
+            if (depth < MAX_DEPTH) {
+                isObject[depth] = object;
+                key[depth] = owner;
+            }
+            expectKey = object;
+        }
+
+        private boolean inObject() {
+            return depth >= 0 && depth < MAX_DEPTH && isObject[depth];
+        }
+
+        /** Handles a string value whose opening quote was just read; returns -1 if it wasn't media. */
+        private long value(OutputStream sink) throws IOException {
+            String owner = depth >= 0 && depth < MAX_DEPTH ? key[depth] : null;
+            boolean wanted = owner != null && keys.contains(owner);
+            StringValue s = new StringValue();
+
+            // Judge the value by its head: short or non-base64 strings (mime types, URIs, ids) are skipped
+            int min = wanted ? KEYED_MIN_CHARS : HEURISTIC_MIN_CHARS;
+            byte[] prefix = new byte[HEURISTIC_MIN_CHARS];
+            int n = s.readNBytes(prefix, 0, 5);
+            if (n == 5 && startsWithDataUri(prefix)) {
+                // Skip "data:<mime>;base64," and judge what follows
+                int skipped = 5, c;
+                while ((c = s.read()) >= 0 && c != ',' && ++skipped < MAX_DATA_URI_PREFIX) {}
+                if (c != ',') { s.skipRest(); return -1; }
+                n = 0;
+            }
+            if (n < min) n += s.readNBytes(prefix, n, min - n);
+            if (n < min || !isBase64(prefix, n)) {
+                s.skipRest();
+                return -1;
+            }
+            InputStream encoded = new SequenceInputStream(new ByteArrayInputStream(prefix, 0, n), s);
+            try (InputStream decoded = Base64.getMimeDecoder().wrap(encoded)) {
+                long out = decoded.transferTo(sink);
+                s.skipRest();
+                return out;
+            }
+        }
+
+        private String readKey() throws IOException {
+            StringValue s = new StringValue();
+            byte[] k = s.readNBytes(MAX_KEY_LENGTH);
+            s.skipRest();
+            return new String(k, StandardCharsets.UTF_8);
+        }
+
+        private int read() throws IOException {
+            if (pos == lim && !fill()) return -1;
+            return buf[pos++] & 0xFF;
+        }
+
+        private boolean fill() throws IOException {
+            int n = in.read(buf, 0, buf.length);
+            if (n <= 0) return false;
+            pos = 0;
+            lim = n;
+            return true;
+        }
+
+        /**
+         * The raw characters of the string being scanned, up to its closing quote, with escapes
+         * resolved. Escapes that can't occur in base64 become spaces, which the MIME decoder skips.
+         */
+        private final class StringValue extends InputStream {
+            private boolean done;
+
+            @Override
+            public int read() throws IOException {
+                if (done) return -1;
+                int c = Scanner.this.read();
+                if (c < 0) throw new EOFException("Unterminated JSON string");
+                if (c == '"') { done = true; return -1; }
+                return c == '\\' ? escape() : c;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (done) return -1;
+                if (len == 0) return 0;
+                int n = 0;
+                while (n < len) {
+                    if (pos == lim) {
+                        if (n > 0) break; // hand back what we have before blocking again
+                        if (!fill()) throw new EOFException("Unterminated JSON string");
+                    }
+                    // Copy the plain run up to the next quote or backslash in one go
+                    int end = Math.min(lim, pos + (len - n));
+                    int i = pos;
+                    while (i < end && buf[i] != '"' && buf[i] != '\\') i++;
+                    System.arraycopy(buf, pos, b, off + n, i - pos);
+                    n += i - pos;
+                    pos = i;
+                    if (i < end) {
+                        pos++;
+                        if (buf[i] == '"') { done = true; break; }
+                        b[off + n++] = (byte) escape();
+                    }
+                }
+                return n == 0 && done ? -1 : n;
+            }
+
+            void skipRest() throws IOException {
+                byte[] scratch = new byte[4096];
+                while (read(scratch, 0, scratch.length) >= 0) {}
+            }
+
+            @Override
+            public void close() {} // the body belongs to the caller
+
+            private int escape() throws IOException {
+                int e = Scanner.this.read();
+                if (e < 0) throw new EOFException("Unterminated JSON escape");
+                switch (e) {
+                    case '/': case '"': case '\\': return e;
+                    case 'u':
+                        int cp = 0;
+                        for (int i = 0; i < 4; i++) {
+                            int h = Character.digit(Scanner.this.read(), 16);
+                            if (h < 0) throw new IOException("Bad \\u escape in JSON string");
+                            cp = cp * 16 + h;
+                        }
+                        return cp < 0x80 ? cp : ' ';
+                    default: return ' '; // \n, \r, \t, \b, \f
+                }
+            }
+        }
+    }
+
+    private static boolean startsWithDataUri(byte[] b) {
+        return b[0] == 'd' && b[1] == 'a' && b[2] == 't' && b[3] == 'a' && b[4] == ':';
+    }
+
+    private static boolean isBase64(byte[] b, int n) {
+        for (int i = 0; i < n; i++) {
+            int c = b[i];
+            boolean ok = (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '+' || c == '/' || c == '=' || c == ' ';
+            if (!ok) return false;
+        }
+        return true;
+    }
+}
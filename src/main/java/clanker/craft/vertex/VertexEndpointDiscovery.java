@@ -0,0 +1,160 @@
+package clanker.craft.vertex;
+
+import clanker.craft.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Finds which publisher model + method (":predict" / ":generate") actually answers on Vertex AI.
+ * All candidates are probed concurrently with an empty request (a live route answers 400 INVALID_ARGUMENT,
+ * a missing one 404), so discovery costs one short round trip instead of a full generation per miss.
+ * The winner is cached with a TTL; callers invalidate it when it starts returning 404. A discovery that
+ * finds nothing is cached too, briefly, so a misconfigured model doesn't re-run every probe per request.
+ */
+public final class VertexEndpointDiscovery {
+    private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(15);
+    private static final Duration FAILURE_TTL = Duration.ofMinutes(1);
+    private static final String PROBE_BODY = "{\"instances\":[]}";
+    private static final ExecutorService PROBES = Executors.newVirtualThreadPerTaskExecutor();
+
+    /** One model/method combination on a regional Vertex endpoint. */
+    public record Target(String model, String method) {
+        /** The regional Vertex AI endpoint the model lives on (or PROVIDER_BASE_URL). */
+        public static URI origin(String location) {
+            return Config.providerOrigin(URI.create("https://" + location + "-aiplatform.googleapis.com/"));
+        }
+
+        public URI uri(String location, String projectId) {
+            return origin(location).resolve("v1/projects/" + projectId
+                    + "/locations/" + location + "/publishers/google/models/" + model + method);
+        }
+
+        @Override
+        public String toString() { return model + method; }
+    }
+
+    // discovered is false for the fallback cached after a failed discovery
+    private record Resolved(Target target, boolean discovered, Instant expiresAt) {}
+
+    private final String name;
+    private final Logger logger;
+    private final HttpClient http;
+    private final String location;
+    private final String projectId;
+    private final List<Target> candidates;
+    private final Duration ttl;
+    private volatile Resolved resolved;
+    private volatile String lastFailure;
+
+    public VertexEndpointDiscovery(String name, HttpClient http, String location, String projectId, List<Target> candidates, Duration ttl) {
+        this.name = name;
+        this.logger = LoggerFactory.getLogger("ClankerCraft-" + name);
+        this.http = http;
+        this.location = location;
+        this.projectId = projectId;
+        this.candidates = List.copyOf(candidates);
+        this.ttl = ttl;
+    }
+
+    /** Candidates as "models x methods", in preference order (models outer). */
+    public static List<Target> combine(List<String> models, List<String> methods) {
+        List<Target> out = new ArrayList<>(models.size() * methods.size());
+        for (String m : models) {
+            for (String ep : methods) {
+                Target t = new Target(m, ep);
+                if (!out.contains(t)) out.add(t);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * The cached winner, discovering it first if there is none or it expired. If no candidate answers,
+     * the first one is returned (and kept for {@link #FAILURE_TTL}) so the real request can surface
+     * the actual error.
+     */
+    public Target resolve(String accessToken) {
+        Resolved r = resolved;
+        if (r != null && Instant.now().isBefore(r.expiresAt)) return r.target;
+        synchronized (this) {
+            r = resolved;
+            if (r != null && Instant.now().isBefore(r.expiresAt)) return r.target;
+            Target found = discover(accessToken);
+            r = (found == null)
+                    ? new Resolved(candidates.get(0), false, Instant.now().plus(FAILURE_TTL))
+                    : new Resolved(found, true, Instant.now().plus(ttl));
+            resolved = r;
+            return r.target;
+        }
+    }
+
+    /**
+     * Drop the cached winner if it is still the given target (e.g. it just returned 404). A cached
+     * failure stays until it expires: rediscovering now would only fail again.
+     */
+    public void invalidate(Target target) {
+        Resolved r = resolved;
+        if (r != null && r.discovered && r.target.equals(target)) resolved = null;
+    }
+
+    public String lastFailure() { return lastFailure; }
+
+    private Target discover(String accessToken) {
+        long start = System.nanoTime();
+        List<Future<Integer>> probes = new ArrayList<>(candidates.size());
+        for (Target t : candidates) probes.add(PROBES.submit(() -> probe(t, accessToken)));
+        // Take the most preferred candidate whose route exists; later probes are abandoned
+        StringBuilder failures = new StringBuilder();
+        for (int i = 0; i < candidates.size(); i++) {
+            int status;
+            try { status = probes.get(i).get(); } catch (Exception e) { status = -1; }
+            if (routeExists(status)) {
+                Target t = candidates.get(i);
+                for (Future<Integer> f : probes) f.cancel(true);
+                logger.info("{} discovery picked {} in {} ms", name, t, (System.nanoTime() - start) / 1_000_000);
+                lastFailure = null;
+                return t;
+            }
+            if (failures.length() > 0) failures.append(", ");
+            failures.append(candidates.get(i)).append('=').append(status);
+        }
+        lastFailure = failures.toString();
+        logger.warn("{} discovery found no usable model ({})", name, lastFailure);
+        return null;
+    }
+
+    private int probe(Target t, String accessToken) {
+        try {
+            HttpRequest req = HttpRequest.newBuilder(t.uri(location, projectId))
+                    .timeout(PROBE_TIMEOUT)
+                    .header("Authorization", "Bearer " + accessToken)
+                    .header("Content-Type", "application/json; charset=UTF-8")
+                    .POST(HttpRequest.BodyPublishers.ofString(PROBE_BODY, StandardCharsets.UTF_8))
+                    .build();
+            return http.send(req, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return -1;
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    // 400 = the model is there but rejected our empty probe; 429 = it's there but we're throttled
+    private static boolean routeExists(int status) {
+        return status / 100 == 2 || status == 400 || status == 429;
+    }
+}